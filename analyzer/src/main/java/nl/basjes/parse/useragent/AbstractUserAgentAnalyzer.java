@@ -113,6 +113,16 @@ public class AbstractUserAgentAnalyzer extends AbstractUserAgentAnalyzerDirect i
         return cacheSize;
     }
 
+    /**
+     * @return The number of useragents that are currently in the parse cache.
+     */
+    public synchronized int getCachedUserAgentCount() {
+        if (parseCache == null) {
+            return 0;
+        }
+        return parseCache.size();
+    }
+
     @Override
     public synchronized ImmutableUserAgent parse(MutableUserAgent userAgent) {
         if (userAgent == null) {
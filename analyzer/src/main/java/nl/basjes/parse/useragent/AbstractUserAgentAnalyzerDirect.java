@@ -22,7 +22,6 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.FieldSerializer;
-import nl.basjes.collections.prefixmap.StringPrefixMap;
 import nl.basjes.parse.useragent.AgentField.ImmutableAgentField;
 import nl.basjes.parse.useragent.AgentField.MutableAgentField;
 import nl.basjes.parse.useragent.UserAgent.ImmutableUserAgent;
@@ -40,6 +39,8 @@ import nl.basjes.parse.useragent.analyze.UselessMatcherException;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
 import nl.basjes.parse.useragent.analyze.treewalker.TreeExpressionEvaluator;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepContains;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepDefaultIfNull;
@@ -80,7 +81,9 @@ import nl.basjes.parse.useragent.calculate.CalculateNetworkType;
 import nl.basjes.parse.useragent.calculate.ConcatNONDuplicatedCalculator;
 import nl.basjes.parse.useragent.calculate.FieldCalculator;
 import nl.basjes.parse.useragent.calculate.MajorVersionCalculator;
+import nl.basjes.parse.useragent.debug.MemoryFootprint;
 import nl.basjes.parse.useragent.parse.UserAgentTreeFlattener;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,9 +101,11 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -204,13 +209,36 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         return lookupSets;
     }
 
+    /**
+     * Estimate how much memory is retained by each lookup, each lookup set and the matchers of each file.
+     * @return The report of the current state of this analyzer.
+     */
+    public synchronized MemoryFootprint getMemoryFootprint() {
+        MemoryFootprint footprint = new MemoryFootprint(this);
+        lookups.forEach(footprint::addLookup);
+        lookupSets.forEach(footprint::addLookupSet);
+        lookupPrefixes.forEach((name, prefixLookup) -> {
+            if (name.startsWith(WalkList.LOOKUP_SET_PREFIX)) {
+                footprint.addLookupSet(name.substring(WalkList.LOOKUP_SET_PREFIX.length()), prefixLookup);
+            } else {
+                footprint.addLookup(name, prefixLookup);
+            }
+        });
+        lookupKeySets.forEach(footprint::addLookup);
+        for (Matcher matcher : allMatchers) {
+            String location = matcher.getMatcherSourceLocation();
+            footprint.addMatcher(location.substring(0, location.lastIndexOf(':')), matcher);
+        }
+        return footprint;
+    }
+
     protected UserAgentTreeFlattener flattener;
 
     public static final int DEFAULT_USER_AGENT_MAX_LENGTH = 2048;
     private int userAgentMaxLength = DEFAULT_USER_AGENT_MAX_LENGTH;
     private boolean loadTests = false;
 
-    private static final String DEFAULT_RESOURCES = "classpath*:UserAgents/**/*.yaml";
+    public static final String DEFAULT_RESOURCES = "classpath*:UserAgents/**/*.yaml";
 
     /*
      * Initialize the transient default values
@@ -218,6 +246,8 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
     void initTransientFields() {
         matcherConfigs = new HashMap<>(64);
         touchedMatchers = new MatcherList(32);
+        lookupPrefixes = new HashMap<>(64);
+        lookupKeySets = new HashMap<>(16);
     }
 
     private void readObject(java.io.ObjectInputStream stream)
@@ -252,6 +282,9 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         kryo.register(Collections.emptyList().getClass());
         kryo.register(Collections.emptyMap().getClass());
 
+        kryo.register(String[].class);
+        kryo.register(int[].class);
+
         kryo.register(ArrayList.class);
 
         kryo.register(LinkedHashSet.class);
@@ -293,6 +326,7 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         kryo.register(UserAgentTreeFlattener.class);
         kryo.register(TreeExpressionEvaluator.class);
         kryo.register(WalkList.class);
+        kryo.register(WalkResultMemo.class);
         kryo.register(StepContains.class);
         kryo.register(StepDefaultIfNull.class);
         kryo.register(StepEndsWith.class);
@@ -324,7 +358,7 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         kryo.register(StepPrevN.class);
         kryo.register(StepUp.class);
 
-        StringPrefixMap.configureKryo(kryo);
+        kryo.register(PrefixLookup.class);
     }
 
     public static class KryoSerializer extends FieldSerializer<AbstractUserAgentAnalyzerDirect> {
@@ -374,6 +408,63 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
         delayInitialization = false;
     }
 
+    // Only possible before the matchers have been initialized (the steps refer to the memo).
+    void withWalkResultMemo(boolean useWalkResultMemo) {
+        walkResultMemo = useWalkResultMemo ? new WalkResultMemo() : null;
+    }
+
+    // Optional: Per matcher how often it was analyzed, how often it produced a result and how much time that took.
+    private boolean collectMatcherStatistics = false;
+
+    public synchronized void setCollectMatcherStatistics(boolean newCollectMatcherStatistics) {
+        this.collectMatcherStatistics = newCollectMatcherStatistics;
+    }
+
+    public boolean isCollectingMatcherStatistics() {
+        return collectMatcherStatistics;
+    }
+
+    public synchronized void resetMatcherStatistics() {
+        allMatchers.forEach(Matcher::resetStatistics);
+    }
+
+    /**
+     * Write the statistics of all matchers (the most productive first) as tab separated values with the columns:
+     * matcher (file:line), analyzed, matched and nanoseconds (the total time spent in analyzing this matcher).
+     * @param writer Where to write the statistics to.
+     * @throws IOException If writing failed.
+     */
+    public synchronized void writeMatcherStatistics(Writer writer) throws IOException {
+        List<Matcher> matchers = new ArrayList<>(allMatchers);
+        matchers.sort(Comparator
+            .comparingLong(Matcher::getMatchedCount).reversed()
+            .thenComparing(Comparator.comparingLong(Matcher::getAnalyzedCount).reversed())
+            .thenComparing(Matcher::getMatcherSourceLocation));
+
+        writer.write("Matcher\tAnalyzed\tMatched\tNanoseconds\n");
+        for (Matcher matcher : matchers) {
+            writer.write(matcher.getMatcherSourceLocation() + '\t' +
+                matcher.getAnalyzedCount() + '\t' +
+                matcher.getMatchedCount() + '\t' +
+                matcher.getAnalyzeNanos() + '\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return The source locations (file:line) of all matchers that produced a result at least once
+     * since the matcher statistics were last reset (this needs the matcher statistics to be collected).
+     */
+    public synchronized Set<String> getMatchedMatcherSourceLocations() {
+        Set<String> locations = new TreeSet<>();
+        for (Matcher matcher : allMatchers) {
+            if (matcher.getMatchedCount() > 0) {
+                locations.add(matcher.getMatcherSourceLocation());
+            }
+        }
+        return locations;
+    }
+
     public AbstractUserAgentAnalyzerDirect setShowMatcherStats(boolean newShowMatcherStats) {
         this.showMatcherStats = newShowMatcherStats;
         return this;
@@ -590,13 +681,18 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
             throw new InvalidParserConfigurationException("No matchers were loaded at all.");
         }
 
+        // Many lookups and sets contain the same keys and values so we retain only a single instance of each string.
+        Map<String, String> uniqueStrings = new HashMap<>(16384);
+
         if (lookups != null && !lookups.isEmpty()) {
             // All compares are done in a case insensitive way. So we lowercase ALL keys of the lookups beforehand.
             Map<String, Map<String, String>> cleanedLookups = new LinkedHashMap<>(lookups.size());
             for (Map.Entry<String, Map<String, String>> lookupsEntry : lookups.entrySet()) {
-                Map<String, String> cleanedLookup = new LinkedHashMap<>(lookupsEntry.getValue().size());
+                Map<String, String> cleanedLookup = new LinkedHashMap<>(capacityFor(lookupsEntry.getValue().size()));
                 for (Map.Entry<String, String> entry : lookupsEntry.getValue().entrySet()) {
-                    cleanedLookup.put(entry.getKey().toLowerCase(), entry.getValue());
+                    cleanedLookup.put(
+                        unique(uniqueStrings, entry.getKey().toLowerCase()),
+                        unique(uniqueStrings, entry.getValue()));
                 }
                 cleanedLookups.put(lookupsEntry.getKey(), cleanedLookup);
             }
@@ -621,7 +717,15 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
             });
         }
 
+        lookupSets.replaceAll((name, lookupSet) -> {
+            Set<String> cleanedLookupSet = new LinkedHashSet<>(capacityFor(lookupSet.size()));
+            lookupSet.forEach(value -> cleanedLookupSet.add(unique(uniqueStrings, value)));
+            return cleanedLookupSet;
+        });
+
         allMatchers.clear();
+        lookupPrefixes.clear();
+        lookupKeySets.clear();
         for (Map.Entry<String, List<MappingNode>> matcherConfigEntry : matcherConfigs.entrySet()) {
             int skippedMatchers = 0;
             String configFilename = matcherConfigEntry.getKey();
@@ -709,13 +813,24 @@ public abstract class AbstractUserAgentAnalyzerDirect implements Analyzer, Seria
 
         long start = System.nanoTime();
         allMatchers.forEach(Matcher::initialize);
+
+        // Identical walks (and identical ends of walks) in different matchers are all done via a single shared instance.
+        Map<String, WalkList> sharedWalkLists = new HashMap<>(8192);
+        Map<String, Step>     sharedSteps     = new HashMap<>(8192);
+        long sharedWalks = 0;
+        for (Matcher matcher : allMatchers) {
+            sharedWalks += matcher.shareWalkLists(sharedWalkLists, sharedSteps);
+        }
         long stop = System.nanoTime();
 
         matchersHaveBeenInitialized = true;
-        LOG.info("Built in {} msec : Hashmap {}, Ranges map:{}",
+        LOG.info("Built in {} msec : Hashmap {}, Ranges map:{}, Walks: {} (shared {}), Steps: {}",
             (stop - start) / 1000000,
             informMatcherActions.size(),
-            informMatcherActionRanges.size());
+            informMatcherActionRanges.size(),
+            sharedWalkLists.size(),
+            sharedWalks,
+            sharedSteps.size());
 
         for (Matcher matcher: allMatchers) {
             if (matcher.getActionsThatRequireInput() == 0) {
@@ -867,6 +982,16 @@ config:
         }
     }
 
+    private static String unique(Map<String, String> uniqueStrings, String value) {
+        String existing = uniqueStrings.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    // The initial capacity of a hash based collection that will never need to grow to hold this many elements.
+    private static int capacityFor(int size) {
+        return (int) (size / 0.75F) + 1;
+    }
+
     private void loadYamlLookup(MappingNode entry, String filename) {
         String name = null;
         Map<String, String> map = null;
@@ -1093,6 +1218,30 @@ config:
 
     private transient MatcherList touchedMatchers = null;
 
+    // All steps that use the same lookup as a prefix lookup share the same instance.
+    private transient Map<String, PrefixLookup> lookupPrefixes = null;
+
+    @Override
+    public Map<String, PrefixLookup> getLookupPrefixes() {
+        return lookupPrefixes;
+    }
+
+    // All steps that use the same lookup as a set share the same set of its keys.
+    private transient Map<String, Set<String>> lookupKeySets = null;
+
+    @Override
+    public Map<String, Set<String>> getLookupKeySets() {
+        return lookupKeySets;
+    }
+
+    // Optional. The steps refer to this same instance so this is serialized (without the results).
+    private WalkResultMemo walkResultMemo = null;
+
+    @Override
+    public WalkResultMemo getWalkResultMemo() {
+        return walkResultMemo;
+    }
+
     @Override
     public void receivedInput(Matcher matcher) {
         if (zeroInputMatchers.contains(matcher)) {
@@ -1111,6 +1260,10 @@ config:
         }
         touchedMatchers.clear();
 
+        if (walkResultMemo != null) {
+            walkResultMemo.clear();
+        }
+
         for (Matcher matcher : zeroInputMatchers) {
             matcher.reset();
         }
@@ -1133,6 +1286,11 @@ config:
      * @return An ImmutableUserAgent copy of the results that is suitable for further usage and caching.
      */
     public synchronized ImmutableUserAgent parse(MutableUserAgent userAgent) {
+        return directParse(userAgent);
+    }
+
+    // The actual parsing which is also used for preheating because that must never touch a cache in a subclass.
+    private synchronized ImmutableUserAgent directParse(MutableUserAgent userAgent) {
         initializeMatchers();
         String useragentString = userAgent.getUserAgentString();
         if (useragentString != null && useragentString.length() > userAgentMaxLength) {
@@ -1160,7 +1318,7 @@ config:
             }
             // Fire all Analyzers with any input
             for (Matcher matcher : touchedMatchers) {
-                matcher.analyze(userAgent);
+                analyze(matcher, userAgent);
             }
 
             if (verbose) {
@@ -1168,7 +1326,7 @@ config:
             }
             // Fire all Analyzers that should not get input
             for (Matcher matcher : zeroInputMatchers) {
-                matcher.analyze(userAgent);
+                analyze(matcher, userAgent);
             }
 
             userAgent.processSetAll();
@@ -1182,6 +1340,14 @@ config:
         return new ImmutableUserAgent(hardCodedPostProcessing(userAgent));
     }
 
+    private void analyze(Matcher matcher, MutableUserAgent userAgent) {
+        if (collectMatcherStatistics) {
+            matcher.analyzeWithStatistics(userAgent);
+        } else {
+            matcher.analyze(userAgent);
+        }
+    }
+
     private static final List<String> HARD_CODED_GENERATED_FIELDS = new ArrayList<>();
 
     static {
@@ -1279,6 +1445,7 @@ config:
 
     /**
      * Runs all testcases once to heat up the JVM.
+     * The preheating bypasses (and thus does not change) the parse cache.
      * @return Number of actually done testcases.
      */
     public long preHeat() {
@@ -1325,7 +1492,7 @@ config:
                 String userAgentString = input.get("user_agent_string");
                 remainingIterations--;
                 // Calculate and use result to guarantee not optimized away.
-                if(!AbstractUserAgentAnalyzerDirect.this.parse(userAgentString).hasSyntaxError()) {
+                if(!directParse(new MutableUserAgent(userAgentString, wantedFieldNames)).hasSyntaxError()) {
                     goodResults++;
                 }
                 if (remainingIterations <= 0) {
@@ -1339,6 +1506,35 @@ config:
         return preheatIterations;
     }
 
+    /**
+     * Runs all the provided useragents once to heat up the JVM.
+     * This is useful when the testcases have not been retained.
+     * The preheating bypasses (and thus does not change) the parse cache.
+     * @param userAgentStrings The useragents that must be used.
+     * @param log Enable logging?
+     * @return Number of actually done useragents.
+     */
+    public long preHeat(Collection<String> userAgentStrings, boolean log) {
+        if (userAgentStrings == null || userAgentStrings.isEmpty()) {
+            LOG.warn("NO PREHEAT WAS DONE. Simply because there are no useragents available.");
+            return 0;
+        }
+        if (log) {
+            LOG.info("Preheating JVM by running {} useragents.", userAgentStrings.size());
+        }
+        long goodResults = 0;
+        for (String userAgentString : userAgentStrings) {
+            // Calculate and use result to guarantee not optimized away.
+            if(!directParse(new MutableUserAgent(userAgentString, wantedFieldNames)).hasSyntaxError()) {
+                goodResults++;
+            }
+        }
+        if (log) {
+            LOG.info("Preheating JVM completed. ({} of {} were proper results)", goodResults, userAgentStrings.size());
+        }
+        return userAgentStrings.size();
+    }
+
     // ===============================================================================================================
 
     public static class GetAllPathsAnalyzer implements Analyzer {
@@ -1627,6 +1823,48 @@ config:
             return (B)this;
         }
 
+        /**
+         * Remember the results of identical walks and steps during a parse so they are only done once.
+         * This costs about as much as it saves for the bundled test cases, so measure before using it.
+         * @return the current Builder instance.
+         */
+        public B withWalkResultMemo() {
+            failIfAlreadyBuilt();
+            uaa.withWalkResultMemo(true);
+            return (B)this;
+        }
+
+        /**
+         * Do all walks and steps every time they are needed during a parse (this is the default).
+         * @return the current Builder instance.
+         */
+        public B withoutWalkResultMemo() {
+            failIfAlreadyBuilt();
+            uaa.withWalkResultMemo(false);
+            return (B)this;
+        }
+
+        /**
+         * Collect per matcher how often it was analyzed, how often it produced a result and how much time that took.
+         * See writeMatcherStatistics.
+         * @return the current Builder instance.
+         */
+        public B withMatcherStatistics() {
+            failIfAlreadyBuilt();
+            uaa.setCollectMatcherStatistics(true);
+            return (B)this;
+        }
+
+        /**
+         * Do not collect any statistics per matcher (this is the default).
+         * @return the current Builder instance.
+         */
+        public B withoutMatcherStatistics() {
+            failIfAlreadyBuilt();
+            uaa.setCollectMatcherStatistics(false);
+            return (B)this;
+        }
+
         protected Set<String> allFieldsForWhichACalculatorExists = new HashSet<>();
 
         private void registerFieldCalculator(FieldCalculator fieldCalculator) {
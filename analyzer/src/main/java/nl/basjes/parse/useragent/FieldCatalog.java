@@ -0,0 +1,125 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The names of all fields that can be extracted using the packaged rules.
+ * This list is generated during the build and shipped as a resource so that
+ * it is available without loading all the rules into an analyzer.
+ */
+public final class FieldCatalog {
+    private static final Logger LOG = LoggerFactory.getLogger(FieldCatalog.class);
+
+    static final String FIELD_CATALOG_RESOURCE = "FieldCatalog.txt";
+
+    private FieldCatalog() {
+    }
+
+    private static final class Holder {
+        private static final List<String> ALL_POSSIBLE_FIELD_NAMES_SORTED =
+            Collections.unmodifiableList(loadFieldNames());
+    }
+
+    /**
+     * The same as {@link UserAgentAnalyzer#getAllPossibleFieldNamesSorted()} for an analyzer
+     * with only the packaged rules (i.e. no additional resources).
+     * @return The sorted list of all field names (standard fields first)
+     */
+    public static List<String> getAllPossibleFieldNamesSorted() {
+        return Holder.ALL_POSSIBLE_FIELD_NAMES_SORTED;
+    }
+
+    private static List<String> loadFieldNames() {
+        try (InputStream input = FieldCatalog.class.getResourceAsStream(FIELD_CATALOG_RESOURCE)) {
+            if (input != null) {
+                return readFieldNames(input);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read the field catalog: {}", e.getMessage());
+        }
+
+        // Only happens if the build did not generate the catalog (i.e. some IDE setups).
+        LOG.warn("No field catalog found: determining the field names from the rules.");
+        return determineFieldNames();
+    }
+
+    static List<String> readFieldNames(InputStream input) throws IOException {
+        List<String> fieldNames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    fieldNames.add(line);
+                }
+            }
+        }
+        return fieldNames;
+    }
+
+    static List<String> determineFieldNames() {
+        return UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .delayInitialization()
+            .dropTests()
+            .build()
+            .getAllPossibleFieldNamesSorted();
+    }
+
+    /**
+     * Used during the build to generate the field catalog.
+     * @param args The name of the file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: FieldCatalog <outputfile>");
+        }
+        Path outputFile = Paths.get(args[0]);
+        Path directory  = outputFile.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        List<String> fieldNames = determineFieldNames();
+        try (Writer writer = Files.newBufferedWriter(outputFile, UTF_8)) {
+            for (String fieldName : fieldNames) {
+                writer.write(fieldName);
+                writer.write('\n');
+            }
+        }
+        LOG.info("Wrote the {} field names to {}", fieldNames.size(), outputFile);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.useragent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * A small pool of identical analyzers that are handed out round robin.
+ * Because the parse of a single analyzer is synchronized this allows many threads to share
+ * a few analyzers instead of all of them waiting for the same one.
+ * An analyzer is only built when its place in the pool is used for the first time.
+ */
+public final class UserAgentAnalyzerPool {
+
+    private final Supplier<UserAgentAnalyzer>             analyzerSupplier;
+    private final AtomicReferenceArray<UserAgentAnalyzer> analyzers;
+    private final AtomicInteger                           next = new AtomicInteger();
+
+    /**
+     * @param poolSize The (maximum) number of analyzers in this pool
+     * @param analyzerSupplier Builds a new analyzer when needed
+     */
+    public UserAgentAnalyzerPool(int poolSize, Supplier<UserAgentAnalyzer> analyzerSupplier) {
+        this.analyzerSupplier = analyzerSupplier;
+        this.analyzers        = new AtomicReferenceArray<>(Math.max(1, poolSize));
+    }
+
+    /**
+     * The pool size that can be set with a system property.
+     * By default this is the number of available processors with a maximum of 4.
+     * @param systemProperty The name of the system property
+     * @return The pool size (at least 1)
+     */
+    public static int getPoolSize(String systemProperty) {
+        return Math.max(1,
+            Integer.getInteger(systemProperty, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * @return The (maximum) number of analyzers in this pool.
+     */
+    public int getPoolSize() {
+        return analyzers.length();
+    }
+
+    /**
+     * @return The next analyzer (round robin), this is built if it does not exist yet.
+     */
+    public UserAgentAnalyzer get() {
+        int slot = Math.floorMod(next.getAndIncrement(), analyzers.length());
+        UserAgentAnalyzer analyzer = analyzers.get(slot);
+        if (analyzer == null) {
+            // Building is done under the lock of this pool only.
+            synchronized (this) {
+                analyzer = analyzers.get(slot);
+                if (analyzer == null) {
+                    analyzer = analyzerSupplier.get();
+                    analyzers.set(slot, analyzer);
+                }
+            }
+        }
+        return analyzer;
+    }
+
+}
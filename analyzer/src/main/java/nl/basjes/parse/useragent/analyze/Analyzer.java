@@ -18,9 +18,12 @@
 package nl.basjes.parse.useragent.analyze;
 
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,9 +45,32 @@ public interface Analyzer extends Serializable {
         // Nothing to do
     }
 
+    /**
+     * @return The memo of the results of the walks during the current parse (null means no memo).
+     */
+    default WalkResultMemo getWalkResultMemo() {
+        return null;
+    }
+
     Map<String, Map<String, String>> getLookups();
 
     Map<String, Set<String>> getLookupSets();
 
+    /**
+     * The prefix lookups are immutable and can be shared by all steps that use the same lookup.
+     * @return The prefix lookups that have been built (by default a new empty map so nothing is shared).
+     */
+    default Map<String, PrefixLookup> getLookupPrefixes() {
+        return new HashMap<>();
+    }
+
+    /**
+     * When a lookup is used as a set all steps can share the same set of its keys.
+     * @return The key sets that have been built (by default a new empty map so nothing is shared).
+     */
+    default Map<String, Set<String>> getLookupKeySets() {
+        return new HashMap<>();
+    }
+
     List<Map<String, Map<String, String>>> getTestCases();
 }
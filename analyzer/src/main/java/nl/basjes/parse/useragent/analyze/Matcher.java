@@ -19,6 +19,10 @@ package nl.basjes.parse.useragent.analyze;
 
 import nl.basjes.parse.useragent.AgentField;
 import nl.basjes.parse.useragent.UserAgent.MutableUserAgent;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import nl.basjes.parse.useragent.utils.YamlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +99,14 @@ public class Matcher implements Serializable {
         return analyzer.getLookupSets();
     }
 
+    public Map<String, PrefixLookup> getLookupPrefixes() {
+        return analyzer.getLookupPrefixes();
+    }
+
+    public Map<String, Set<String>> getLookupKeySets() {
+        return analyzer.getLookupKeySets();
+    }
+
     static class ConfigLine {
         public enum Type {
             VARIABLE,
@@ -341,6 +353,26 @@ public class Matcher implements Serializable {
         return results;
     }
 
+    /**
+     * Let all actions use the shared instance of identical walk lists.
+     * @param sharedWalkLists All shared walk lists (by definition).
+     * @param sharedSteps All shared steps (by the definition of the step and all steps after it).
+     * @return The number of walk lists that were replaced by a shared instance.
+     */
+    public long shareWalkLists(Map<String, WalkList> sharedWalkLists, Map<String, Step> sharedSteps) {
+        long sharedWalks = 0;
+        for (MatcherAction action : dynamicActions) {
+            if (action.evaluator.shareWalkList(sharedWalkLists, sharedSteps)) {
+                sharedWalks++;
+            }
+        }
+        return sharedWalks;
+    }
+
+    public WalkResultMemo getWalkResultMemo() {
+        return analyzer.getWalkResultMemo();
+    }
+
     public void lookingForRange(String treeName, WordRangeVisitor.Range range) {
         analyzer.lookingForRange(treeName, range);
     }
@@ -368,6 +400,11 @@ public class Matcher implements Serializable {
      * @param userAgent The useragent that needs to analyzed
      */
     public void analyze(MutableUserAgent userAgent) {
+        analyzeAndApply(userAgent);
+    }
+
+    // Returns true if this matcher has set its values in the useragent.
+    private boolean analyzeAndApply(MutableUserAgent userAgent) {
 
         if (verbose) {
             LOG.info("");
@@ -390,20 +427,61 @@ public class Matcher implements Serializable {
                 LOG.info("COMPLETE ----------------------------");
             } else {
                 LOG.info("INCOMPLETE ----------------------------");
-                return;
+                return false;
             }
         } else {
             if (actionsThatRequireInput != actionsThatRequireInputAndReceivedInput) {
-                return;
+                return false;
             }
             for (MatcherAction action : dynamicActions) {
                 if (action.obtainResult()) {
                     continue;
                 }
-                return; // If one of them is bad we skip the rest
+                return false; // If one of them is bad we skip the rest
             }
         }
         userAgent.set(newValuesUserAgent, this);
+        return true;
+    }
+
+    // The statistics are only collected if the analyzer has been asked to do so.
+    private transient long analyzedCount = 0;
+    private transient long matchedCount  = 0;
+    private transient long analyzeNanos  = 0;
+
+    /**
+     * Does the same as analyze and records how often this matcher was analyzed,
+     * how often it produced a result and how much time that took.
+     * @param userAgent The useragent that needs to analyzed
+     * @return true if this matcher has set its values in the useragent.
+     */
+    public boolean analyzeWithStatistics(MutableUserAgent userAgent) {
+        long start = System.nanoTime();
+        boolean matched = analyzeAndApply(userAgent);
+        analyzeNanos += System.nanoTime() - start;
+        analyzedCount++;
+        if (matched) {
+            matchedCount++;
+        }
+        return matched;
+    }
+
+    public long getAnalyzedCount() {
+        return analyzedCount;
+    }
+
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    public long getAnalyzeNanos() {
+        return analyzeNanos;
+    }
+
+    public void resetStatistics() {
+        analyzedCount = 0;
+        matchedCount  = 0;
+        analyzeNanos  = 0;
     }
 
     public boolean getVerbose() {
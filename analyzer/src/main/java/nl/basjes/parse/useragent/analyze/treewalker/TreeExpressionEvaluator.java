@@ -19,6 +19,7 @@ package nl.basjes.parse.useragent.analyze.treewalker;
 
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import nl.basjes.parse.useragent.analyze.Matcher;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerBaseVisitor;
@@ -45,7 +46,7 @@ public class TreeExpressionEvaluator implements Serializable {
 
     private final String requiredPatternText;
     private final Matcher matcher;
-    private final WalkList walkList;
+    private WalkList walkList;
     private final String fixedValue;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
@@ -64,7 +65,8 @@ public class TreeExpressionEvaluator implements Serializable {
         this.matcher = matcher;
         this.verbose = verbose;
         this.fixedValue = calculateFixedValue(requiredPattern);
-        walkList = new WalkList(requiredPattern, matcher.getLookups(), matcher.getLookupSets(), verbose);
+        walkList = new WalkList(requiredPattern, matcher.getLookups(), matcher.getLookupSets(),
+            matcher.getLookupPrefixes(), matcher.getLookupKeySets(), verbose);
     }
 
     public void destroy() {
@@ -134,13 +136,39 @@ public class TreeExpressionEvaluator implements Serializable {
 
     // ------------------------------------------
 
+    /**
+     * Switch to the shared instance of an identical walk list (if it exists).
+     * All actions that do the same walk then share the results of this walk during a parse.
+     * @param sharedWalkLists All shared walk lists (by definition).
+     * @param sharedSteps All shared steps (by the definition of the step and all steps after it).
+     * @return true if an existing shared walk list is used.
+     */
+    public boolean shareWalkList(Map<String, WalkList> sharedWalkLists, Map<String, Step> sharedSteps) {
+        if (verbose) {
+            return false; // A verbose walk list must log every step it does.
+        }
+        WalkList sharedWalkList = sharedWalkLists.putIfAbsent(walkList.getWalkDefinition(), walkList);
+        if (sharedWalkList == null) {
+            walkList.shareSteps(sharedSteps, matcher.getWalkResultMemo());
+            return false;
+        }
+        walkList = sharedWalkList;
+        return true;
+    }
+
     public WalkResult evaluate(ParseTree tree, String key, String value) {
         if (verbose) {
             LOG.info("Evaluate: {} => {}", key, value);
             LOG.info("Pattern : {}", requiredPatternText);
             LOG.info("WalkList: {}", walkList);
         }
-        WalkResult result = walkList.walk(tree, value);
+        WalkResult result;
+        WalkResultMemo walkResultMemo = (tree == null || verbose) ? null : matcher.getWalkResultMemo();
+        if (walkResultMemo == null) {
+            result = walkList.walk(tree, value);
+        } else {
+            result = walkResultMemo.walk(walkList, tree, value);
+        }
         if (verbose) {
             LOG.info("Evaluate: Result = {}", result == null ? "null" : result.getValue());
         }
@@ -0,0 +1,205 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze.treewalker;
+
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Remembers the results of the walks that have been done during a single parse.
+ * Identical walks in different matchers share the same WalkList instance so
+ * such a walk is only done once for each node in the tree.
+ * Walks that end in the same steps share those Step instances so the result of
+ * a memoizable step (and all steps after it) is also only determined once.
+ * This must be cleared before each parse.
+ */
+public final class WalkResultMemo implements Serializable {
+    // The result of a walk that did not find anything.
+    private static final WalkResult NO_RESULT = new WalkResult(null, null);
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Open addressing (linear probing) in parallel arrays to avoid an object per entry.
+    // The walk (either a WalkList or a Step) and the tree are compared on identity.
+    private transient Object[]     walks;
+    private transient ParseTree[]  trees;
+    private transient String[]     values;
+    private transient WalkResult[] results;
+    private transient int          mask;
+    private transient int          size;
+
+    private transient long         walkRequests = 0;
+    private transient long         walkHits     = 0;
+    private transient long         stepRequests = 0;
+    private transient long         stepHits     = 0;
+
+    private void allocate(int capacity) {
+        walks   = new Object[capacity];
+        trees   = new ParseTree[capacity];
+        values  = new String[capacity];
+        results = new WalkResult[capacity];
+        mask    = capacity - 1;
+        size    = 0;
+    }
+
+    private static int hash(Object walk, ParseTree tree, String value) {
+        int hash = System.identityHashCode(walk) * 31 + System.identityHashCode(tree);
+        if (value != null) {
+            hash = hash * 31 + value.hashCode();
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameValue(String value1, String value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
+    }
+
+    // Returns the index of the entry, or of the free slot where it must be stored.
+    private int find(Object walk, ParseTree tree, String value) {
+        if (walks == null) {
+            allocate(INITIAL_CAPACITY);
+        }
+        int index = hash(walk, tree, value) & mask;
+        while (walks[index] != null) {
+            if (walks[index] == walk && trees[index] == tree && sameValue(values[index], value)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private WalkResult store(Object walk, ParseTree tree, String value, WalkResult result) {
+        // The walk itself may have stored (and grown) entries so the slot is determined again.
+        int index = find(walk, tree, value);
+        walks[index]   = walk;
+        trees[index]   = tree;
+        values[index]  = value;
+        results[index] = result == null ? NO_RESULT : result;
+        size++;
+        if (size * 2 > walks.length) {
+            grow();
+        }
+        return result;
+    }
+
+    /**
+     * Do the walk, or return the result of the identical walk that was already done during this parse.
+     * @param walkList The walk
+     * @param tree     The starting point of the walk
+     * @param value    The value at the starting point
+     * @return The result of the walk (null if nothing was found)
+     */
+    public WalkResult walk(WalkList walkList, ParseTree tree, String value) {
+        walkRequests++;
+        int index = find(walkList, tree, value);
+        if (walks[index] != null) {
+            walkHits++;
+            WalkResult result = results[index];
+            return result == NO_RESULT ? null : result;
+        }
+        return store(walkList, tree, value, walkList.walk(tree, value));
+    }
+
+    /**
+     * Do the step (and all steps after it), or return the result if this was already done during this parse.
+     * @param step     The step
+     * @param tree     The node on which the step is done
+     * @param value    The value at this node
+     * @return The result of the step (null if nothing was found)
+     */
+    public WalkResult walk(Step step, ParseTree tree, String value) {
+        stepRequests++;
+        int index = find(step, tree, value);
+        if (walks[index] != null) {
+            stepHits++;
+            WalkResult result = results[index];
+            return result == NO_RESULT ? null : result;
+        }
+        return store(step, tree, value, step.walk(tree, value));
+    }
+
+    private void grow() {
+        Object[]     oldWalks   = walks;
+        ParseTree[]  oldTrees   = trees;
+        String[]     oldValues  = values;
+        WalkResult[] oldResults = results;
+
+        allocate(oldWalks.length * 2);
+        for (int i = 0; i < oldWalks.length; i++) {
+            if (oldWalks[i] != null) {
+                int index = hash(oldWalks[i], oldTrees[i], oldValues[i]) & mask;
+                while (walks[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                walks[index]   = oldWalks[i];
+                trees[index]   = oldTrees[i];
+                values[index]  = oldValues[i];
+                results[index] = oldResults[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Forget all remembered results (also releases the references to the parse tree).
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(walks,   null);
+        Arrays.fill(trees,   null);
+        Arrays.fill(values,  null);
+        Arrays.fill(results, null);
+        size = 0;
+    }
+
+    /**
+     * @return The number of complete walks that were requested (since the creation of this memo).
+     */
+    public long getWalkRequests() {
+        return walkRequests;
+    }
+
+    /**
+     * @return The number of complete walks that did not need to be done because the result was already known.
+     */
+    public long getWalkHits() {
+        return walkHits;
+    }
+
+    /**
+     * @return The number of memoizable steps that were requested (since the creation of this memo).
+     */
+    public long getStepRequests() {
+        return stepRequests;
+    }
+
+    /**
+     * @return The number of memoizable steps that did not need to be done because the result was already known.
+     */
+    public long getStepHits() {
+        return stepHits;
+    }
+}
@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps;
 
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
 import nl.basjes.parse.useragent.parser.UserAgentParser;
 import nl.basjes.parse.useragent.parser.UserAgentParser.CommentSeparatorContext;
@@ -35,6 +36,8 @@ public abstract class Step implements Serializable {
     private int stepNr;
     protected String logprefix = "";
     private Step nextStep;
+    // The memo for the result of the next step (null if the next step is not memoizable).
+    private WalkResultMemo nextStepMemo = null;
 
     protected boolean verbose = false;
 
@@ -42,6 +45,10 @@ public abstract class Step implements Serializable {
         this.verbose = newVerbose;
     }
 
+    public void setNextStepMemo(WalkResultMemo newNextStepMemo) {
+        this.nextStepMemo = newNextStepMemo;
+    }
+
     public void destroy() {
         nextStep = null;
     }
@@ -68,6 +75,10 @@ public abstract class Step implements Serializable {
             return new WalkResult(tree, result);
         }
 
+        if (nextStepMemo != null) {
+            return nextStepMemo.walk(nextStep, tree, value);
+        }
+
         if (verbose) {
             LOG.info("{} Tree: >>>{}<<<", logprefix, getSourceText((ParserRuleContext)tree));
             LOG.info("{} Enter step({}): {}", logprefix, stepNr, nextStep);
@@ -138,6 +149,15 @@ public abstract class Step implements Serializable {
         return true; // Default is to assume the step always needs input.
     }
 
+    /**
+     * The result of some steps only depends on the provided tree and value and
+     * is expensive enough to remember the result during a parse.
+     * @return If the result of this step (and all steps after it) should be remembered.
+     */
+    public boolean isMemoizable() {
+        return false; // Default is to assume it is cheaper to simply do the step again.
+    }
+
     public Step getNextStep() {
         return nextStep;
     }
@@ -20,6 +20,7 @@ package nl.basjes.parse.useragent.analyze.treewalker.steps;
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor;
 import nl.basjes.parse.useragent.analyze.WordRangeVisitor.Range;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepContains;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepDefaultIfNull;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.compare.StepEndsWith;
@@ -89,6 +90,7 @@ import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser.StepPrevContex
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser.StepStartsWithValueContext;
 import nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser.StepUpContext;
 import nl.basjes.parse.useragent.utils.AntlrUtils;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -110,9 +112,14 @@ import static nl.basjes.parse.useragent.parser.UserAgentTreeWalkerParser.StepWor
 public class WalkList implements Serializable {
     private static final Logger LOG = LoggerFactory.getLogger(WalkList.class);
 
+    // In the shared prefix lookups a lookup set is stored with this prefix because a lookup can have the same name.
+    public static final String LOOKUP_SET_PREFIX = "Set:";
+
     private final Map<String, Map<String, String>> lookups;
     private final Map<String, Set<String>>         lookupSets;
     private final List<Step> steps = new ArrayList<>();
+    // The first of the steps (null if there are no steps) so a walk can start without going through the list.
+    private Step firstStep = null;
 
     private final boolean verbose;
 
@@ -152,12 +159,14 @@ public class WalkList implements Serializable {
     public WalkList(ParserRuleContext requiredPattern,
                     Map<String, Map<String, String>> lookups,
                     Map<String, Set<String>> lookupSets,
+                    Map<String, PrefixLookup> lookupPrefixes,
+                    Map<String, Set<String>> lookupKeySets,
                     boolean verbose) {
         this.lookups = lookups;
         this.lookupSets = lookupSets;
         this.verbose = verbose;
         // Generate the walkList from the requiredPattern
-        new WalkListBuilder().visit(requiredPattern);
+        new WalkListBuilder(lookupPrefixes, lookupKeySets).visit(requiredPattern);
         linkSteps();
 
         int i = 1;
@@ -174,6 +183,7 @@ public class WalkList implements Serializable {
     public void destroy() {
         steps.forEach(Step::destroy);
         steps.clear();
+        firstStep = null;
         lookups.clear();
         lookupSets.clear();
     }
@@ -185,6 +195,7 @@ public class WalkList implements Serializable {
             current.setNextStep(i, nextStep);
             nextStep = current;
         }
+        firstStep = nextStep;
     }
 
     public long pruneTrailingStepsThatCannotFail() {
@@ -203,6 +214,7 @@ public class WalkList implements Serializable {
         if (lastStepThatCannotFail == 0) {
             long prunedSteps = steps.size();
             steps.clear();
+            firstStep = null;
             return prunedSteps;
         }
 
@@ -215,10 +227,9 @@ public class WalkList implements Serializable {
     }
 
     public WalkResult walk(ParseTree tree, String value) {
-        if (steps.isEmpty()) {
+        if (firstStep == null) {
             return new WalkResult(tree, value);
         }
-        Step firstStep = steps.get(0);
         if (verbose) {
             Step.LOG.info("Tree: >>>{}<<<", AntlrUtils.getSourceText((ParserRuleContext)tree));
             Step.LOG.info("Enter step: {}", firstStep);
@@ -231,7 +242,7 @@ public class WalkList implements Serializable {
     }
 
     public Step getFirstStep() {
-        return steps.isEmpty() ? null : steps.get(0);
+        return firstStep;
     }
 
     private Boolean mustHaveMatches = null;
@@ -254,6 +265,56 @@ public class WalkList implements Serializable {
         return mustHaveMatches;
     }
 
+    // The length avoids ambiguity when a value in a step looks like the start of the next step.
+    private static String getStepDefinition(Step step) {
+        String stepDefinition = step.toString();
+        return stepDefinition.length() + ":" + stepDefinition;
+    }
+
+    /**
+     * Two walk lists with the same definition do exactly the same walk (and thus always have the same result).
+     * @return The definition of all the steps in this walk list.
+     */
+    public String getWalkDefinition() {
+        StringBuilder sb = new StringBuilder(128);
+        for (Step step : steps) {
+            sb.append(getStepDefinition(step));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Let this walk list use the shared instances of the steps at the end of the walk that are identical
+     * to the steps at the end of other walk lists (i.e. the same step followed by the same steps).
+     * @param sharedSteps All shared steps (by the definition of the step and all steps after it).
+     * @param walkResultMemo The memo for the results of the memoizable steps (null means no memo).
+     */
+    public void shareSteps(Map<String, Step> sharedSteps, WalkResultMemo walkResultMemo) {
+        if (verbose) {
+            return; // A verbose step must log everything it does.
+        }
+        Step   nextStep       = null;
+        String nextDefinition = "";
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            Step   step       = steps.get(i);
+            String definition = getStepDefinition(step) + nextDefinition;
+            Step sharedStep = sharedSteps.get(definition);
+            if (sharedStep == null) {
+                // This step is not yet used by any other walk list so it can be changed.
+                step.setNextStep(i, nextStep);
+                if (nextStep != null && nextStep.isMemoizable()) {
+                    step.setNextStepMemo(walkResultMemo);
+                }
+                sharedSteps.put(definition, step);
+                sharedStep = step;
+            }
+            steps.set(i, sharedStep);
+            nextStep       = sharedStep;
+            nextDefinition = definition;
+        }
+        firstStep = nextStep;
+    }
+
     @Override
     public String toString() {
         if (steps.isEmpty()) {
@@ -268,6 +329,16 @@ public class WalkList implements Serializable {
 
     private class WalkListBuilder extends UserAgentTreeWalkerBaseVisitor<Void> {
 
+        // The shared prefix lookups (see LOOKUP_SET_PREFIX).
+        private final Map<String, PrefixLookup> lookupPrefixes;
+        // The shared sets of keys of the lookups that are used as a set.
+        private final Map<String, Set<String>>  lookupKeySets;
+
+        WalkListBuilder(Map<String, PrefixLookup> lookupPrefixes, Map<String, Set<String>> lookupKeySets) {
+            this.lookupPrefixes = lookupPrefixes;
+            this.lookupKeySets  = lookupKeySets;
+        }
+
         // Because we are jumping in 'mid way' we need to skip creating steps until that point.
         boolean foundHashEntryPoint = false;
 
@@ -337,9 +408,8 @@ public class WalkList implements Serializable {
             fromHereItCannotBeInHashMapAnymore();
 
             String lookupName = ctx.lookup.getText();
-            Map<String, String> lookup = getLookup(lookupName);
 
-            add(new StepLookupPrefix(lookupName, lookup, extractText(ctx.defaultValue)));
+            add(new StepLookupPrefix(lookupName, getLookupPrefix(lookupName), extractText(ctx.defaultValue)));
             return null; // Void
         }
 
@@ -365,9 +435,8 @@ public class WalkList implements Serializable {
             fromHereItCannotBeInHashMapAnymore();
 
             String lookupName = ctx.lookup.getText();
-            Map<String, String> lookup = getLookup(lookupName);
 
-            add(new StepIsInLookupPrefix(lookupName, lookup));
+            add(new StepIsInLookupPrefix(lookupName, getLookupPrefix(lookupName)));
             return null; // Void
         }
 
@@ -380,11 +449,11 @@ public class WalkList implements Serializable {
             String              lookupName = ctx.lookup.getText();
             Set<String>         lookupSet  = lookupSets.get(lookupName);
             if (lookupSet != null) {
-                add(new StepIsNotInLookupPrefix(lookupName, lookupSet));
+                add(new StepIsNotInLookupPrefix(lookupName, getLookupSetPrefix(lookupName, lookupSet)));
             } else {
                 Map<String, String> lookup     = lookups.get(lookupName);
                 if (lookup != null) {
-                    add(new StepIsNotInLookupPrefix(lookupName, lookup));
+                    add(new StepIsNotInLookupPrefix(lookupName, getLookupPrefix(lookupName)));
                 } else {
                     throw new InvalidParserConfigurationException("Missing lookup/set \"" + lookupName + "\" ");
                 }
@@ -409,6 +478,15 @@ public class WalkList implements Serializable {
             return lookup;
         }
 
+        private PrefixLookup getLookupPrefix(String lookupName) {
+            Map<String, String> lookup = getLookup(lookupName);
+            return lookupPrefixes.computeIfAbsent(lookupName, name -> new PrefixLookup(lookup));
+        }
+
+        private PrefixLookup getLookupSetPrefix(String lookupName, Set<String> lookupSet) {
+            return lookupPrefixes.computeIfAbsent(LOOKUP_SET_PREFIX + lookupName, name -> new PrefixLookup(lookupSet));
+        }
+
         @Override
         public Void visitMatcherCleanVersion(MatcherCleanVersionContext ctx) {
             visit(ctx.matcher());
@@ -611,7 +689,7 @@ public class WalkList implements Serializable {
             if (lookupSet == null) {
                 Map<String, String> lookup = lookups.get(lookupSetName);
                 if (lookup != null) {
-                    lookupSet = new LinkedHashSet<>(lookup.keySet());
+                    lookupSet = lookupKeySets.computeIfAbsent(lookupSetName, name -> new LinkedHashSet<>(lookup.keySet()));
                 }
             }
             if (lookupSet == null) {
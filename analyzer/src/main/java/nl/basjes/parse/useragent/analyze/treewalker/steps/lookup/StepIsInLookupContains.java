@@ -56,6 +56,11 @@ public class StepIsInLookupContains extends Step {
         return null;
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "IsInLookupContains(@" + lookupName + ")";
@@ -17,10 +17,9 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.collections.PrefixMap;
-import nl.basjes.collections.prefixmap.StringPrefixMap;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
@@ -28,18 +27,21 @@ import java.util.Map;
 public class StepIsInLookupPrefix extends Step {
 
     private final String            lookupName;
-    private final PrefixMap<String> prefixMap;
+    private final PrefixLookup      prefixLookup;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private StepIsInLookupPrefix() {
         lookupName = null;
-        prefixMap = null;
+        prefixLookup = null;
     }
 
     public StepIsInLookupPrefix(String lookupName, Map<String, String> prefixList) {
+        this(lookupName, new PrefixLookup(prefixList));
+    }
+
+    public StepIsInLookupPrefix(String lookupName, PrefixLookup prefixLookup) {
         this.lookupName = lookupName;
-        this.prefixMap = new StringPrefixMap<>(false);
-        this.prefixMap.putAll(prefixList);
+        this.prefixLookup = prefixLookup;
     }
 
     @Override
@@ -49,7 +51,7 @@ public class StepIsInLookupPrefix extends Step {
         String result = null;
 
         if (actualValue != null) {
-            result = prefixMap.getLongestMatch(actualValue);
+            result = prefixLookup.getLongestMatch(actualValue);
         }
 
         if (result == null) {
@@ -58,6 +60,11 @@ public class StepIsInLookupPrefix extends Step {
         return walkNextStep(tree, actualValue);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "IsInLookupPrefix(@" + lookupName + ")";
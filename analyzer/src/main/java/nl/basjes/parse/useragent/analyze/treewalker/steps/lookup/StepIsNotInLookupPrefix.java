@@ -17,40 +17,36 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.collections.PrefixMap;
-import nl.basjes.collections.prefixmap.StringPrefixMap;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 public class StepIsNotInLookupPrefix extends Step {
 
     private final String            lookupName;
-    private final PrefixMap<String> prefixMap;
+    private final PrefixLookup      prefixLookup;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private StepIsNotInLookupPrefix() {
         lookupName = null;
-        prefixMap = null;
+        prefixLookup = null;
     }
 
     public StepIsNotInLookupPrefix(String lookupName, Map<String, String> prefixList) {
-        this.lookupName = lookupName;
-        this.prefixMap = new StringPrefixMap<>(false);
-        this.prefixMap.putAll(prefixList);
+        this(lookupName, new PrefixLookup(prefixList));
     }
 
     public StepIsNotInLookupPrefix(String lookupName, Set<String> prefixSet) {
-        this.lookupName = lookupName;
-        this.prefixMap = new StringPrefixMap<>(false);
+        this(lookupName, new PrefixLookup(prefixSet));
+    }
 
-        Map<String, String> theMap = new HashMap<>((int)(prefixSet.size()/0.75F));
-        prefixSet.forEach(v -> theMap.put(v, ""));
-        this.prefixMap.putAll(theMap);
+    public StepIsNotInLookupPrefix(String lookupName, PrefixLookup prefixLookup) {
+        this.lookupName = lookupName;
+        this.prefixLookup = prefixLookup;
     }
 
     @Override
@@ -60,7 +56,7 @@ public class StepIsNotInLookupPrefix extends Step {
         String result = null;
 
         if (actualValue != null) {
-            result = prefixMap.getLongestMatch(actualValue);
+            result = prefixLookup.getLongestMatch(actualValue);
         }
 
         if (result != null) {
@@ -69,6 +65,11 @@ public class StepIsNotInLookupPrefix extends Step {
         return walkNextStep(tree, actualValue);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "IsNotInLookupPrefix(@" + lookupName + ")";
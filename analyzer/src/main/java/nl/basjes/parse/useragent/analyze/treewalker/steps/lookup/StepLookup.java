@@ -76,6 +76,11 @@ public class StepLookup extends Step {
         return walkNextStep(tree, result);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "Lookup(@" + lookupName + " ; default=" + defaultValue + ")";
@@ -63,6 +63,11 @@ public class StepLookupContains extends Step {
         return walkNextStep(tree, defaultValue);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "LookupContains(@" + lookupName + " ; default="+defaultValue+")";
@@ -17,10 +17,9 @@
 
 package nl.basjes.parse.useragent.analyze.treewalker.steps.lookup;
 
-import nl.basjes.collections.PrefixMap;
-import nl.basjes.collections.prefixmap.StringPrefixMap;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
 import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList.WalkResult;
+import nl.basjes.parse.useragent.utils.PrefixLookup;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.util.Map;
@@ -29,22 +28,25 @@ public class StepLookupPrefix extends Step {
 
     private final String            lookupName;
     private final String            defaultValue;
-    private final PrefixMap<String> prefixMap;
+    private final PrefixLookup      prefixLookup;
     private final boolean           canFail;
 
     @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
     private StepLookupPrefix() {
         lookupName = null;
         defaultValue = null;
-        prefixMap = null;
+        prefixLookup = null;
         canFail = true;
     }
 
     public StepLookupPrefix(String lookupName, Map<String, String> prefixList, String defaultValue) {
+        this(lookupName, new PrefixLookup(prefixList), defaultValue);
+    }
+
+    public StepLookupPrefix(String lookupName, PrefixLookup prefixLookup, String defaultValue) {
         this.lookupName = lookupName;
         this.defaultValue = defaultValue;
-        this.prefixMap = new StringPrefixMap<>(false);
-        this.prefixMap.putAll(prefixList);
+        this.prefixLookup = prefixLookup;
         canFail = defaultValue == null;
     }
 
@@ -60,7 +62,7 @@ public class StepLookupPrefix extends Step {
         String result = null;
 
         if (actualValue != null) {
-            result = prefixMap.getLongestMatch(actualValue);
+            result = prefixLookup.getLongestMatch(actualValue);
         }
 
         if (result == null) {
@@ -74,6 +76,11 @@ public class StepLookupPrefix extends Step {
     }
 
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "LookupPrefix(@" + lookupName + " ; default="+defaultValue+")";
@@ -43,6 +43,11 @@ public class StepCleanVersion extends Step {
         return false;
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "CleanVersion()";
@@ -39,6 +39,11 @@ public class StepNormalizeBrand extends Step {
         return false;
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "NormalizeBrand()";
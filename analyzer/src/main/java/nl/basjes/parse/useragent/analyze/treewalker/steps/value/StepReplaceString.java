@@ -53,6 +53,11 @@ public class StepReplaceString extends Step {
         return false;
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "ReplaceString(\""+search+"\";\""+replace+"\")";
@@ -56,6 +56,11 @@ public class StepSegmentRange extends Step {
         return !(firstSegment ==1 && lastSegment ==1);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "SegmentRange([" + firstSegment + ":" + lastSegment + "])";
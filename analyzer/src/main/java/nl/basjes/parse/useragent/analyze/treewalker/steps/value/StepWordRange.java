@@ -72,6 +72,11 @@ public class StepWordRange extends Step {
         return !(firstWord==1 && lastWord==1);
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "WordRange([" + firstWord + ":" + lastWord + "])";
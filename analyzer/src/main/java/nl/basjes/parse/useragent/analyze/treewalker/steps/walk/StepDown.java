@@ -98,6 +98,11 @@ public class StepDown extends Step {
         return null;
     }
 
+    @Override
+    public boolean isMemoizable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "Down([" + start + ":" + end + "]" + name + ")";
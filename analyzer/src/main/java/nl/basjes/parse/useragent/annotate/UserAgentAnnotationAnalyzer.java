@@ -28,9 +28,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
 
@@ -64,6 +67,22 @@ public class UserAgentAnnotationAnalyzer<T> {
     }
 
     public void initialize(UserAgentAnnotationMapper<T> theMapper) {
+        initialize(theMapper, fieldNames -> UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(cacheSize)
+            .withFields(fieldNames)
+            .dropTests()
+            .immediateInitialization()
+            .build());
+    }
+
+    /**
+     * Initialize using an analyzer that is provided by the caller (i.e. an analyzer that is shared with others).
+     * @param theMapper The mapper that has the annotated setters.
+     * @param analyzerProvider Gets the names of the needed fields and must return an analyzer that can provide these fields.
+     */
+    public void initialize(UserAgentAnnotationMapper<T> theMapper, Function<Set<String>, UserAgentAnalyzer> analyzerProvider) {
         mapper = theMapper;
 
         if (mapper == null) {
@@ -125,14 +144,7 @@ public class UserAgentAnnotationAnalyzer<T> {
             throw new InvalidParserConfigurationException("You MUST specify at least 1 field to extract.");
         }
 
-        userAgentAnalyzer = UserAgentAnalyzer
-            .newBuilder()
-            .hideMatcherLoadStats()
-            .withCache(cacheSize)
-            .withFields(fieldSetters.keySet())
-            .dropTests()
-            .immediateInitialization()
-            .build();
+        userAgentAnalyzer = analyzerProvider.apply(Collections.unmodifiableSet(fieldSetters.keySet()));
     }
 
     public T map(T record) {
@@ -143,7 +155,23 @@ public class UserAgentAnnotationAnalyzer<T> {
             throw new InvalidParserConfigurationException("[Map] The mapper instance is null.");
         }
 
-        UserAgent userAgent = userAgentAnalyzer.parse(mapper.getUserAgentString(record));
+        return map(record, userAgentAnalyzer.parse(mapper.getUserAgentString(record)));
+    }
+
+    /**
+     * Put the values of an already analyzed useragent in the record.
+     * This allows analyzing a useragent only once for many records.
+     * @param record The record that must receive the values.
+     * @param userAgent The result of analyzing the useragent of this record.
+     * @return The record
+     */
+    public T map(T record, UserAgent userAgent) {
+        if (record == null) {
+            return null;
+        }
+        if (mapper == null) {
+            throw new InvalidParserConfigurationException("[Map] The mapper instance is null.");
+        }
 
         for (Map.Entry<String, List<Method>> fieldSetter : fieldSetters.entrySet()) {
             String value = userAgent.getValue(fieldSetter.getKey());
@@ -21,7 +21,8 @@ import nl.basjes.parse.useragent.AgentField;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgent.MutableUserAgent;
 import nl.basjes.parse.useragent.utils.Normalize;
-import org.apache.hc.client5.http.psl.PublicSuffixMatcherLoader;
+import nl.basjes.parse.useragent.utils.PublicSuffixes;
+import org.apache.commons.collections4.map.LRUMap;
 
 import java.util.Arrays;
 import java.util.HashSet;
@@ -33,12 +34,18 @@ import static nl.basjes.parse.useragent.UserAgent.AGENT_INFORMATION_URL;
 import static nl.basjes.parse.useragent.UserAgent.DEVICE_BRAND;
 import static nl.basjes.parse.useragent.UserAgent.NULL_VALUE;
 import static nl.basjes.parse.useragent.utils.HostnameExtracter.extractHostname;
-import static org.apache.hc.client5.http.psl.DomainType.ICANN;
 
 public class CalculateDeviceBrand extends FieldCalculator {
 
+    // Loaded when the analyzer is created (not during the first parse).
+    private static final PublicSuffixes PUBLIC_SUFFIXES = PublicSuffixes.getInstance();
+
+    // The same few hostnames (mostly of robots and apps) occur over and over again.
+    private static final int HOSTNAME_BRANDS_CACHE_SIZE = 1000;
+
     private final Set<String> unwantedUrlBrands;
     private final Set<String> unwantedEmailBrands;
+    private transient LRUMap<String, String> hostnameBrands = null;
 
     public CalculateDeviceBrand() {
         unwantedUrlBrands = new HashSet<>();
@@ -140,31 +147,48 @@ public class CalculateDeviceBrand extends FieldCalculator {
     private String extractCompanyFromSoftwareRepositoryUrl(String url) {
         for (SitePathExtract sitePathExtract : SITE_PATH_EXTRACTS) {
             if (url.startsWith(sitePathExtract.prefix)) {
-                String path = url.substring(sitePathExtract.prefixLength);
-                String[] splits = path.split("/");
-                if (splits.length == 0 || splits.length < sitePathExtract.brandSegment){
-                    return null;
+                int brandStart = sitePathExtract.prefixLength;
+                for (int segment = 0; segment < sitePathExtract.brandSegment; segment++) {
+                    brandStart = url.indexOf('/', brandStart) + 1;
+                    if (brandStart == 0) {
+                        return null;
+                    }
+                }
+                int brandEnd = url.indexOf('/', brandStart);
+                if (brandEnd == -1) {
+                    brandEnd = url.length();
                 }
-                String brand = splits[sitePathExtract.brandSegment];
-                if (brand.isEmpty()) {
+                if (brandStart == brandEnd) {
                     return null;
                 }
-                return Normalize.brand(brand);
+                return Normalize.brand(url.substring(brandStart, brandEnd));
             }
         }
         return null;
     }
 
     private String extractCompanyFromHostName(String hostname, Set<String> blackList) {
-        if (blackList.contains(hostname)) {
+        if (hostname == null || blackList.contains(hostname)) {
             return null;
         }
-        String root = PublicSuffixMatcherLoader.getDefault().getDomainRoot(hostname, ICANN);
+        if (hostnameBrands == null) {
+            hostnameBrands = new LRUMap<>(HOSTNAME_BRANDS_CACHE_SIZE);
+        }
+        String brand = hostnameBrands.get(hostname);
+        if (brand == null && !hostnameBrands.containsKey(hostname)) {
+            brand = determineCompanyFromHostName(hostname);
+            hostnameBrands.put(hostname, brand);
+        }
+        return brand;
+    }
 
+    private String determineCompanyFromHostName(String hostname) {
+        String root = PUBLIC_SUFFIXES.getDomainRoot(hostname);
         if (root == null) {
             return null;
         }
-        return Normalize.brand(root.split("\\.", 2)[0]);
+        int dot = root.indexOf('.');
+        return Normalize.brand(dot == -1 ? root : root.substring(0, dot));
     }
 
     @Override
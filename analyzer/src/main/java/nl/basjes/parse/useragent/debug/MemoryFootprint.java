@@ -0,0 +1,263 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.debug;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An estimate of the memory retained by the lookups, the lookup sets and the matchers (grouped per file)
+ * of an analyzer. Everything that is reachable from more than one of these is only counted for the first one
+ * (in the order lookups, lookup sets, matchers) so the sum of all parts is the total.
+ * The sizes are estimates based on the layout of a 64 bit JVM with compressed references.
+ */
+public final class MemoryFootprint {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER  = 16;
+    private static final int REFERENCE     = 4;
+    private static final int ALIGNMENT     = 8;
+
+    private final Set<Object>       counted      = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Long> lookups      = new LinkedHashMap<>();
+    private final Map<String, Long> lookupSets   = new LinkedHashMap<>();
+    private final Map<String, Long> matcherFiles = new TreeMap<>();
+
+    /**
+     * @param exclude Objects (like the analyzer itself) that must not be counted nor followed.
+     */
+    public MemoryFootprint(Object... exclude) {
+        Collections.addAll(counted, exclude);
+    }
+
+    public void addLookup(String name, Object lookup) {
+        lookups.merge(name, estimate(lookup), Long::sum);
+    }
+
+    public void addLookupSet(String name, Object lookupSet) {
+        lookupSets.merge(name, estimate(lookupSet), Long::sum);
+    }
+
+    public void addMatcher(String filename, Object matcher) {
+        matcherFiles.merge(filename, estimate(matcher), Long::sum);
+    }
+
+    /**
+     * @return Estimated bytes per lookup name.
+     */
+    public Map<String, Long> getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return Estimated bytes per lookup set name.
+     */
+    public Map<String, Long> getLookupSets() {
+        return lookupSets;
+    }
+
+    /**
+     * @return Estimated bytes of all matchers per file they were loaded from.
+     */
+    public Map<String, Long> getMatcherFiles() {
+        return matcherFiles;
+    }
+
+    public long getTotalLookups() {
+        return sum(lookups);
+    }
+
+    public long getTotalLookupSets() {
+        return sum(lookupSets);
+    }
+
+    public long getTotalMatchers() {
+        return sum(matcherFiles);
+    }
+
+    public long getTotal() {
+        return getTotalLookups() + getTotalLookupSets() + getTotalMatchers();
+    }
+
+    private static long sum(Map<String, Long> sizes) {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Estimate the memory retained by the object and everything it references that has not been counted before.
+     * @param root The object to estimate
+     * @return The estimated number of bytes
+     */
+    long estimate(Object root) {
+        long total = 0;
+        Deque<Object> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            Object object = todo.pop();
+            if (!counted.add(object)) {
+                continue;
+            }
+            total += shallowSize(object, todo);
+        }
+        return total;
+    }
+
+    // Returns the size of this object and pushes everything it references onto the todo list.
+    private static long shallowSize(Object object, Deque<Object> todo) {
+        Class<?> clazz = object.getClass();
+
+        if (clazz.isArray()) {
+            Class<?> componentType = clazz.getComponentType();
+            int      length        = Array.getLength(object);
+            if (!componentType.isPrimitive()) {
+                for (Object element : (Object[]) object) {
+                    push(element, todo);
+                }
+            }
+            return align(ARRAY_HEADER + (long) length * fieldSize(componentType));
+        }
+
+        if (object instanceof String) {
+            // The String itself and its char[]
+            return align(OBJECT_HEADER + REFERENCE + 4) + align(ARRAY_HEADER + 2L * ((String) object).length());
+        }
+
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            map.forEach((key, value) -> {
+                push(key, todo);
+                push(value, todo);
+            });
+            return mapSize(map, map.size());
+        }
+
+        if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            collection.forEach(element -> push(element, todo));
+            if (object instanceof Set) {
+                // All standard sets are a wrapper around a map
+                return align(OBJECT_HEADER + REFERENCE) + mapSize(object, collection.size());
+            }
+            return align(OBJECT_HEADER + REFERENCE + 8) + align(ARRAY_HEADER + (long) REFERENCE * collection.size());
+        }
+
+        if (clazz.isEnum() || isPlatformClass(clazz)) {
+            // Things like boxed primitives, we do not look inside these
+            return align(OBJECT_HEADER + 8);
+        }
+
+        long size = OBJECT_HEADER;
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Class<?> fieldType = field.getType();
+                size += fieldSize(fieldType);
+                if (!fieldType.isPrimitive()) {
+                    push(getFieldValue(field, object), todo);
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static long mapSize(Object map, int entries) {
+        if (map instanceof TreeMap || map instanceof TreeSet) {
+            return align(OBJECT_HEADER + 4 * REFERENCE + 8) + entries * align(OBJECT_HEADER + 5 * REFERENCE + 1);
+        }
+        long entrySize = (map instanceof LinkedHashMap || map instanceof LinkedHashSet)
+            ? align(OBJECT_HEADER + 6 * REFERENCE + 4)
+            : align(OBJECT_HEADER + 3 * REFERENCE + 4);
+        int tableSize = 1;
+        while (tableSize * 3 < entries * 4) {
+            tableSize <<= 1;
+        }
+        return align(OBJECT_HEADER + 4 * REFERENCE + 16) +
+            align(ARRAY_HEADER + (long) REFERENCE * tableSize) +
+            (long) entries * entrySize;
+    }
+
+    private static Object getFieldValue(Field field, Object object) {
+        try {
+            field.setAccessible(true);
+            return field.get(object);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null; // We simply cannot look inside this one
+        }
+    }
+
+    private static boolean isPlatformClass(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") ||
+               name.startsWith("sun.")  || name.startsWith("jdk.");
+    }
+
+    private static void push(Object object, Deque<Object> todo) {
+        if (object != null) {
+            todo.push(object);
+        }
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REFERENCE;
+        }
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1; // boolean and byte
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append(String.format("Estimated memory footprint: %,d bytes%n", getTotal()));
+        append(sb, "Lookups",     lookups,      getTotalLookups());
+        append(sb, "Lookup sets", lookupSets,   getTotalLookupSets());
+        append(sb, "Matchers",    matcherFiles, getTotalMatchers());
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String label, Map<String, Long> sizes, long total) {
+        sb.append(String.format("- %-11s: %,12d bytes%n", label, total));
+        sizes.forEach((name, size) -> sb.append(String.format("  | %,12d | %s%n", size, name)));
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.debug;
+
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getExactlyOneNodeTuple;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getKeyAsString;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getStringValues;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getValueAsMappingNode;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getValueAsSequenceNode;
+import static nl.basjes.parse.useragent.utils.YamlUtils.getValueAsString;
+
+/**
+ * Writes a reduced copy of a set of rule files that only retains the matchers that are listed (usually the ones that
+ * produced a result for a representative set of useragents, see
+ * {@link nl.basjes.parse.useragent.AbstractUserAgentAnalyzerDirect#getMatchedMatcherSourceLocations()})
+ * and the lookups and sets these matchers (directly or via a merge) use. All tests are dropped.
+ */
+public final class RuleSetPruner {
+
+    // Lookup and set names are always words.
+    private static final Pattern WORD = Pattern.compile("[A-Za-z0-9_]+");
+
+    private final Set<String> keptMatcherLocations;
+
+    private final Map<String, Node> files = new TreeMap<>();
+
+    private int matchers     = 0;
+    private int keptMatchers = 0;
+    private int lookups      = 0;
+    private int keptLookups  = 0;
+    private int sets         = 0;
+    private int keptSets     = 0;
+    private int tests        = 0;
+
+    /**
+     * @param keptMatcherLocations The source locations (file:line) of the matchers that must be retained.
+     */
+    public RuleSetPruner(Collection<String> keptMatcherLocations) {
+        this.keptMatcherLocations = new HashSet<>(keptMatcherLocations);
+    }
+
+    /**
+     * Read all rule files that match the resource expression.
+     * @param resourceString The rule files (i.e. the same as used for loading them in the analyzer).
+     * @return This pruner
+     * @throws IOException If reading failed.
+     */
+    public RuleSetPruner loadResources(String resourceString) throws IOException {
+        final LoaderOptions yamlLoaderOptions = new LoaderOptions();
+        yamlLoaderOptions.setMaxAliasesForCollections(100); // The same as the analyzer uses
+        Yaml yaml = new Yaml(yamlLoaderOptions);
+
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (Resource resource : resolver.getResources(resourceString)) {
+            try (InputStream inputStream = resource.getInputStream()) {
+                Node root = yaml.compose(new UnicodeReader(inputStream));
+                if (root != null) {
+                    files.put(resource.getFilename(), root);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write the reduced rule files (a file that retains nothing is not written).
+     * This removes the unneeded entries from the loaded files so it should be called only once.
+     * @param outputDirectory Where to write the files.
+     * @return The number of files that were written.
+     * @throws IOException If writing failed.
+     */
+    public int writeTo(Path outputDirectory) throws IOException {
+        Map<String, Node> prunedFiles = prune();
+        Files.createDirectories(outputDirectory);
+        Yaml yaml = new Yaml();
+        for (Map.Entry<String, Node> prunedFile : prunedFiles.entrySet()) {
+            try (Writer writer = Files.newBufferedWriter(outputDirectory.resolve(prunedFile.getKey()), UTF_8)) {
+                yaml.serialize(prunedFile.getValue(), writer);
+            }
+        }
+        return prunedFiles.size();
+    }
+
+    // Determine (and remove from the config of each file) the entries that must go.
+    private Map<String, Node> prune() {
+        matchers     = 0;
+        keptMatchers = 0;
+        lookups      = 0;
+        keptLookups  = 0;
+        sets         = 0;
+        keptSets     = 0;
+        tests        = 0;
+
+        // First pass: Which names do the retained matchers use and which sets merge what.
+        Set<String>               usedNames = new HashSet<>();
+        Map<String, List<String>> setMerges = new HashMap<>();
+        for (Map.Entry<String, Node> file : files.entrySet()) {
+            String filename = file.getKey();
+            for (Node configEntry : getConfig(file.getValue(), filename)) {
+                NodeTuple   entry       = getExactlyOneNodeTuple((MappingNode) configEntry, filename);
+                MappingNode actualEntry = getValueAsMappingNode(entry, filename);
+                switch (getKeyAsString(entry, filename)) {
+                    case "matcher":
+                        if (keptMatcherLocations.contains(filename + ':' + actualEntry.getStartMark().getLine())) {
+                            collectWords(actualEntry, usedNames);
+                        }
+                        break;
+                    case "set":
+                        String name = null;
+                        List<String> merge = new ArrayList<>();
+                        for (NodeTuple tuple : actualEntry.getValue()) {
+                            switch (getKeyAsString(tuple, filename)) {
+                                case "name":
+                                    name = getValueAsString(tuple, filename);
+                                    break;
+                                case "merge":
+                                    merge.addAll(getStringValues(tuple.getValueNode(), filename));
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                        setMerges.put(name, merge);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        // A retained set needs everything it merges.
+        Deque<String> todo = new ArrayDeque<>(usedNames);
+        while (!todo.isEmpty()) {
+            for (String merged : setMerges.getOrDefault(todo.pop(), new ArrayList<>())) {
+                if (usedNames.add(merged)) {
+                    todo.push(merged);
+                }
+            }
+        }
+
+        // Second pass: Only retain what is needed.
+        Map<String, Node> prunedFiles = new TreeMap<>();
+        for (Map.Entry<String, Node> file : files.entrySet()) {
+            String     filename = file.getKey();
+            List<Node> config   = getConfig(file.getValue(), filename);
+            config.removeIf(configEntry -> !isNeeded(configEntry, filename, usedNames));
+            if (!config.isEmpty()) {
+                prunedFiles.put(filename, file.getValue());
+            }
+        }
+        return prunedFiles;
+    }
+
+    private boolean isNeeded(Node configEntry, String filename, Set<String> usedNames) {
+        NodeTuple   entry       = getExactlyOneNodeTuple((MappingNode) configEntry, filename);
+        MappingNode actualEntry = getValueAsMappingNode(entry, filename);
+        String      entryType   = getKeyAsString(entry, filename);
+        switch (entryType) {
+            case "matcher":
+                matchers++;
+                if (keptMatcherLocations.contains(filename + ':' + actualEntry.getStartMark().getLine())) {
+                    keptMatchers++;
+                    return true;
+                }
+                return false;
+            case "lookup":
+                lookups++;
+                if (usedNames.contains(getName(actualEntry, filename))) {
+                    keptLookups++;
+                    return true;
+                }
+                return false;
+            case "set":
+                sets++;
+                if (usedNames.contains(getName(actualEntry, filename))) {
+                    keptSets++;
+                    return true;
+                }
+                return false;
+            case "test":
+                tests++;
+                return false;
+            default:
+                throw new InvalidParserConfigurationException(
+                    "Yaml config.(" + filename + ":" + actualEntry.getStartMark().getLine() + "): " +
+                        "Found unexpected config entry: " + entryType + ", allowed are 'lookup', 'set', 'matcher' and 'test'");
+        }
+    }
+
+    // The entries of the config (an empty list if this file has no config).
+    private static List<Node> getConfig(Node root, String filename) {
+        if (root instanceof MappingNode) {
+            for (NodeTuple tuple : ((MappingNode) root).getValue()) {
+                if ("config".equals(getKeyAsString(tuple, filename))) {
+                    SequenceNode configNode = getValueAsSequenceNode(tuple, filename);
+                    return configNode.getValue();
+                }
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private static String getName(MappingNode entry, String filename) {
+        for (NodeTuple tuple : entry.getValue()) {
+            if ("name".equals(getKeyAsString(tuple, filename))) {
+                return getValueAsString(tuple, filename);
+            }
+        }
+        return null;
+    }
+
+    private static void collectWords(Node node, Set<String> words) {
+        if (node instanceof ScalarNode) {
+            Matcher matcher = WORD.matcher(((ScalarNode) node).getValue());
+            while (matcher.find()) {
+                words.add(matcher.group());
+            }
+        } else if (node instanceof SequenceNode) {
+            ((SequenceNode) node).getValue().forEach(value -> collectWords(value, words));
+        } else if (node instanceof MappingNode) {
+            for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+                collectWords(tuple.getValueNode(), words);
+            }
+        }
+    }
+
+    public int getMatchers() {
+        return matchers;
+    }
+
+    public int getKeptMatchers() {
+        return keptMatchers;
+    }
+
+    public int getLookups() {
+        return lookups;
+    }
+
+    public int getKeptLookups() {
+        return keptLookups;
+    }
+
+    public int getSets() {
+        return sets;
+    }
+
+    public int getKeptSets() {
+        return keptSets;
+    }
+
+    public int getTests() {
+        return tests;
+    }
+
+    @Override
+    public String toString() {
+        return "Retained " +
+            keptMatchers + " of " + matchers + " matchers, " +
+            keptLookups  + " of " + lookups  + " lookups and " +
+            keptSets     + " of " + sets     + " sets; dropped " + tests + " tests.";
+    }
+}
@@ -18,8 +18,12 @@
 package nl.basjes.parse.useragent.utils;
 
 import java.io.Serializable;
-import java.net.URI;
 
+/**
+ * Extracts the hostname from a URI (or something that looks like the start of one).
+ * This gives the same hostname as {@link java.net.URI#getHost()} (null if the URI is invalid)
+ * but without creating the URI (which parses and allocates all parts of it).
+ */
 public final class HostnameExtracter implements Serializable {
 
     private HostnameExtracter() {
@@ -31,49 +35,216 @@ public final class HostnameExtracter implements Serializable {
             return null; // Nothing to do here
         }
 
-        int firstQuestionMark = uriString.indexOf('?');
-        int firstAmpersand = uriString.indexOf('&');
-        int cutIndex = -1;
-        if (firstAmpersand != -1) {
-            if (firstQuestionMark != -1) {
-                cutIndex = firstQuestionMark;
-            } else {
-                cutIndex = firstAmpersand;
+        // Everything from the first '?' (or if there is none the first '&') is ignored.
+        int end = uriString.indexOf('?');
+        if (end == -1) {
+            end = uriString.indexOf('&');
+        }
+        if (end == -1) {
+            end = uriString.length();
+        }
+        if (end == 0) {
+            return null;
+        }
+
+        int authorityStart;
+        if (uriString.charAt(0) == '/') {
+            if (end < 2 || uriString.charAt(1) != '/') {
+                // So no hostname
+                return null;
             }
+            authorityStart = 2;
         } else {
-            if (firstQuestionMark != -1) {
-                cutIndex = firstQuestionMark;
+            if (indexOf(uriString, ':', 0, end) == -1) {
+                // Unable to determine if is is a hostname or a path name, so assume hostname
+                int slash = indexOf(uriString, '/', 0, end);
+                return uriString.substring(0, slash == -1 ? end : slash);
+            }
+
+            // scheme = alpha *( alpha | digit | "+" | "-" | "." ) followed by "://"
+            if (!isAlpha(uriString.charAt(0))) {
+                return null;
+            }
+            int schemeEnd = 1;
+            while (schemeEnd < end && isSchemeChar(uriString.charAt(schemeEnd))) {
+                schemeEnd++;
             }
+            if (!uriString.startsWith("://", schemeEnd) || schemeEnd + 3 > end) {
+                return null; // Not a valid scheme, or an URI without an authority (like mailto:)
+            }
+            authorityStart = schemeEnd + 3;
+        }
+
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && uriString.charAt(authorityEnd) != '/' && uriString.charAt(authorityEnd) != '#') {
+            authorityEnd++;
         }
-        if (cutIndex != -1) {
-            uriString = uriString.substring(0, cutIndex);
+
+        if (!isValidRemainder(uriString, authorityEnd, end)) {
+            return null;
         }
+        return extractHost(uriString, authorityStart, authorityEnd);
+    }
 
-        URI     uri;
-        try {
-            if (uriString.charAt(0) == '/') {
-                if (uriString.charAt(1) == '/') {
-                    uri = URI.create(uriString);
-                } else {
-                    // So no hostname
+    // authority = [ userinfo "@" ] host [ ":" port ]
+    private static String extractHost(String uriString, int authorityStart, int authorityEnd) {
+        int hostStart = indexOf(uriString, '@', authorityStart, authorityEnd) + 1;
+        if (hostStart == 0) {
+            hostStart = authorityStart;
+        } else if (!isValidRemainder(uriString, authorityStart, hostStart - 1)) {
+            return null;
+        }
+
+        int hostEnd;
+        if (hostStart < authorityEnd && uriString.charAt(hostStart) == '[') {
+            // IPv6 address
+            hostEnd = indexOf(uriString, ']', hostStart, authorityEnd) + 1;
+            if (hostEnd == 0) {
+                return null;
+            }
+        } else {
+            hostEnd = hostnameEnd(uriString, hostStart, authorityEnd);
+            if (hostEnd == -1) {
+                return null;
+            }
+        }
+
+        if (hostEnd < authorityEnd) {
+            if (uriString.charAt(hostEnd) != ':') {
+                return null;
+            }
+            for (int i = hostEnd + 1; i < authorityEnd; i++) {
+                if (!isDigit(uriString.charAt(i))) {
                     return null;
                 }
+            }
+        }
+        return uriString.substring(hostStart, hostEnd);
+    }
+
+    // hostname = domainlabel [ "." ] | 1*( domainlabel "." ) toplabel [ "." ] or an IPv4 address.
+    // Returns the end of the hostname or -1 if it is not a valid hostname.
+    private static int hostnameEnd(String uriString, int start, int end) {
+        int position       = start;
+        int lastLabelStart = -1;
+        int labels         = 0;
+        while (position < end && isAlphaNumeric(uriString.charAt(position))) {
+            lastLabelStart = position;
+            labels++;
+            while (position < end && (isAlphaNumeric(uriString.charAt(position)) || uriString.charAt(position) == '-')) {
+                position++;
+            }
+            if (uriString.charAt(position - 1) == '-') {
+                return -1;
+            }
+            if (position < end && uriString.charAt(position) == '.') {
+                position++;
             } else {
-                if (uriString.contains(":")) {
-                    uri = URI.create(uriString);
-                } else {
-                    if (uriString.contains("/")) {
-                        return uriString.split("/", 2)[0];
-                    } else {
-                        return uriString;
-                    }
+                break;
+            }
+        }
+        if (lastLabelStart == -1 || (position < end && uriString.charAt(position) != ':')) {
+            return -1;
+        }
+        // For a fully qualified hostname the rightmost label must start with a letter (or it is an IPv4 address).
+        if (lastLabelStart > start && !isAlpha(uriString.charAt(lastLabelStart)) &&
+            !(labels == 4 && isIPv4Address(uriString, start, position))) {
+            return -1;
+        }
+        return position;
+    }
+
+    private static boolean isIPv4Address(String uriString, int start, int end) {
+        int octet  = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = uriString.charAt(i);
+            if (c == '.') {
+                if (digits == 0) {
+                    return false;
                 }
+                octet  = 0;
+                digits = 0;
+                continue;
+            }
+            if (!isDigit(c)) {
+                return false;
+            }
+            octet = octet * 10 + (c - '0');
+            digits++;
+            if (octet > 255) {
+                return false;
+            }
+        }
+        return digits > 0;
+    }
+
+    // The userinfo, path and fragment may not contain the characters that are never allowed in a URI.
+    private static boolean isValidRemainder(String uriString, int start, int end) {
+        boolean inFragment = false;
+        for (int i = start; i < end; i++) {
+            char c = uriString.charAt(i);
+            switch (c) {
+                case '#':
+                    if (inFragment) {
+                        return false;
+                    }
+                    inFragment = true;
+                    break;
+                case '%':
+                    if (i + 2 >= end || !isHexDigit(uriString.charAt(i + 1)) || !isHexDigit(uriString.charAt(i + 2))) {
+                        return false;
+                    }
+                    break;
+                case '"':
+                case '<':
+                case '>':
+                case '[':
+                case ']':
+                case '\\':
+                case '^':
+                case '`':
+                case '{':
+                case '|':
+                case '}':
+                    return false;
+                default:
+                    if (c <= ' ' || Character.isISOControl(c) || Character.isSpaceChar(c)) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(String value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
             }
-        } catch (IllegalArgumentException e) {
-            return null;
         }
+        return -1;
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || isDigit(c);
+    }
 
-        return uri.getHost();
+    private static boolean isSchemeChar(char c) {
+        return isAlphaNumeric(c) || c == '+' || c == '-' || c == '.';
     }
 
 }
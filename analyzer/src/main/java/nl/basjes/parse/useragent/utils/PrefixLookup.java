@@ -0,0 +1,156 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.utils;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable case insensitive lookup of the longest matching prefix.
+ * All prefixes are kept in a single sorted array so a lookup is a binary search followed
+ * by a short walk along the chain of prefixes that are a prefix of the found prefix.
+ */
+public final class PrefixLookup implements Serializable {
+
+    // All prefixes (lowercase) sorted
+    private final String[] prefixes;
+    // The value of the prefix at the same index
+    private final String[] values;
+    // The index of the longest other prefix that is a prefix of the prefix at the same index (-1 if none)
+    private final int[]    shorterPrefixes;
+
+    @SuppressWarnings("unused") // Private constructor for serialization systems ONLY (like Kryo)
+    private PrefixLookup() {
+        prefixes        = new String[0];
+        values          = new String[0];
+        shorterPrefixes = new int[0];
+    }
+
+    public PrefixLookup(Map<String, String> prefixList) {
+        TreeMap<String, String> sortedPrefixes = new TreeMap<>();
+        prefixList.forEach((prefix, value) -> sortedPrefixes.put(toLowerCase(prefix), value));
+
+        int size        = sortedPrefixes.size();
+        prefixes        = new String[size];
+        values          = new String[size];
+        shorterPrefixes = new int[size];
+
+        // In sorted order all prefixes that start with a prefix directly follow that prefix.
+        Deque<Integer> chain = new ArrayDeque<>();
+        int index = 0;
+        for (Map.Entry<String, String> entry : sortedPrefixes.entrySet()) {
+            String prefix = entry.getKey();
+            while (!chain.isEmpty() && !prefix.startsWith(prefixes[chain.peek()])) {
+                chain.pop();
+            }
+            prefixes[index]        = prefix;
+            values[index]          = entry.getValue();
+            shorterPrefixes[index] = chain.isEmpty() ? -1 : chain.peek();
+            chain.push(index);
+            index++;
+        }
+    }
+
+    /**
+     * A lookup where all prefixes have the empty string as value.
+     * @param prefixSet The prefixes
+     */
+    public PrefixLookup(Set<String> prefixSet) {
+        this(asMap(prefixSet));
+    }
+
+    private static Map<String, String> asMap(Set<String> prefixSet) {
+        Map<String, String> prefixList = new TreeMap<>();
+        prefixSet.forEach(prefix -> prefixList.put(prefix, ""));
+        return prefixList;
+    }
+
+    private static String toLowerCase(String input) {
+        char[] chars = input.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    // Compares the (lowercase) prefix with the input as if the input was lowercase.
+    private static int compare(String prefix, String input) {
+        int length = Math.min(prefix.length(), input.length());
+        for (int i = 0; i < length; i++) {
+            char prefixChar = prefix.charAt(i);
+            char inputChar  = Character.toLowerCase(input.charAt(i));
+            if (prefixChar != inputChar) {
+                return prefixChar - inputChar;
+            }
+        }
+        return prefix.length() - input.length();
+    }
+
+    private static int commonPrefixLength(String prefix, String input) {
+        int length = Math.min(prefix.length(), input.length());
+        for (int i = 0; i < length; i++) {
+            if (prefix.charAt(i) != Character.toLowerCase(input.charAt(i))) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Find the value of the longest prefix (case insensitive) of the input.
+     * @param input The string to find the longest matching prefix for.
+     * @return The value of the longest matching prefix, null if no prefix matches.
+     */
+    public String getLongestMatch(String input) {
+        if (input == null) {
+            return null;
+        }
+
+        // Find the last prefix that sorts before (or equal to) the input.
+        int low   = 0;
+        int high  = prefixes.length - 1;
+        int index = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compare(prefixes[middle], input) <= 0) {
+                index = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (index == -1) {
+            return null;
+        }
+
+        // Every prefix of the input is also a prefix of this last prefix before the input.
+        int commonLength = commonPrefixLength(prefixes[index], input);
+        while (index != -1 && prefixes[index].length() > commonLength) {
+            index = shorterPrefixes[index];
+        }
+        return index == -1 ? null : values[index];
+    }
+
+    public int size() {
+        return prefixes.length;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.utils;
+
+import org.apache.hc.client5.http.psl.PublicSuffixList;
+import org.apache.hc.client5.http.psl.PublicSuffixListParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.IDN;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.hc.client5.http.psl.DomainType.ICANN;
+
+/**
+ * The ICANN part of the public suffix list (as shipped with httpclient) in a compact trie of the reversed labels
+ * (i.e. "com", "co.uk" and "*.ck" become com, uk-&gt;co and ck(wildcard)).
+ * The trie is generated during the build and shipped as a resource so that it is available without parsing the list.
+ * Lookups do not allocate anything except the returned domain root.
+ */
+public final class PublicSuffixes {
+    private static final Logger LOG = LoggerFactory.getLogger(PublicSuffixes.class);
+
+    static final String PUBLIC_SUFFIXES_RESOURCE = "PublicSuffixes.dat";
+    private static final String PUBLIC_SUFFIX_LIST = "/mozilla/public-suffix-list.txt";
+
+    // The flags of a node
+    private static final byte RULE      = 1; // This suffix is a public suffix
+    private static final byte WILDCARD  = 2; // Every child of this suffix is a public suffix
+    private static final byte EXCEPTION = 4; // This suffix is NOT a public suffix (overrides a wildcard)
+
+    private static final int ROOT = 0;
+
+    // Per node (the children of a node are consecutive and sorted by their label)
+    private final String[] labels;
+    private final byte[]   flags;
+    private final int[]    firstChild;
+    private final int[]    childCount;
+
+    private PublicSuffixes(String[] labels, byte[] flags, int[] firstChild, int[] childCount) {
+        this.labels     = labels;
+        this.flags      = flags;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+    }
+
+    private static final class Holder {
+        private static final PublicSuffixes ICANN_SUFFIXES = load();
+    }
+
+    public static PublicSuffixes getInstance() {
+        return Holder.ICANN_SUFFIXES;
+    }
+
+    /**
+     * The same as the ICANN domain root determined by the httpclient PublicSuffixMatcher.
+     * @param hostname The hostname (i.e. www.example.co.uk)
+     * @return The (ASCII) lowercase public suffix with one additional label (i.e. example.co.uk) or null if there is none.
+     */
+    public String getDomainRoot(String hostname) {
+        if (hostname == null || hostname.isEmpty() || hostname.charAt(0) == '.') {
+            return null;
+        }
+
+        int rootStart = -1;
+        int node      = ROOT;
+        int end       = hostname.length();
+        // Walk from the last label towards the first: the deepest match determines the domain root.
+        while (true) {
+            int start = hostname.lastIndexOf('.', end - 1) + 1;
+            int child = findChild(node, hostname, start, end);
+            if (child >= 0 && (flags[child] & EXCEPTION) != 0) {
+                rootStart = start;
+            } else if ((flags[node] & WILDCARD) != 0 || (child >= 0 && (flags[child] & RULE) != 0)) {
+                // The domain root has one more label than this public suffix.
+                rootStart = start == 0 ? -1 : hostname.lastIndexOf('.', start - 2) + 1;
+            }
+            if (child < 0 || start == 0) {
+                break;
+            }
+            node = child;
+            end  = start - 1;
+        }
+
+        if (rootStart < 0) {
+            return null;
+        }
+        return toLowerCaseAscii(hostname.substring(rootStart));
+    }
+
+    // Like the httpclient only the ASCII letters are converted to lowercase.
+    private static String toLowerCaseAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                char[] chars = value.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z') {
+                        chars[j] += 'a' - 'A';
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return value;
+    }
+
+    private int findChild(int node, String hostname, int start, int end) {
+        int low  = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = compare(labels[middle], hostname, start, end);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // The same as label.compareTo(hostname.substring(start, end).toLowerCase()) (for ASCII) without the substring.
+    private static int compare(String label, String hostname, int start, int end) {
+        int length = end - start;
+        int common = Math.min(label.length(), length);
+        for (int i = 0; i < common; i++) {
+            char hostChar = hostname.charAt(start + i);
+            if (hostChar >= 'A' && hostChar <= 'Z') {
+                hostChar += 'a' - 'A';
+            }
+            int difference = label.charAt(i) - hostChar;
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return label.length() - length;
+    }
+
+    public int getNumberOfNodes() {
+        return labels.length;
+    }
+
+    // ------------------------------------------
+
+    private static PublicSuffixes load() {
+        try (InputStream input = PublicSuffixes.class.getResourceAsStream(PUBLIC_SUFFIXES_RESOURCE)) {
+            if (input != null) {
+                return read(input);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read the public suffixes: {}", e.getMessage());
+        }
+
+        // Only happens if the build did not generate the trie (i.e. some IDE setups).
+        LOG.warn("No compiled public suffixes found: building them from the public suffix list.");
+        return build();
+    }
+
+    static PublicSuffixes read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+        int nodes = data.readInt();
+        String[] labels     = new String[nodes];
+        byte[]   flags      = new byte[nodes];
+        int[]    firstChild = new int[nodes];
+        int[]    childCount = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            labels[node]     = data.readUTF();
+            flags[node]      = data.readByte();
+            firstChild[node] = data.readInt();
+            childCount[node] = data.readInt();
+        }
+        return new PublicSuffixes(labels, flags, firstChild, childCount);
+    }
+
+    void write(DataOutputStream data) throws IOException {
+        data.writeInt(labels.length);
+        for (int node = 0; node < labels.length; node++) {
+            data.writeUTF(labels[node]);
+            data.writeByte(flags[node]);
+            data.writeInt(firstChild[node]);
+            data.writeInt(childCount[node]);
+        }
+        data.flush();
+    }
+
+    private static final class TrieNode {
+        final String                label;
+        final Map<String, TrieNode> children = new TreeMap<>();
+        byte                        nodeFlags;
+
+        TrieNode(String label) {
+            this.label = label;
+        }
+    }
+
+    static PublicSuffixes build() {
+        InputStream input = PublicSuffixes.class.getResourceAsStream(PUBLIC_SUFFIX_LIST);
+        if (input == null) {
+            throw new IllegalStateException("Unable to find the public suffix list " + PUBLIC_SUFFIX_LIST);
+        }
+        List<PublicSuffixList> lists;
+        try (Reader reader = new InputStreamReader(input, UTF_8)) {
+            lists = new PublicSuffixListParser().parseByType(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read the public suffix list " + PUBLIC_SUFFIX_LIST, e);
+        }
+
+        TrieNode root = new TrieNode("");
+        for (PublicSuffixList list : lists) {
+            if (list.getType() != ICANN) {
+                continue;
+            }
+            for (String rule : list.getRules()) {
+                if (rule.startsWith("*.")) {
+                    add(root, rule.substring(2), WILDCARD);
+                } else {
+                    add(root, rule, RULE);
+                }
+            }
+            for (String exception : list.getExceptions()) {
+                add(root, exception, EXCEPTION);
+            }
+        }
+
+        // Breadth first so the children of each node are consecutive.
+        List<TrieNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int node = 0; node < nodes.size(); node++) {
+            nodes.addAll(nodes.get(node).children.values());
+        }
+
+        String[] labels     = new String[nodes.size()];
+        byte[]   flags      = new byte[nodes.size()];
+        int[]    firstChild = new int[nodes.size()];
+        int[]    childCount = new int[nodes.size()];
+        int      nextChild  = 1;
+        for (int node = 0; node < nodes.size(); node++) {
+            TrieNode trieNode = nodes.get(node);
+            labels[node]     = trieNode.label;
+            flags[node]      = trieNode.nodeFlags;
+            firstChild[node] = nextChild;
+            childCount[node] = trieNode.children.size();
+            nextChild += trieNode.children.size();
+        }
+        return new PublicSuffixes(labels, flags, firstChild, childCount);
+    }
+
+    // A (unicode) suffix is stored both as unicode and in the ASCII (punycode) form used in hostnames.
+    private static void add(TrieNode root, String suffix, byte flag) {
+        String lowerSuffix = suffix.toLowerCase(Locale.ROOT);
+        addLabels(root, lowerSuffix, flag);
+        String asciiSuffix = IDN.toASCII(lowerSuffix).toLowerCase(Locale.ROOT);
+        if (!asciiSuffix.equals(lowerSuffix)) {
+            addLabels(root, asciiSuffix, flag);
+        }
+    }
+
+    private static void addLabels(TrieNode root, String suffix, byte flag) {
+        Deque<String> reversedLabels = new ArrayDeque<>();
+        for (String label : suffix.split("\\.")) {
+            reversedLabels.push(label);
+        }
+        TrieNode node = root;
+        for (String label : reversedLabels) {
+            node = node.children.computeIfAbsent(label, TrieNode::new);
+        }
+        node.nodeFlags |= flag;
+    }
+
+    /**
+     * Used during the build to generate the compiled public suffixes.
+     * @param args The name of the file to write.
+     * @throws IOException If the file could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: PublicSuffixes <outputfile>");
+        }
+        Path outputFile = Paths.get(args[0]);
+        Path directory  = outputFile.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        PublicSuffixes publicSuffixes = build();
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(outputFile)))) {
+            publicSuffixes.write(data);
+        }
+        LOG.info("Wrote the {} public suffix nodes to {}", publicSuffixes.getNumberOfNodes(), outputFile);
+    }
+}
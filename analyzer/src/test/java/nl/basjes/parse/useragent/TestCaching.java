@@ -21,8 +21,11 @@ import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestCaching {
 
@@ -103,6 +106,36 @@ public class TestCaching {
         assertNull(getCache(uaa));
     }
 
+    @Test
+    public void testPreheatDoesNotAffectCache() throws IllegalAccessException {
+        String uuid = "11111111-2222-3333-4444-555555555555";
+        String fieldName = "AgentUuid";
+
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withCache(10)
+            .keepTests()
+            .hideMatcherLoadStats()
+            .withField(fieldName)
+            .build();
+
+        assertEquals(0, uaa.getCachedUserAgentCount());
+        UserAgent agent = uaa.parse(uuid);
+        assertEquals(1, getCache(uaa).size());
+        assertEquals(1, uaa.getCachedUserAgentCount());
+
+        assertTrue(uaa.preHeat() > 100);
+        assertEquals(2, uaa.preHeat(Arrays.asList("Mozilla/5.0", "Something/1.0"), false));
+
+        assertEquals(10, getAllocatedCacheSize(uaa));
+        assertEquals(1, getCache(uaa).size());
+        assertEquals(1, uaa.getCachedUserAgentCount());
+        assertEquals(agent, getCache(uaa).get(uuid));
+
+        uaa.disableCaching();
+        assertEquals(0, uaa.getCachedUserAgentCount());
+    }
+
     private LRUMap<?, ?> getCache(UserAgentAnalyzer uaa) throws IllegalAccessException {
         LRUMap<?, ?> actualCache = null;
         Object rawParseCache = FieldUtils.readField(uaa, "parseCache", true);
@@ -0,0 +1,49 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class TestFieldCatalog {
+
+    @Test
+    public void testCatalogIsPackaged() {
+        // The build must have generated the catalog.
+        assertNotNull(FieldCatalog.class.getResource(FieldCatalog.FIELD_CATALOG_RESOURCE));
+    }
+
+    @Test
+    public void testCatalogMatchesRules() {
+        assertEquals(FieldCatalog.determineFieldNames(), FieldCatalog.getAllPossibleFieldNamesSorted());
+    }
+
+    @Test
+    public void testReadFieldNames() throws IOException {
+        assertEquals(Arrays.asList("DeviceClass", "AgentName"),
+            FieldCatalog.readFieldNames(new ByteArrayInputStream("DeviceClass\n\n AgentName \n".getBytes(UTF_8))));
+    }
+
+}
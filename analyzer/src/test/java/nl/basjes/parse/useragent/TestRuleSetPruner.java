@@ -0,0 +1,77 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent;
+
+import nl.basjes.parse.useragent.debug.RuleSetPruner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static nl.basjes.parse.useragent.AbstractUserAgentAnalyzerDirect.DEFAULT_RESOURCES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRuleSetPruner {
+
+    private static final String[] USERAGENTS = {
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36",
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 12_1 like Mac OS X) " +
+            "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/12.0 Mobile/15E148 Safari/604.1",
+    };
+
+    @Test
+    public void testPrunedRulesGiveTheSameResults(@TempDir Path rulesDirectory) throws IOException {
+        UserAgentAnalyzer full = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .withMatcherStatistics()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .build();
+        for (String useragent : USERAGENTS) {
+            full.parse(useragent);
+        }
+
+        RuleSetPruner pruner = new RuleSetPruner(full.getMatchedMatcherSourceLocations())
+            .loadResources(DEFAULT_RESOURCES);
+        assertTrue(pruner.writeTo(rulesDirectory) > 0);
+        assertTrue(pruner.getKeptMatchers() > 0);
+        assertTrue(pruner.getKeptMatchers() < pruner.getMatchers(), pruner.toString());
+        assertTrue(pruner.getKeptLookups() < pruner.getLookups(), pruner.toString());
+        assertTrue(pruner.getTests() > 0);
+
+        UserAgentAnalyzer pruned = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .hideMatcherLoadStats()
+            .dropDefaultResources()
+            .addResources("file:" + rulesDirectory.toAbsolutePath() + "/*.yaml")
+            .build();
+        assertEquals(0, pruned.getNumberOfTestCases());
+
+        List<String> fieldNames = full.getAllPossibleFieldNamesSorted();
+        for (String useragent : USERAGENTS) {
+            assertEquals(full.parse(useragent).toMap(fieldNames), pruned.parse(useragent).toMap(fieldNames), useragent);
+        }
+    }
+}
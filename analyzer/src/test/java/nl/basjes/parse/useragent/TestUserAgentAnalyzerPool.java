@@ -0,0 +1,68 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.useragent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestUserAgentAnalyzerPool {
+
+    private static final String POOL_SIZE_PROPERTY = "yauaa.test.analyzers";
+
+    @Test
+    public void testRoundRobin() {
+        AtomicInteger built = new AtomicInteger();
+        UserAgentAnalyzerPool pool = new UserAgentAnalyzerPool(3, () -> {
+            built.incrementAndGet();
+            return UserAgentAnalyzer.newBuilder().withoutCache().withField("DeviceClass").hideMatcherLoadStats().build();
+        });
+        assertEquals(3, pool.getPoolSize());
+        assertEquals(0, built.get());
+
+        Set<UserAgentAnalyzer> analyzers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 10; i++) {
+            analyzers.add(pool.get());
+        }
+        assertEquals(3, analyzers.size());
+        assertEquals(3, built.get());
+        assertEquals("Desktop", pool.get().parse(
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36").getValue("DeviceClass"));
+    }
+
+    @Test
+    public void testPoolSizeProperty() {
+        try {
+            System.setProperty(POOL_SIZE_PROPERTY, "7");
+            assertEquals(7, UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY));
+            System.setProperty(POOL_SIZE_PROPERTY, "0");
+            assertEquals(1, UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY));
+            System.clearProperty(POOL_SIZE_PROPERTY);
+            assertEquals(Math.min(4, Runtime.getRuntime().availableProcessors()),
+                UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY));
+        } finally {
+            System.clearProperty(POOL_SIZE_PROPERTY);
+        }
+    }
+
+}
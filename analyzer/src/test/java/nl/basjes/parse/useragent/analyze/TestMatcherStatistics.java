@@ -0,0 +1,110 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMatcherStatistics {
+
+    private static final String USERAGENT =
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    private static long[] readTotals(String statistics) {
+        long[] totals = new long[3];
+        String[] lines = statistics.split("\n");
+        assertEquals("Matcher\tAnalyzed\tMatched\tNanoseconds", lines[0]);
+        long previousMatched = Long.MAX_VALUE;
+        for (int i = 1; i < lines.length; i++) {
+            String[] columns = lines[i].split("\t");
+            assertEquals(4, columns.length, lines[i]);
+            long matched = Long.parseLong(columns[2]);
+            assertTrue(matched <= previousMatched, "Most productive matchers must be first");
+            previousMatched = matched;
+            totals[0] += Long.parseLong(columns[1]);
+            totals[1] += matched;
+            totals[2] += Long.parseLong(columns[3]);
+        }
+        return totals;
+    }
+
+    private static String getStatistics(UserAgentAnalyzer uaa) throws IOException {
+        StringWriter writer = new StringWriter();
+        uaa.writeMatcherStatistics(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .withMatcherStatistics()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .build();
+        assertTrue(uaa.isCollectingMatcherStatistics());
+
+        uaa.parse(USERAGENT);
+        long[] once = readTotals(getStatistics(uaa));
+        assertTrue(once[0] > 0);
+        assertTrue(once[1] > 0);
+        assertTrue(once[1] <= once[0]);
+        assertTrue(once[2] > 0);
+
+        uaa.parse(USERAGENT);
+        long[] twice = readTotals(getStatistics(uaa));
+        assertEquals(2 * once[0], twice[0]);
+        assertEquals(2 * once[1], twice[1]);
+
+        uaa.resetMatcherStatistics();
+        assertEquals(0, readTotals(getStatistics(uaa))[0]);
+
+        uaa.setCollectMatcherStatistics(false);
+        assertFalse(uaa.isCollectingMatcherStatistics());
+        uaa.parse(USERAGENT);
+        assertEquals(0, readTotals(getStatistics(uaa))[0]);
+    }
+
+    @Test
+    public void testSameResultsWithStatistics() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .hideMatcherLoadStats()
+            .keepTests()
+            .build();
+
+        for (Map<String, Map<String, String>> testCase : uaa.getTestCases()) {
+            String userAgentString = testCase.get("input").get("user_agent_string");
+            uaa.setCollectMatcherStatistics(false);
+            Map<String, String> expected = uaa.parse(userAgentString).toMap();
+            uaa.setCollectMatcherStatistics(true);
+            assertEquals(expected, uaa.parse(userAgentString).toMap(), userAgentString);
+        }
+    }
+}
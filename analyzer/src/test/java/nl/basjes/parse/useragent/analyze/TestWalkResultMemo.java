@@ -0,0 +1,144 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.analyze;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.analyze.TestTreewalkerRequire.TestMatcher;
+import nl.basjes.parse.useragent.analyze.treewalker.TreeExpressionEvaluator;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.Step;
+import nl.basjes.parse.useragent.analyze.treewalker.steps.WalkList;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestWalkResultMemo {
+
+    private TreeExpressionEvaluator createEvaluator(TestMatcher matcher, String path) {
+        MatcherExtractAction action = new MatcherExtractAction("Dummy", 42, path, matcher);
+        action.initialize();
+        return action.getEvaluatorForUnitTesting();
+    }
+
+    @Test
+    public void testShareWalkLists() {
+        TestMatcher matcher = new TestMatcher(new HashMap<>(), new HashMap<>());
+
+        TreeExpressionEvaluator evaluator1 = createEvaluator(matcher, "agent.(1)product.(1)name=\"Foo\"^.(1-3)version");
+        TreeExpressionEvaluator evaluator2 = createEvaluator(matcher, "agent.(2)product.(1)name=\"Bar\"^.(1-3)version");
+        TreeExpressionEvaluator evaluator3 = createEvaluator(matcher, "agent.(1)product.(1)name=\"Foo\"^.(1-2)version");
+
+        WalkList walkList1 = evaluator1.getWalkListForUnitTesting();
+        WalkList walkList2 = evaluator2.getWalkListForUnitTesting();
+        WalkList walkList3 = evaluator3.getWalkListForUnitTesting();
+        assertNotSame(walkList1, walkList2);
+        assertEquals(walkList1.getWalkDefinition(), walkList2.getWalkDefinition());
+        assertFalse(walkList1.getWalkDefinition().equals(walkList3.getWalkDefinition()));
+
+        Map<String, WalkList> sharedWalkLists = new HashMap<>();
+        Map<String, Step>     sharedSteps     = new HashMap<>();
+        assertFalse(evaluator1.shareWalkList(sharedWalkLists, sharedSteps));
+        assertTrue(evaluator2.shareWalkList(sharedWalkLists, sharedSteps));
+        assertFalse(evaluator3.shareWalkList(sharedWalkLists, sharedSteps));
+        assertEquals(2, sharedWalkLists.size());
+
+        // The same walk is now done by the same instance.
+        assertSame(walkList1, evaluator1.getWalkListForUnitTesting());
+        assertSame(walkList1, evaluator2.getWalkListForUnitTesting());
+        assertSame(walkList3, evaluator3.getWalkListForUnitTesting());
+
+        // Both walks start with the same step but continue differently
+        assertNotSame(walkList1.getFirstStep(), walkList3.getFirstStep());
+        // Down([1:3]version), Up() Down([1:3]version), Down([1:2]version), Up() Down([1:2]version)
+        assertEquals(4, sharedSteps.size());
+    }
+
+    @Test
+    public void testShareSteps() {
+        TestMatcher matcher = new TestMatcher(new HashMap<>(), new HashMap<>());
+
+        TreeExpressionEvaluator evaluator1 = createEvaluator(matcher, "agent.(1)product.(1)name^.(1)version[2]=\"Foo\"");
+        TreeExpressionEvaluator evaluator2 = createEvaluator(matcher, "agent.(1)product.(1)name^.(1)version^.(1)version[2]=\"Foo\"");
+
+        Map<String, WalkList> sharedWalkLists = new HashMap<>();
+        Map<String, Step>     sharedSteps     = new HashMap<>();
+        assertFalse(evaluator1.shareWalkList(sharedWalkLists, sharedSteps));
+        assertFalse(evaluator2.shareWalkList(sharedWalkLists, sharedSteps));
+
+        // The second walk ends with exactly the same steps as the first walk.
+        Step step1 = evaluator1.getWalkListForUnitTesting().getFirstStep();
+        Step step2 = evaluator2.getWalkListForUnitTesting().getFirstStep().getNextStep().getNextStep();
+        assertSame(step1, step2);
+    }
+
+    @Test
+    public void testMemoDuringParse() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .withWalkResultMemo()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .build();
+
+        String userAgentString =
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        UserAgent userAgent1 = uaa.parse(userAgentString);
+
+        WalkResultMemo memo = uaa.getWalkResultMemo();
+        long walkRequests = memo.getWalkRequests();
+        long walkHits     = memo.getWalkHits();
+        long stepRequests = memo.getStepRequests();
+        long stepHits     = memo.getStepHits();
+        assertTrue(walkRequests > 0);
+        assertTrue(walkHits > 0, "Identical walks should have been done only once");
+        assertTrue(stepRequests > 0);
+        assertTrue(stepHits > 0, "Identical steps should have been done only once");
+
+        // The results of a previous parse are never reused.
+        UserAgent userAgent2 = uaa.parse(userAgentString);
+        assertEquals(2 * walkRequests, memo.getWalkRequests());
+        assertEquals(2 * walkHits,     memo.getWalkHits());
+        assertEquals(2 * stepRequests, memo.getStepRequests());
+        assertEquals(2 * stepHits,     memo.getStepHits());
+
+        assertEquals(userAgent1.toMap(), userAgent2.toMap());
+        assertEquals("Phone",     userAgent1.getValue("DeviceClass"));
+        assertEquals("Chrome 53", userAgent1.getValue("AgentNameVersionMajor"));
+
+        UserAgentAnalyzer uaaWithoutMemo = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .build();
+        assertNull(uaaWithoutMemo.getWalkResultMemo());
+        assertEquals(userAgent1.toMap(), uaaWithoutMemo.parse(userAgentString).toMap());
+    }
+}
@@ -17,10 +17,14 @@
 
 package nl.basjes.parse.useragent.annotate;
 
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.junit.jupiter.api.Test;
 
 import java.io.Serializable;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -88,6 +92,33 @@ public class TestAnnotationSystem {
         assertEquals("Chrome 48.0.2564.82", record.agentNameVersion);
     }
 
+    @Test
+    public void testProvidedAnalyzer() {
+        MyMapper mapper = new MyMapper();
+
+        Set<String> requestedFields = new TreeSet<>();
+        UserAgentAnnotationAnalyzer<TestRecord> annotationAnalyzer = new UserAgentAnnotationAnalyzer<>();
+        UserAgentAnalyzer userAgentAnalyzer = UserAgentAnalyzer.newBuilder().withField("DeviceClass").withField("AgentNameVersion").build();
+        annotationAnalyzer.initialize(mapper, fieldNames -> {
+            requestedFields.addAll(fieldNames);
+            return userAgentAnalyzer;
+        });
+        assertEquals("[AgentNameVersion, DeviceClass]", requestedFields.toString());
+
+        // The values of a useragent that was analyzed only once
+        UserAgent userAgent = userAgentAnalyzer.parse("Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36");
+
+        TestRecord record1 = annotationAnalyzer.map(new TestRecord(userAgent.getUserAgentString()), userAgent);
+        TestRecord record2 = annotationAnalyzer.map(new TestRecord(userAgent.getUserAgentString()), userAgent);
+
+        assertEquals("Desktop", record1.deviceClass);
+        assertEquals("Chrome 48.0.2564.82", record1.agentNameVersion);
+        assertEquals("Desktop", record2.deviceClass);
+        assertEquals("Chrome 48.0.2564.82", record2.agentNameVersion);
+        assertNull(annotationAnalyzer.map(null, userAgent));
+    }
+
     // ----------------------------------------------------------------
 
     public static class ImpossibleFieldMapper extends MyBaseMapper {
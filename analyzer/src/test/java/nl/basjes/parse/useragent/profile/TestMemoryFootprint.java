@@ -18,12 +18,18 @@
 package nl.basjes.parse.useragent.profile;
 
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.debug.MemoryFootprint;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestMemoryFootprint {
@@ -107,6 +113,38 @@ public class TestMemoryFootprint {
         assertTrue((memoryAfterClean - memoryInitial) < 10_000_000, "To much memory remained after cleanup");
     }
 
+    @Test
+    public void reportMemoryFootprint() {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .immediateInitialization()
+            .build();
+
+        MemoryFootprint footprint = uaa.getMemoryFootprint();
+        LOG.info("{}", footprint);
+
+        assertEquals(uaa.getLookups().size(),    footprint.getLookups().size());
+        assertEquals(uaa.getLookupSets().size(), footprint.getLookupSets().size());
+        assertTrue(footprint.getMatcherFiles().containsKey("GoogleChrome.yaml"));
+        assertTrue(footprint.getTotalLookups()    > 0);
+        assertTrue(footprint.getTotalLookupSets() > 0);
+        assertTrue(footprint.getTotalMatchers()   > 0);
+        assertEquals(
+            footprint.getTotalLookups() + footprint.getTotalLookupSets() + footprint.getTotalMatchers(),
+            footprint.getTotal());
+
+        // All lookups and sets must share a single instance of each distinct string.
+        Map<String, String> seen = new HashMap<>();
+        uaa.getLookups().values().forEach(lookup -> lookup.forEach((key, value) -> {
+            assertSame(seen.computeIfAbsent(key,   k -> key),   key);
+            assertSame(seen.computeIfAbsent(value, v -> value), value);
+        }));
+        uaa.getLookupSets().values().forEach(lookupSet -> lookupSet.forEach(value ->
+            assertSame(seen.computeIfAbsent(value, v -> value), value)));
+    }
+
     @Disabled
     @Test
     public void checkForMemoryLeaksDuringRuns() { //NOSONAR: Do not complain about ignored performance test
@@ -0,0 +1,137 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestPrefixLookup {
+
+    private Map<String, String> createPrefixList() {
+        Map<String, String> prefixList = new HashMap<>();
+        prefixList.put("1",      "One");
+        prefixList.put("12",     "One Two");
+        prefixList.put("1234",   "One Two Three Four");
+        prefixList.put("13",     "One Three");
+        prefixList.put("2",      "Two");
+        prefixList.put("Samsung SM-", "Samsung");
+        prefixList.put("Samsung SM-G", "Samsung Galaxy");
+        return prefixList;
+    }
+
+    @Test
+    public void testLongestMatch() {
+        PrefixLookup prefixLookup = new PrefixLookup(createPrefixList());
+        assertEquals(7, prefixLookup.size());
+
+        assertNull(prefixLookup.getLongestMatch(null));
+        assertNull(prefixLookup.getLongestMatch(""));
+        assertNull(prefixLookup.getLongestMatch("0"));
+        assertNull(prefixLookup.getLongestMatch("3"));
+
+        assertEquals("One",                prefixLookup.getLongestMatch("1"));
+        assertEquals("One",                prefixLookup.getLongestMatch("11"));
+        assertEquals("One Two",            prefixLookup.getLongestMatch("12"));
+        assertEquals("One Two",            prefixLookup.getLongestMatch("123"));
+        assertEquals("One Two",            prefixLookup.getLongestMatch("1235"));
+        assertEquals("One Two Three Four", prefixLookup.getLongestMatch("1234"));
+        assertEquals("One Two Three Four", prefixLookup.getLongestMatch("12345"));
+        assertEquals("One Three",          prefixLookup.getLongestMatch("13"));
+        assertEquals("One",                prefixLookup.getLongestMatch("14"));
+        assertEquals("Two",                prefixLookup.getLongestMatch("2"));
+        assertEquals("Two",                prefixLookup.getLongestMatch("22"));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        PrefixLookup prefixLookup = new PrefixLookup(createPrefixList());
+        assertEquals("Samsung",        prefixLookup.getLongestMatch("samsung sm-a500"));
+        assertEquals("Samsung",        prefixLookup.getLongestMatch("SAMSUNG SM-A500"));
+        assertEquals("Samsung Galaxy", prefixLookup.getLongestMatch("Samsung sm-g900"));
+        assertNull(prefixLookup.getLongestMatch("Samsung S"));
+    }
+
+    @Test
+    public void testEmptyPrefix() {
+        Map<String, String> prefixList = createPrefixList();
+        prefixList.put("", "Empty");
+        PrefixLookup prefixLookup = new PrefixLookup(prefixList);
+        assertEquals("Empty", prefixLookup.getLongestMatch(""));
+        assertEquals("Empty", prefixLookup.getLongestMatch("3"));
+        assertEquals("One",   prefixLookup.getLongestMatch("1"));
+    }
+
+    @Test
+    public void testEmptyLookup() {
+        PrefixLookup prefixLookup = new PrefixLookup(new HashMap<>());
+        assertEquals(0, prefixLookup.size());
+        assertNull(prefixLookup.getLongestMatch("Something"));
+    }
+
+    @Test
+    public void testSet() {
+        PrefixLookup prefixLookup = new PrefixLookup(new HashSet<>(Arrays.asList("Foo", "Bar")));
+        assertEquals("", prefixLookup.getLongestMatch("foobar"));
+        assertNull(prefixLookup.getLongestMatch("Something"));
+    }
+
+    private String bruteForceLongestMatch(Map<String, String> prefixList, String input) {
+        String longestPrefix = null;
+        for (String prefix : prefixList.keySet()) {
+            if (input.toLowerCase().startsWith(prefix.toLowerCase()) &&
+                (longestPrefix == null || prefix.length() > longestPrefix.length())) {
+                longestPrefix = prefix;
+            }
+        }
+        return longestPrefix == null ? null : prefixList.get(longestPrefix);
+    }
+
+    private String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append("abAB".charAt(random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random random = new Random(42);
+        for (int round = 0; round < 100; round++) {
+            Map<String, String> prefixList = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                String prefix = randomString(random, 6).toLowerCase();
+                prefixList.put(prefix, "Value " + prefix);
+            }
+            PrefixLookup prefixLookup = new PrefixLookup(prefixList);
+            for (int i = 0; i < 100; i++) {
+                String input = randomString(random, 8);
+                assertEquals(bruteForceLongestMatch(prefixList, input), prefixLookup.getLongestMatch(input), input);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.utils;
+
+import org.apache.hc.client5.http.psl.PublicSuffixList;
+import org.apache.hc.client5.http.psl.PublicSuffixListParser;
+import org.apache.hc.client5.http.psl.PublicSuffixMatcher;
+import org.apache.hc.client5.http.psl.PublicSuffixMatcherLoader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.hc.client5.http.psl.DomainType.ICANN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestPublicSuffixes {
+
+    @Test
+    public void testCompiledResourceIsPresent() {
+        assertNotNull(PublicSuffixes.class.getResource(PublicSuffixes.PUBLIC_SUFFIXES_RESOURCE));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        PublicSuffixes built = PublicSuffixes.build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        built.write(new DataOutputStream(bytes));
+        PublicSuffixes read = PublicSuffixes.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(built.getNumberOfNodes(), read.getNumberOfNodes());
+        assertEquals("example.co.uk", read.getDomainRoot("www.example.co.uk"));
+    }
+
+    @Test
+    public void testDomainRoot() {
+        PublicSuffixes publicSuffixes = PublicSuffixes.getInstance();
+        assertEquals("basjes.nl",         publicSuffixes.getDomainRoot("www.basjes.nl"));
+        assertEquals("basjes.nl",         publicSuffixes.getDomainRoot("WWW.Basjes.NL"));
+        assertEquals("example.co.uk",     publicSuffixes.getDomainRoot("a.b.example.co.uk"));
+        assertNull(publicSuffixes.getDomainRoot("co.uk"));
+        assertNull(publicSuffixes.getDomainRoot("localhost"));
+        assertNull(publicSuffixes.getDomainRoot("www.example.unknown"));
+        assertNull(publicSuffixes.getDomainRoot(".example.com"));
+        assertNull(publicSuffixes.getDomainRoot(""));
+        assertNull(publicSuffixes.getDomainRoot(null));
+        // Wildcard (*.ck) and exception (!www.ck)
+        assertNull(publicSuffixes.getDomainRoot("something.ck"));
+        assertEquals("example.something.ck", publicSuffixes.getDomainRoot("example.something.ck"));
+        assertEquals("www.ck",               publicSuffixes.getDomainRoot("www.www.ck"));
+    }
+
+    private static void addHostnames(List<String> hostnames, String suffix) {
+        for (String prefix : new String[]{"", "example.", "www.example.", "WWW.Example."}) {
+            hostnames.add(prefix + suffix);
+            hostnames.add(prefix + suffix.toUpperCase());
+        }
+    }
+
+    @Test
+    public void testSameAsHttpClient() throws IOException {
+        List<String> hostnames = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(
+            PublicSuffixes.class.getResourceAsStream("/mozilla/public-suffix-list.txt"), UTF_8)) {
+            for (PublicSuffixList list : new PublicSuffixListParser().parseByType(reader)) {
+                List<String> suffixes = new ArrayList<>(list.getRules());
+                suffixes.addAll(list.getExceptions());
+                for (String suffix : suffixes) {
+                    suffix = suffix.replace("*", "wild");
+                    addHostnames(hostnames, suffix);
+                    addHostnames(hostnames, IDN.toASCII(suffix));
+                    addHostnames(hostnames, "sub." + suffix);
+                }
+            }
+        }
+        addHostnames(hostnames, "unknown");
+        addHostnames(hostnames, "a..com");
+        addHostnames(hostnames, "com.");
+        addHostnames(hostnames, "example.com.");
+
+        PublicSuffixMatcher matcher        = PublicSuffixMatcherLoader.getDefault();
+        PublicSuffixes      publicSuffixes = PublicSuffixes.getInstance();
+        for (String hostname : hostnames) {
+            assertEquals(matcher.getDomainRoot(hostname, ICANN), publicSuffixes.getDomainRoot(hostname), hostname);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.benchmarks;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.analyze.treewalker.WalkResultMemo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses all the useragents of the test cases that are bundled with the analyzer
+ * with and without remembering the results of the walks and steps during a parse.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WalkResultMemoBenchmarks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalkResultMemoBenchmarks.class);
+
+    static UserAgentAnalyzer createAnalyzer(boolean useWalkResultMemo) {
+        UserAgentAnalyzer.UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+            .newBuilder()
+            .withoutCache()
+            .hideMatcherLoadStats()
+            .keepTests();
+        if (useWalkResultMemo) {
+            builder.withWalkResultMemo();
+        } else {
+            builder.withoutWalkResultMemo();
+        }
+        UserAgentAnalyzer uaa = builder.build();
+        uaa.parse((String)null);
+        return uaa;
+    }
+
+    static List<String> getUserAgents(UserAgentAnalyzer uaa) {
+        List<String> userAgents = new ArrayList<>();
+        for (Map<String, Map<String, String>> test : uaa.getTestCases()) {
+            userAgents.add(test.get("input").get("user_agent_string"));
+        }
+        return userAgents;
+    }
+
+    static long parseAll(UserAgentAnalyzer uaa, List<String> userAgents) {
+        long count = 0;
+        for (String userAgent : userAgents) {
+            // Use the result to guarantee it is not optimized away.
+            if (!uaa.parse(userAgent).hasSyntaxError()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @State(Scope.Benchmark)
+    public static class WithMemoState {
+        final UserAgentAnalyzer uaa        = createAnalyzer(true);
+        final List<String>      userAgents = getUserAgents(uaa);
+    }
+
+    @State(Scope.Benchmark)
+    public static class WithoutMemoState {
+        final UserAgentAnalyzer uaa        = createAnalyzer(false);
+        final List<String>      userAgents = getUserAgents(uaa);
+    }
+
+    @Benchmark
+    public long withWalkResultMemo(WithMemoState state) {
+        return parseAll(state.uaa, state.userAgents);
+    }
+
+    @Benchmark
+    public long withoutWalkResultMemo(WithoutMemoState state) {
+        return parseAll(state.uaa, state.userAgents);
+    }
+
+    private static String hitRate(long hits, long requests) {
+        return String.format("%d of %d (%.1f%%)", hits, requests, requests == 0 ? 0.0 : (100.0 * hits) / requests);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // First report how often the memo actually avoided doing a walk or a step.
+        UserAgentAnalyzer uaa        = createAnalyzer(true);
+        List<String>      userAgents = getUserAgents(uaa);
+        WalkResultMemo    memo       = uaa.getWalkResultMemo();
+        long walkRequests = memo.getWalkRequests();
+        long walkHits     = memo.getWalkHits();
+        long stepRequests = memo.getStepRequests();
+        long stepHits     = memo.getStepHits();
+        parseAll(uaa, userAgents);
+        LOG.info("Parsed {} useragents.", userAgents.size());
+        LOG.info("Walks done only once: {}", hitRate(memo.getWalkHits() - walkHits, memo.getWalkRequests() - walkRequests));
+        LOG.info("Steps done only once: {}", hitRate(memo.getStepHits() - stepHits, memo.getStepRequests() - stepRequests));
+
+        // Then measure the CPU time this saves (or costs).
+        Options opt = new OptionsBuilder()
+            .include(WalkResultMemoBenchmarks.class.getSimpleName())
+            .build();
+
+        new Runner(opt).run();
+    }
+}
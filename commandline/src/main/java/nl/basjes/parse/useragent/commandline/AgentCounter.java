@@ -0,0 +1,165 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import java.util.Arrays;
+
+/**
+ * Counts the hits of all distinct useragents.
+ * All useragents are stored (once) in a single char array and are indexed using an open addressing hash table.
+ * So adding an already known useragent does not allocate anything.
+ * The distinct useragents retain the order in which they were first seen.
+ */
+final class AgentCounter {
+
+    private char[] chars     = new char[1024 * 1024];
+    private int    charsUsed = 0;
+
+    // Per distinct agent (in the order they were first seen)
+    private int[]  starts    = new int[1024];
+    private int[]  lengths   = new int[1024];
+    private int[]  hashes    = new int[1024];
+    private long[] hits      = new long[1024];
+    private int    size      = 0;
+
+    // The hash table: The index of the agent + 1 (0 == empty slot)
+    private int[]  table     = new int[2048];
+
+    /**
+     * Add the hits for the useragent.
+     * @param agent The useragent.
+     * @param agentHits The number of hits to add.
+     */
+    void add(String agent, long agentHits) {
+        int length = agent.length();
+        ensureCharCapacity(length);
+        // Copy the value to the end of the buffer so we can use the same logic as with a char array.
+        agent.getChars(0, length, chars, charsUsed);
+        add(chars, charsUsed, charsUsed + length, agentHits);
+    }
+
+    /**
+     * Add the hits for the useragent that is in the provided range of characters.
+     * @param buffer The characters.
+     * @param start The first character of the useragent.
+     * @param end The first character after the useragent.
+     * @param agentHits The number of hits to add.
+     */
+    void add(char[] buffer, int start, int end, long agentHits) {
+        int length = end - start;
+        int hash   = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int index = entry - 1;
+            if (hashes[index] == hash &&
+                lengths[index] == length &&
+                rangeEquals(chars, starts[index], buffer, start, length)) {
+                hits[index] += agentHits;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // A new distinct agent
+        if (size == starts.length) {
+            int newSize = size * 2;
+            starts  = Arrays.copyOf(starts,  newSize);
+            lengths = Arrays.copyOf(lengths, newSize);
+            hashes  = Arrays.copyOf(hashes,  newSize);
+            hits    = Arrays.copyOf(hits,    newSize);
+        }
+        if (buffer != chars || start != charsUsed) {
+            ensureCharCapacity(length);
+            System.arraycopy(buffer, start, chars, charsUsed, length);
+        }
+        starts[size]  = charsUsed;
+        lengths[size] = length;
+        hashes[size]  = hash;
+        hits[size]    = agentHits;
+        charsUsed += length;
+        size++;
+        table[slot] = size;
+
+        // Keep the load factor at or below 0.5
+        if (size * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    private void ensureCharCapacity(int extra) {
+        long needed = (long) charsUsed + extra;
+        if (needed > chars.length) {
+            long newLength = Math.max(needed, 2L * chars.length);
+            if (newLength > Integer.MAX_VALUE - 8) {
+                newLength = Integer.MAX_VALUE - 8;
+                if (needed > newLength) {
+                    throw new IllegalStateException("Too many distinct useragents to aggregate in memory.");
+                }
+            }
+            chars = Arrays.copyOf(chars, (int) newLength);
+        }
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int   mask     = newTable.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = spread(hashes[index]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = index + 1;
+        }
+        table = newTable;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean rangeEquals(char[] left, int leftStart, char[] right, int rightStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (left[leftStart + i] != right[rightStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of distinct useragents.
+     */
+    int size() {
+        return size;
+    }
+
+    String getAgent(int index) {
+        return new String(chars, starts[index], lengths[index]);
+    }
+
+    long getHits(int index) {
+        return hits[index];
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads the columnar output (see {@link ColumnarWriter} for the format) one row group at a time.
+ * The values are only materialized once per distinct value in a row group.
+ */
+public final class ColumnarReader implements Closeable {
+
+    private final DataInputStream in;
+    private final List<String>    columnNames;
+    private boolean               atEnd = false;
+
+    public ColumnarReader(InputStream inputStream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+
+        byte[] magic = new byte[ColumnarWriter.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarWriter.MAGIC)) {
+            throw new IOException("This is not a Yauaa columnar file.");
+        }
+        int version = in.readInt();
+        if (version != ColumnarWriter.VERSION) {
+            throw new IOException("Unsupported Yauaa columnar file version " + version);
+        }
+
+        int columnCount = readVarInt(in);
+        List<String> names = new ArrayList<>(columnCount);
+        for (int column = 0; column < columnCount; column++) {
+            names.add(readString(in));
+        }
+        columnNames = Collections.unmodifiableList(names);
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * @return The next row group or null if there are no more.
+     */
+    public RowGroup nextRowGroup() throws IOException {
+        if (atEnd) {
+            return null;
+        }
+        int rowCount = readVarInt(in);
+        if (rowCount == 0) {
+            atEnd = true;
+            return null;
+        }
+
+        int        columnCount  = columnNames.size();
+        String[][] dictionaries = new String[columnCount][];
+        int[][]    indexes      = new int[columnCount][rowCount];
+        for (int column = 0; column < columnCount; column++) {
+            String[] dictionary = new String[readVarInt(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(in);
+            }
+            dictionaries[column] = dictionary;
+
+            int   width         = in.readUnsignedByte();
+            int[] columnIndexes = indexes[column];
+            for (int row = 0; row < rowCount; row++) {
+                switch (width) {
+                    case 1:
+                        columnIndexes[row] = in.readUnsignedByte();
+                        break;
+                    case 2:
+                        columnIndexes[row] = in.readUnsignedShort();
+                        break;
+                    case 4:
+                        columnIndexes[row] = in.readInt();
+                        break;
+                    default:
+                        throw new IOException("Invalid index width " + width);
+                }
+            }
+        }
+        return new RowGroup(rowCount, dictionaries, indexes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public static final class RowGroup {
+        private final int        rowCount;
+        private final String[][] dictionaries;
+        private final int[][]    indexes;
+
+        RowGroup(int rowCount, String[][] dictionaries, int[][] indexes) {
+            this.rowCount     = rowCount;
+            this.dictionaries = dictionaries;
+            this.indexes      = indexes;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return The distinct values of the column in this row group.
+         */
+        public List<String> getDictionary(int column) {
+            return Collections.unmodifiableList(Arrays.asList(dictionaries[column]));
+        }
+
+        /**
+         * @return The index in the dictionary of the value of the column in the specified row.
+         */
+        public int getIndex(int column, int row) {
+            return indexes[column][row];
+        }
+
+        public String getValue(int column, int row) {
+            return dictionaries[column][indexes[column][row]];
+        }
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new IOException("Invalid variable length integer");
+            }
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
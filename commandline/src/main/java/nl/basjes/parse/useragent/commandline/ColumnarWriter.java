@@ -0,0 +1,176 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes rows of string values in a simple binary columnar format (which can be read with the {@link ColumnarReader}).
+ * <pre>
+ * File     : MAGIC VERSION(int) columnCount(varint) columnName(string)* RowGroup* 0(varint)
+ * RowGroup : rowCount(varint) Column*
+ * Column   : dictionarySize(varint) value(string)* indexWidth(byte: 1, 2 or 4) index*
+ * String   : 0(varint) for null or (length+1)(varint) followed by the UTF-8 bytes
+ * </pre>
+ * Each row group has its own dictionary per column so the size depends on the number of
+ * distinct values instead of the number of rows.
+ */
+final class ColumnarWriter {
+
+    static final byte[] MAGIC   = "YauaaCol".getBytes(US_ASCII);
+    static final int    VERSION = 1;
+
+    static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    private final DataOutputStream out;
+    private final int              rowGroupSize;
+
+    private int                         columnCount;
+    private List<Map<String, Integer>>  dictionaries;
+    private List<List<String>>          dictionaryValues;
+    private int[][]                     indexes;
+    private int                         rows = 0;
+
+    ColumnarWriter(OutputStream out) {
+        this(out, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    ColumnarWriter(OutputStream out, int rowGroupSize) {
+        this.out          = new DataOutputStream(out);
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    void start(List<String> columnNames) {
+        columnCount      = columnNames.size();
+        dictionaries     = new ArrayList<>(columnCount);
+        dictionaryValues = new ArrayList<>(columnCount);
+        indexes          = new int[columnCount][rowGroupSize];
+        for (int column = 0; column < columnCount; column++) {
+            dictionaries.add(new HashMap<>());
+            dictionaryValues.add(new ArrayList<>());
+        }
+
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            writeVarInt(out, columnCount);
+            for (String columnName : columnNames) {
+                writeString(out, columnName);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void addRow(String[] values) {
+        for (int column = 0; column < columnCount; column++) {
+            Map<String, Integer> dictionary = dictionaries.get(column);
+            Integer index = dictionary.get(values[column]);
+            if (index == null) {
+                List<String> columnValues = dictionaryValues.get(column);
+                index = columnValues.size();
+                columnValues.add(values[column]);
+                dictionary.put(values[column], index);
+            }
+            indexes[column][rows] = index;
+        }
+        rows++;
+        if (rows == rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    private void writeRowGroup() {
+        if (rows == 0) {
+            return;
+        }
+        try {
+            writeVarInt(out, rows);
+            for (int column = 0; column < columnCount; column++) {
+                List<String> columnValues = dictionaryValues.get(column);
+                writeVarInt(out, columnValues.size());
+                for (String value : columnValues) {
+                    writeString(out, value);
+                }
+
+                int[] columnIndexes = indexes[column];
+                if (columnValues.size() <= 0x100) {
+                    out.writeByte(1);
+                    for (int row = 0; row < rows; row++) {
+                        out.writeByte(columnIndexes[row]);
+                    }
+                } else if (columnValues.size() <= 0x10000) {
+                    out.writeByte(2);
+                    for (int row = 0; row < rows; row++) {
+                        out.writeShort(columnIndexes[row]);
+                    }
+                } else {
+                    out.writeByte(4);
+                    for (int row = 0; row < rows; row++) {
+                        out.writeInt(columnIndexes[row]);
+                    }
+                }
+
+                columnValues.clear();
+                dictionaries.get(column).clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows = 0;
+    }
+
+    void close() {
+        writeRowGroup();
+        try {
+            writeVarInt(out, 0);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import java.nio.CharBuffer;
+
+/**
+ * A single line of input which is either "useragent" or "hits&lt;TAB&gt;useragent".
+ * The instance is reused for all lines.
+ */
+final class InputLine {
+    private long   hits;
+    private int    agentStart;
+    private String agent;
+
+    /**
+     * Load a new line of input.
+     * @param line The raw line from the input.
+     * @return false if this line must be ignored.
+     */
+    boolean set(String line) {
+        if (!load(line, 0, line.length())) {
+            return false;
+        }
+        agent = agentStart == 0 ? line : line.substring(agentStart);
+        return true;
+    }
+
+    /**
+     * Load a new line of input from a part of a buffer.
+     * @param chars The buffer (which is wrapped as the CharSequence).
+     * @param wrapped The CharBuffer wrapping the entire buffer (i.e. charAt(i) == chars[i]).
+     * @param start The first character of the line.
+     * @param end The first character after the line (excluding the line terminator).
+     * @return false if this line must be ignored.
+     */
+    boolean set(char[] chars, CharBuffer wrapped, int start, int end) {
+        if (!load(wrapped, start, end)) {
+            return false;
+        }
+        agent = new String(chars, agentStart, end - agentStart);
+        return true;
+    }
+
+    /**
+     * Load a new line of input from a part of a buffer without creating the useragent String.
+     * The useragent is the range from {@link #getAgentStart()} up to the provided end.
+     * @param wrapped The CharBuffer wrapping the entire buffer.
+     * @param start The first character of the line.
+     * @param end The first character after the line (excluding the line terminator).
+     * @return false if this line must be ignored.
+     */
+    boolean setRange(CharBuffer wrapped, int start, int end) {
+        agent = null;
+        return load(wrapped, start, end);
+    }
+
+    private boolean load(CharSequence chars, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        char first = chars.charAt(start);
+        if (first == ' ' || first == '#') {
+            return false;
+        }
+
+        hits       = 1;
+        agentStart = start;
+
+        int tab = start;
+        while (tab < end && chars.charAt(tab) != '\t') {
+            tab++;
+        }
+        if (tab == end) {
+            return true;
+        }
+
+        // Same rules as Long.parseLong: optional sign followed by only digits
+        int     pos      = start;
+        boolean negative = false;
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+        }
+        if (pos == tab) {
+            return true; // No digits at all
+        }
+        long value = 0;
+        while (pos < tab) {
+            int digit = chars.charAt(pos) - '0';
+            if (digit < 0 || digit > 9 ||
+                value < (Long.MIN_VALUE + digit) / 10) {
+                return true; // Not a number (or it overflows): The entire line is the useragent
+            }
+            value = value * 10 - digit; // Accumulate negatively to be able to reach Long.MIN_VALUE
+            pos++;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                return true; // Overflow
+            }
+            value = -value;
+        }
+        hits       = value;
+        agentStart = tab + 1;
+        return true;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    int getAgentStart() {
+        return agentStart;
+    }
+
+    String getAgent() {
+        return agent;
+    }
+}
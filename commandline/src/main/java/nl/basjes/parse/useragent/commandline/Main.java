@@ -17,13 +17,17 @@
 
 package nl.basjes.parse.useragent.commandline;
 
+import nl.basjes.parse.useragent.AbstractUserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgent.MutableUserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.analyze.MatchesList.Match;
 import nl.basjes.parse.useragent.debug.FlattenPrinter;
+import nl.basjes.parse.useragent.debug.RuleSetPruner;
 import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester;
 import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester.UserAgentAnalyzerTesterBuilder;
 import nl.basjes.parse.useragent.parse.UserAgentTreeFlattener;
+import org.apache.commons.text.StringEscapeUtils;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Localizable;
@@ -32,15 +36,29 @@ import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.useragent.AbstractUserAgentAnalyzerDirect.DEFAULT_RESOURCES;
 import static nl.basjes.parse.useragent.UserAgent.USERAGENT_FIELDNAME;
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.COLUMNAR;
 import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.CSV;
 import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.JSON;
 import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.YAML;
@@ -53,49 +71,7 @@ public final class Main {
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
     enum OutputFormat {
-        CSV, JSON, YAML
-    }
-
-    private static void printHeader(OutputFormat outputFormat, List<String> fields) {
-        if (outputFormat == CSV) {
-            boolean doSeparator = false;
-            for (String field : fields) {
-                if (doSeparator) {
-                    System.out.print("\t");
-                } else {
-                    doSeparator = true;
-                }
-                System.out.print(field);
-            }
-            System.out.println();
-        }
-    }
-
-    private static void printAgent(OutputFormat outputFormat, List<String> fields, UserAgent agent) {
-        switch (outputFormat) {
-            case CSV:
-                boolean doSeparator = false;
-                for (String field : fields) {
-                    if (doSeparator) {
-                        System.out.print("\t");
-                    } else {
-                        doSeparator = true;
-                    }
-                    String value = agent.getValue(field);
-                    if (value != null) {
-                        System.out.print(value);
-                    }
-                }
-                System.out.println();
-                break;
-            case JSON:
-                System.out.println(agent.toJson(fields));
-                break;
-            case YAML:
-                System.out.println(agent.toYamlTestCase());
-                break;
-            default:
-        }
+        CSV, JSON, YAML, COLUMNAR
     }
 
     private static class FakeLocalizable implements Localizable {
@@ -116,6 +92,177 @@ public final class Main {
         }
     }
 
+    private static UserAgentAnalyzerTester createAnalyzer(CommandOptions commandlineOptions) {
+        UserAgentAnalyzerTesterBuilder builder = UserAgentAnalyzerTester.newBuilder();
+        builder.hideMatcherLoadStats();
+        builder.dropTests();
+        builder.withCache(commandlineOptions.cacheSize);
+        List<String> wantedFields = wantedFields(commandlineOptions);
+        if (wantedFields != null) {
+            for (String field: wantedFields) {
+                builder.withField(field);
+            }
+        }
+        return builder.build();
+    }
+
+    // When aggregating by fields only those fields are needed.
+    private static List<String> wantedFields(CommandOptions commandlineOptions) {
+        if (commandlineOptions.aggregateBy != null) {
+            return commandlineOptions.aggregateBy;
+        }
+        return commandlineOptions.fields;
+    }
+
+    private static BufferedReader openInput(String inFile) throws FileNotFoundException {
+        // Open the file (or stdin)
+        InputStream inputStream = System.in;
+        if (!"-".equals(inFile)) {
+            inputStream = new FileInputStream(inFile);
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, UTF_8), 65536);
+    }
+
+    // Convert a file in the columnar format back into csv or json.
+    private static void printColumnar(String inFile, OutputFormat outputFormat, PrintWriter out) throws IOException {
+        InputStream inputStream = "-".equals(inFile) ? System.in : new FileInputStream(inFile);
+        try (ColumnarReader reader = new ColumnarReader(inputStream)) {
+            List<String>  columnNames = reader.getColumnNames();
+            StringBuilder line        = new StringBuilder(1024);
+            if (outputFormat == CSV) {
+                out.println(String.join("\t", columnNames));
+            }
+            ColumnarReader.RowGroup rowGroup;
+            while ((rowGroup = reader.nextRowGroup()) != null) {
+                for (int row = 0; row < rowGroup.getRowCount(); row++) {
+                    line.setLength(0);
+                    for (int column = 0; column < columnNames.size(); column++) {
+                        String value = rowGroup.getValue(column, row);
+                        if (outputFormat == CSV) {
+                            if (column > 0) {
+                                line.append('\t');
+                            }
+                            if (value != null) {
+                                line.append(value);
+                            }
+                        } else {
+                            line.append(column == 0 ? '{' : ',')
+                                .append('"').append(StringEscapeUtils.escapeJson(columnNames.get(column))).append("\":");
+                            if (value == null) {
+                                line.append("null");
+                            } else {
+                                line.append('"').append(StringEscapeUtils.escapeJson(value)).append('"');
+                            }
+                        }
+                    }
+                    if (outputFormat == JSON) {
+                        line.append('}');
+                    }
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    // Determine all distinct useragents with the total number of hits of each.
+    private static AgentCounter countAgents(CommandOptions commandlineOptions) throws IOException, InterruptedException {
+        AgentCounter agentCounter = new AgentCounter();
+        InputLine    inputLine    = new InputLine();
+
+        if (commandlineOptions.memoryMapped) {
+            MappedInputReader.ChunkDecoder chunkDecoder = new MappedInputReader.ChunkDecoder();
+            new MappedInputReader(commandlineOptions.inFile).read(chunk ->
+                chunkDecoder.decode(chunk, (chars, wrapped, start, end) -> {
+                    if (inputLine.setRange(wrapped, start, end)) {
+                        agentCounter.add(chars, inputLine.getAgentStart(), end, inputLine.getHits());
+                    }
+                }));
+            return agentCounter;
+        }
+
+        try(BufferedReader br = openInput(commandlineOptions.inFile)) {
+            String strLine;
+            while ((strLine = br.readLine()) != null) {
+                if (inputLine.set(strLine)) {
+                    agentCounter.add(inputLine.getAgent(), inputLine.getHits());
+                }
+            }
+        }
+        return agentCounter;
+    }
+
+    private static UserAgentAnalyzer buildAnalyzer(String rules, boolean withMatcherStatistics) {
+        UserAgentAnalyzer.UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .withoutCache();
+        if (rules != null) {
+            builder.dropDefaultResources().addResources(rules);
+        }
+        if (withMatcherStatistics) {
+            builder.withMatcherStatistics();
+        }
+        long start = System.nanoTime();
+        UserAgentAnalyzer uaa = builder.immediateInitialization().build();
+        LOG.info("Building the analyzer with {} took {} ms and it retains about {} bytes",
+            rules == null ? "the default rules" : rules,
+            (System.nanoTime() - start) / 1_000_000,
+            uaa.getMemoryFootprint().getTotal());
+        return uaa;
+    }
+
+    // Write the rules that are needed for the input useragents and output the results that would change.
+    private static void pruneRules(CommandOptions commandlineOptions, PrintWriter out) throws IOException, InterruptedException {
+        AgentCounter agentCounter = countAgents(commandlineOptions);
+        LOG.info("Found {} distinct useragents", agentCounter.size());
+
+        UserAgentAnalyzer full = buildAnalyzer(null, true);
+        for (int index = 0; index < agentCounter.size(); index++) {
+            full.parse(agentCounter.getAgent(index));
+        }
+
+        Path          rulesDirectory = Paths.get(commandlineOptions.pruneRules);
+        RuleSetPruner pruner         = new RuleSetPruner(full.getMatchedMatcherSourceLocations())
+            .loadResources(DEFAULT_RESOURCES);
+        int files = pruner.writeTo(rulesDirectory);
+        LOG.info("Wrote {} rule files to {}: {}", files, rulesDirectory, pruner);
+
+        UserAgentAnalyzer pruned = buildAnalyzer("file:" + rulesDirectory.toAbsolutePath() + "/*.yaml", false);
+
+        // Removed matchers never produced a result so normally nothing changes.
+        List<String> fields = full.getAllPossibleFieldNamesSorted();
+        long changedAgents = 0;
+        long changedHits   = 0;
+        for (int index = 0; index < agentCounter.size(); index++) {
+            String              agent        = agentCounter.getAgent(index);
+            Map<String, String> fullResult   = full.parse(agent).toMap(fields);
+            Map<String, String> prunedResult = pruned.parse(agent).toMap(fields);
+            if (fullResult.equals(prunedResult)) {
+                continue;
+            }
+            changedAgents++;
+            changedHits += agentCounter.getHits(index);
+            out.println("Useragent: " + agent);
+            for (String field : fields) {
+                String fullValue   = fullResult.get(field);
+                String prunedValue = prunedResult.get(field);
+                if (!Objects.equals(fullValue, prunedValue)) {
+                    out.println("    " + field + ": " + fullValue + " --> " + prunedValue);
+                }
+            }
+        }
+        out.flush();
+        LOG.info("The results of {} useragents ({} hits) change with the pruned rules", changedAgents, changedHits);
+    }
+
+    // Each worker thread gets its own analyzer; the first one reuses the already existing analyzer.
+    private static Supplier<AbstractUserAgentAnalyzer> analyzers(UserAgentAnalyzerTester first,
+                                                                  CommandOptions commandlineOptions) {
+        AtomicBoolean firstIsUsed = new AtomicBoolean(false);
+        return () -> firstIsUsed.getAndSet(true) ? createAnalyzer(commandlineOptions) : first;
+    }
+
     public static void main(String[] args) {
         int returnValue = 0;
         final CommandOptions commandlineOptions = new CommandOptions();
@@ -127,6 +274,16 @@ public final class Main {
                 throw new CmdLineException(parser, new FakeLocalizable("No input specified."));
             }
 
+            if (commandlineOptions.threads < 1) {
+                throw new CmdLineException(parser, new FakeLocalizable("The number of threads must be at least 1."));
+            }
+
+            if (commandlineOptions.pruneRules != null) {
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), 65536));
+                pruneRules(commandlineOptions, out);
+                return;
+            }
+
             OutputFormat outputFormat = null;
             if (commandlineOptions.csvFormat) {
                 outputFormat = CSV;
@@ -136,6 +293,10 @@ public final class Main {
                 } else {
                     if (commandlineOptions.yamlFormat) {
                         outputFormat = YAML;
+                    } else {
+                        if (commandlineOptions.columnarFormat) {
+                            outputFormat = COLUMNAR;
+                        }
                     }
                 }
             }
@@ -144,168 +305,102 @@ public final class Main {
                 throw new CmdLineException(parser, new FakeLocalizable("No output format specified."));
             }
 
-            UserAgentAnalyzerTesterBuilder builder = UserAgentAnalyzerTester.newBuilder();
-            builder.hideMatcherLoadStats();
-            builder.withCache(commandlineOptions.cacheSize);
-            if (commandlineOptions.fields != null) {
-                for (String field: commandlineOptions.fields) {
-                    builder.withField(field);
+            if (commandlineOptions.readColumnar) {
+                if (outputFormat != CSV && outputFormat != JSON) {
+                    throw new CmdLineException(parser, new FakeLocalizable("Columnar input can only be output as csv or json."));
                 }
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), 65536));
+                printColumnar(commandlineOptions.inFile, outputFormat, out);
+                out.flush();
+                return;
             }
-            UserAgentAnalyzerTester uaa = builder.build();
 
+            if (commandlineOptions.memoryMapped && "-".equals(commandlineOptions.inFile)) {
+                throw new CmdLineException(parser, new FakeLocalizable("Memory mapping needs an input file (not stdin)."));
+            }
+
+            UserAgentAnalyzerTester uaa = createAnalyzer(commandlineOptions);
+
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), 65536));
             UserAgentTreeFlattener flattenPrinter = new UserAgentTreeFlattener(new FlattenPrinter(System.out));
 
-            List<String> fields;
-            if (commandlineOptions.fields == null) {
+            List<String> fields = wantedFields(commandlineOptions);
+            if (fields == null) {
                 fields = uaa.getAllPossibleFieldNamesSorted();
                 fields.add(USERAGENT_FIELDNAME);
-            } else {
-                fields = commandlineOptions.fields;
             }
-            printHeader(outputFormat, fields);
+            ResultWriter resultWriter = new ResultWriter(out, outputFormat, fields, commandlineOptions.outputOnlyBadResults);
+            if (outputFormat == COLUMNAR) {
+                resultWriter.withColumnarWriter(new ColumnarWriter(new BufferedOutputStream(System.out, 65536)));
+            }
+            if (commandlineOptions.aggregateBy != null) {
+                resultWriter.aggregateBy(commandlineOptions.aggregateBy);
+            } else if (commandlineOptions.aggregate) {
+                resultWriter.withHits();
+            }
+            resultWriter.writeHeader();
+            // The flatten printer writes directly to System.out
+            out.flush();
 
             if (commandlineOptions.useragent != null) {
                 UserAgent agent = uaa.parse(commandlineOptions.useragent);
-                printAgent(outputFormat, fields, agent);
+                resultWriter.writeAgent(agent);
+                resultWriter.close();
                 return;
             }
 
-            // Open the file (or stdin)
-            InputStream inputStream = System.in;
-            if (!"-".equals(commandlineOptions.inFile)) {
-                inputStream = new FileInputStream(commandlineOptions.inFile);
+            if (commandlineOptions.aggregate || commandlineOptions.aggregateBy != null) {
+                AgentCounter agentCounter = countAgents(commandlineOptions);
+                LOG.info("Found {} distinct useragents", agentCounter.size());
+                // Each distinct useragent is analyzed only once.
+                new ParallelAnalyzer(commandlineOptions.threads, analyzers(uaa, commandlineOptions), resultWriter)
+                    .run(agentCounter);
+                resultWriter.close();
+                resultWriter.logStatistics();
+                return;
             }
 
-            try(BufferedReader br = new BufferedReader(new InputStreamReader(inputStream, UTF_8))) {
-
-                String strLine;
-
-                long ambiguities  = 0;
-                long syntaxErrors = 0;
-
-                long linesTotal   = 0;
-                long hitsTotal    = 0;
-                long linesOk      = 0;
-                long hitsOk       = 0;
-                long linesMatched = 0;
-                long hitsMatched  = 0;
-                long start        = System.nanoTime();
-
-                long segmentStartTime  = start;
-                long segmentStartLines = linesTotal;
-
-                //Read File Line By Line
-                while ((strLine = br.readLine()) != null) {
-                    if (strLine.startsWith(" ") || strLine.startsWith("#") || strLine.isEmpty()) {
-                        continue;
-                    }
-
-                    long   hits     = 1;
-                    String agentStr = strLine;
-
-                    if (strLine.contains("\t")) {
-                        String[] parts = strLine.split("\t", 2);
-                        try { //NOSONAR: Not a separate method
-                            hits = Long.parseLong(parts[0]);
-                            agentStr = parts[1];
-                        } catch (NumberFormatException nfe) {
-                            agentStr = strLine;
-                        }
-                    }
-
-                    if (commandlineOptions.fullFlatten) {
-                        flattenPrinter.parse(agentStr);
-                        continue;
-                    }
-
-                    if (commandlineOptions.matchedFlatten) {
-                        for (Match match : uaa.getUsedMatches(new MutableUserAgent(agentStr))) {
-                            System.out.println(match.getKey() + " " + match.getValue());
-                        }
-                        continue;
-                    }
+            if (commandlineOptions.memoryMapped) {
+                new ParallelAnalyzer(commandlineOptions.threads, analyzers(uaa, commandlineOptions), resultWriter)
+                    .run(new MappedInputReader(commandlineOptions.inFile));
+                resultWriter.close();
+                resultWriter.logStatistics();
+                return;
+            }
 
-                    UserAgent agent = uaa.parse(agentStr);
+            try(BufferedReader br = openInput(commandlineOptions.inFile)) {
+                if (commandlineOptions.threads > 1) {
+                    new ParallelAnalyzer(commandlineOptions.threads, analyzers(uaa, commandlineOptions), resultWriter)
+                        .run(br);
+                } else {
+                    InputLine inputLine = new InputLine();
+                    String strLine;
 
-                    boolean hasBad = false;
-                    for (String field : UserAgent.STANDARD_FIELDS) {
-                        if (agent.getConfidence(field) < 0) {
-                            hasBad = true;
-                            break;
+                    //Read File Line By Line
+                    while ((strLine = br.readLine()) != null) {
+                        if (!inputLine.set(strLine)) {
+                            continue;
                         }
-                    }
 
-                    linesTotal++;
-                    hitsTotal += hits;
+                        String agentStr = inputLine.getAgent();
 
-                    if (agent.hasSyntaxError()) {
-                        if (outputFormat == YAML) {
-                            System.out.println("# Syntax error: " + agentStr);
+                        if (commandlineOptions.fullFlatten) {
+                            flattenPrinter.parse(agentStr);
+                            continue;
                         }
-                    } else {
-                        linesOk++;
-                        hitsOk += hits;
-                    }
-
-                    if (!hasBad) {
-                        linesMatched++;
-                        hitsMatched += hits;
-                    }
 
-                    if (agent.hasAmbiguity()) {
-                        ambiguities++;
-                    }
-                    if (agent.hasSyntaxError()) {
-                        syntaxErrors++;
-                    }
-
-                    if (linesTotal % 1000 == 0) {
-                        long nowTime = System.nanoTime();
-                        long speed   = (1000000000L * (linesTotal - segmentStartLines)) / (nowTime - segmentStartTime);
-                        System.err.println(
-                            String.format("Lines = %8d (Ambiguities: %5d ; SyntaxErrors: %5d) Analyze speed = %5d/sec.",
-                                linesTotal, ambiguities, syntaxErrors, speed));
-                        segmentStartTime = nowTime;
-                        segmentStartLines = linesTotal;
-                        ambiguities = 0;
-                        syntaxErrors = 0;
-                    }
-
-                    if (commandlineOptions.outputOnlyBadResults) {
-                        if (hasBad) {
+                        if (commandlineOptions.matchedFlatten) {
+                            for (Match match : uaa.getUsedMatches(new MutableUserAgent(agentStr))) {
+                                out.println(match.getKey() + " " + match.getValue());
+                            }
                             continue;
                         }
-                    }
 
-                    printAgent(outputFormat, fields, agent);
-                }
-
-                long stop = System.nanoTime();
-
-                LOG.info("-------------------------------------------------------------");
-                LOG.info("Performance: {} in {} sec --> {}/sec",
-                    linesTotal, (stop - start) / 1000000000L, (1000000000L * linesTotal) / (stop - start));
-                LOG.info("-------------------------------------------------------------");
-                LOG.info("Parse results of {} lines", linesTotal);
-                LOG.info(String.format("Parsed without error: %8d (=%6.2f%%)",
-                    linesOk, 100.0 * (double) linesOk / (double) linesTotal));
-                LOG.info(String.format("Parsed with    error: %8d (=%6.2f%%)",
-                    linesTotal - linesOk, 100.0 * (double) (linesTotal - linesOk) / (double) linesTotal));
-                LOG.info(String.format("Fully matched       : %8d (=%6.2f%%)",
-                    linesMatched, 100.0 * (double) linesMatched / (double) linesTotal));
-
-                if (linesTotal != hitsTotal) {
-                    LOG.info("-------------------------------------------------------------");
-                    LOG.info("Parse results of {} hits", hitsTotal);
-                    LOG.info(String.format("Parsed without error: %8d (=%6.2f%%)",
-                        hitsOk, 100.0 * (double) hitsOk / (double) hitsTotal));
-                    LOG.info(String.format("Parsed with    error: %8d (=%6.2f%%)",
-                        hitsTotal - hitsOk, 100.0 * (double) (hitsTotal - hitsOk) / (double) hitsTotal));
-                    LOG.info(String.format("Fully matched       : %8d (=%6.2f%%)",
-                        hitsMatched, 100.0 * (double) hitsMatched / (double) hitsTotal));
-                    LOG.info("-------------------------------------------------------------");
+                        resultWriter.write(agentStr, inputLine.getHits(), uaa.parse(agentStr));
+                    }
                 }
+                resultWriter.close();
+                resultWriter.logStatistics();
             }
         } catch (final CmdLineException e) {
             logVersion();
@@ -329,15 +424,29 @@ public final class Main {
         @Option(name = "-in", usage = "Location of input file", forbids = {"-ua"})
         private String inFile = null;
 
-        @Option(name = "-yaml", usage = "Output in yaml testcase format", forbids = {"-csv", "-json"})
+        @Option(name = "-yaml", usage = "Output in yaml testcase format", forbids = {"-csv", "-json", "-columnar"})
         private boolean yamlFormat = false;
 
-        @Option(name = "-csv", usage = "Output in csv format", forbids = {"-yaml", "-json"})
+        @Option(name = "-csv", usage = "Output in csv format", forbids = {"-yaml", "-json", "-columnar"})
         private boolean csvFormat = false;
 
-        @Option(name = "-json", usage = "Output in json format", forbids = {"-yaml", "-csv"})
+        @Option(name = "-json", usage = "Output in json format", forbids = {"-yaml", "-csv", "-columnar"})
         private boolean jsonFormat = false;
 
+        @Option(name = "-columnar", usage = "Output in a (binary) dictionary encoded columnar format",
+            forbids = {"-yaml", "-csv", "-json", "-fullFlatten", "-matchedFlatten"})
+        private boolean columnarFormat = false;
+
+        @Option(name = "-readColumnar", usage = "The input file is in the columnar format and is output as csv or json",
+            depends = {"-in"}, forbids = {"-ua", "-columnar", "-yaml", "-mmap", "-aggregate", "-aggregateBy"})
+        private boolean readColumnar = false;
+
+        @Option(name = "-pruneRules", usage = "Write the rules (in this directory) that produced a result for any of " +
+            "the input useragents and output the results that change when using only these rules.",
+            depends = {"-in"}, forbids = {"-ua", "-csv", "-json", "-yaml", "-columnar", "-readColumnar",
+                "-aggregate", "-aggregateBy", "-fullFlatten", "-matchedFlatten"})
+        private String pruneRules = null;
+
         @Option(name = "-fields", handler = StringArrayOptionHandler.class,
             usage = "A list of the desired fieldnames (use '" + USERAGENT_FIELDNAME + "' if you want the input value as well)")
         private List<String> fields = null;
@@ -345,6 +454,26 @@ public final class Main {
         @Option(name = "-cache", usage = "The number of elements that can be cached (LRU).")
         private int cacheSize = 10000;
 
+        @Option(name = "-threads", usage = "The number of threads used to analyze the input. " +
+            "Each thread has its own analyzer (and cache).",
+            forbids = {"-fullFlatten", "-matchedFlatten"})
+        private int threads = 1;
+
+        @Option(name = "-mmap", usage = "Memory map the input file and decode it in chunks in the worker threads.",
+            depends = {"-in"}, forbids = {"-ua", "-fullFlatten", "-matchedFlatten"})
+        private boolean memoryMapped = false;
+
+        @Option(name = "-aggregate", usage = "First determine the distinct useragents (summing the hits) " +
+            "and output each of them (with the hits) only once.",
+            depends = {"-in"}, forbids = {"-ua", "-fullFlatten", "-matchedFlatten", "-aggregateBy"})
+        private boolean aggregate = false;
+
+        @Option(name = "-aggregateBy", handler = StringArrayOptionHandler.class,
+            usage = "First determine the distinct useragents (summing the hits) " +
+            "and only output the hits per combination of the values of these fields.",
+            depends = {"-in"}, forbids = {"-ua", "-fullFlatten", "-matchedFlatten", "-aggregate", "-fields", "-yaml"})
+        private List<String> aggregateBy = null;
+
         @Option(name = "-bad", usage = "Output only cases that have a problem")
         private boolean outputOnlyBadResults = false;
 
@@ -0,0 +1,164 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Memory maps the input file and splits it into chunks of bytes that always end at the end of a line.
+ * The decoding of the chunks (into lines) is done by the caller (i.e. the worker threads) using a {@link ChunkDecoder}.
+ */
+final class MappedInputReader {
+
+    // The size of a single chunk (i.e. batch of lines) that is handed to a worker.
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    // A single mapping of a file cannot be larger than 2GB.
+    private static final long WINDOW_SIZE = 1024L * 1024L * 1024L;
+
+    interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws InterruptedException;
+    }
+
+    private final String filename;
+
+    MappedInputReader(String filename) {
+        this.filename = filename;
+    }
+
+    void read(ChunkConsumer consumer) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), READ)) {
+            long size        = channel.size();
+            long windowStart = 0;
+            while (windowStart < size) {
+                int              windowLength = (int) Math.min(WINDOW_SIZE, size - windowStart);
+                boolean          lastWindow   = windowStart + windowLength == size;
+                MappedByteBuffer window       = channel.map(READ_ONLY, windowStart, windowLength);
+
+                int chunkStart = 0;
+                while (chunkStart < windowLength) {
+                    int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, windowLength);
+                    if (chunkEnd < windowLength || !lastWindow) {
+                        int lineEnd = lastLineEnd(window, chunkStart, chunkEnd);
+                        if (lineEnd == -1) {
+                            // A single line that is longer than a chunk
+                            lineEnd = firstLineEnd(window, chunkEnd, windowLength);
+                        }
+                        if (lineEnd == -1) {
+                            if (!lastWindow) {
+                                break; // The rest is done in the next window
+                            }
+                            lineEnd = windowLength;
+                        }
+                        chunkEnd = lineEnd;
+                    }
+
+                    ByteBuffer chunk = window.duplicate();
+                    chunk.limit(chunkEnd);
+                    chunk.position(chunkStart);
+                    consumer.accept(chunk.slice());
+                    chunkStart = chunkEnd;
+                }
+
+                if (chunkStart == 0) {
+                    throw new IOException("Found a line of more than " + WINDOW_SIZE + " bytes in " + filename);
+                }
+                windowStart += chunkStart;
+            }
+        }
+    }
+
+    // The position directly after the last '\n' in the range, -1 if none
+    private static int lastLineEnd(ByteBuffer buffer, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // The position directly after the first '\n' in the range, -1 if none
+    private static int firstLineEnd(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a chunk (UTF-8) into a reusable char buffer and splits it into lines.
+     * Each worker thread must have its own instance.
+     */
+    static final class ChunkDecoder {
+
+        interface LineConsumer {
+            void accept(char[] chars, CharBuffer wrapped, int start, int end);
+        }
+
+        private final CharsetDecoder decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+        void decode(ByteBuffer chunk, LineConsumer lineConsumer) {
+            // With UTF-8 a byte never becomes more than one char.
+            if (chars.capacity() < chunk.remaining()) {
+                chars = CharBuffer.allocate(chunk.remaining());
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(chunk, chars, true);
+            decoder.flush(chars);
+
+            char[] array = chars.array();
+            int    end   = chars.position();
+            // A view on the entire array (so charAt(i) == array[i]).
+            chars.clear();
+
+            int lineStart = 0;
+            for (int i = 0; i < end; i++) {
+                char c = array[i];
+                if (c == '\n' || c == '\r') {
+                    lineConsumer.accept(array, chars, lineStart, i);
+                    if (c == '\r' && i + 1 < end && array[i + 1] == '\n') {
+                        i++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart < end) {
+                lineConsumer.accept(array, chars, lineStart, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import nl.basjes.parse.useragent.AbstractUserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A pipeline of a single reader, a set of parse workers (each with their own analyzer) and
+ * a single writer that receives all results in the same order as the input.
+ * The lines are handed over in batches and all queues are bounded.
+ */
+final class ParallelAnalyzer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelAnalyzer.class);
+
+    static final int BATCH_SIZE = 1000;
+
+    private final int                                 threads;
+    private final Supplier<AbstractUserAgentAnalyzer> analyzerSupplier;
+    private final ResultWriter                        resultWriter;
+
+    // How often the writer checks if a worker failed while waiting for a batch.
+    private static final long FAILURE_CHECK_MS = 100;
+
+    ParallelAnalyzer(int threads, Supplier<AbstractUserAgentAnalyzer> analyzerSupplier, ResultWriter resultWriter) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1 (was " + threads + ")");
+        }
+        this.threads          = threads;
+        this.analyzerSupplier = analyzerSupplier;
+        this.resultWriter     = resultWriter;
+    }
+
+    // The state each worker thread needs.
+    private static final class Worker {
+        private final AbstractUserAgentAnalyzer       uaa;
+        private final InputLine                       inputLine    = new InputLine();
+        private final MappedInputReader.ChunkDecoder  chunkDecoder = new MappedInputReader.ChunkDecoder();
+
+        Worker(AbstractUserAgentAnalyzer uaa) {
+            this.uaa = uaa;
+        }
+    }
+
+    private static final class Batch {
+        // Either a list of lines, a chunk of (UTF-8) bytes or (if both are null) the agentStrings and hits are given.
+        private final List<String>     lines;
+        private final ByteBuffer       chunk;
+
+        private long[]                 hits;
+        private final List<String>     agentStrings = new ArrayList<>();
+        private final List<UserAgent>  agents       = new ArrayList<>();
+        private final CountDownLatch   done         = new CountDownLatch(1);
+        private Throwable              failure      = null;
+
+        Batch(List<String> lines) {
+            this.lines = lines;
+            this.chunk = null;
+            hits       = new long[lines.size()];
+        }
+
+        Batch(ByteBuffer chunk) {
+            this.lines = null;
+            this.chunk = chunk;
+            hits       = new long[256];
+        }
+
+        Batch(List<String> agentStrings, long[] hits) {
+            this.lines = null;
+            this.chunk = null;
+            this.hits  = hits;
+            this.agentStrings.addAll(agentStrings);
+        }
+
+        private void add(Worker worker) {
+            int index = agents.size();
+            if (index == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+            }
+            String agentString = worker.inputLine.getAgent();
+            hits[index] = worker.inputLine.getHits();
+            agentStrings.add(agentString);
+            agents.add(worker.uaa.parse(agentString));
+        }
+
+        void analyze(Worker worker, AtomicReference<Throwable> workerFailure) {
+            try {
+                if (lines != null) {
+                    for (String line : lines) {
+                        if (worker.inputLine.set(line)) {
+                            add(worker);
+                        }
+                    }
+                } else if (chunk == null) {
+                    for (String agentString : agentStrings) {
+                        agents.add(worker.uaa.parse(agentString));
+                    }
+                } else {
+                    worker.chunkDecoder.decode(chunk, (chars, wrapped, start, end) -> {
+                        if (worker.inputLine.set(chars, wrapped, start, end)) {
+                            add(worker);
+                        }
+                    });
+                }
+            } catch (Throwable e) { // NOSONAR: Also an Error must stop the pipeline instead of a partial batch
+                failure = e;
+                workerFailure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void writeTo(ResultWriter resultWriter, AtomicReference<Throwable> workerFailure) throws InterruptedException {
+            // A batch that will never be analyzed (because the workers failed) must not block the writer.
+            while (!done.await(FAILURE_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                if (workerFailure.get() != null) {
+                    throw new IllegalStateException("Analyzing failed: " + workerFailure.get(), workerFailure.get());
+                }
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Analyzing failed: " + failure, failure);
+            }
+            for (int i = 0; i < agents.size(); i++) {
+                resultWriter.write(agentStrings.get(i), hits[i], agents.get(i));
+            }
+        }
+    }
+
+    // Marks the end of the input
+    private static final Batch END_OF_INPUT = new Batch(new ArrayList<>());
+
+    /**
+     * Reads the input and submits it (in order) as batches.
+     */
+    private interface BatchProducer {
+        void produce(BlockingQueue<Batch> outputQueue, BlockingQueue<Batch> workQueue)
+            throws IOException, InterruptedException;
+    }
+
+    /**
+     * Analyze all lines read from the reader.
+     */
+    void run(BufferedReader reader) throws IOException, InterruptedException {
+        run((outputQueue, workQueue) -> {
+            List<String> lines = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == BATCH_SIZE) {
+                    submit(new Batch(lines), outputQueue, workQueue);
+                    lines = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(new Batch(lines), outputQueue, workQueue);
+            }
+        });
+    }
+
+    /**
+     * Analyze all lines in the memory mapped file; the decoding of the chunks is done by the workers.
+     */
+    void run(MappedInputReader mappedInputReader) throws IOException, InterruptedException {
+        run((outputQueue, workQueue) ->
+            mappedInputReader.read(chunk -> submit(new Batch(chunk), outputQueue, workQueue)));
+    }
+
+    /**
+     * Analyze all distinct useragents (each only once).
+     */
+    void run(AgentCounter agentCounter) throws IOException, InterruptedException {
+        run((outputQueue, workQueue) -> {
+            int size = agentCounter.size();
+            for (int batchStart = 0; batchStart < size; batchStart += BATCH_SIZE) {
+                int          batchSize    = Math.min(BATCH_SIZE, size - batchStart);
+                List<String> agentStrings = new ArrayList<>(batchSize);
+                long[]       hits         = new long[batchSize];
+                for (int i = 0; i < batchSize; i++) {
+                    agentStrings.add(agentCounter.getAgent(batchStart + i));
+                    hits[i] = agentCounter.getHits(batchStart + i);
+                }
+                submit(new Batch(agentStrings, hits), outputQueue, workQueue);
+            }
+        });
+    }
+
+    private void run(BatchProducer producer) throws IOException, InterruptedException {
+        // The work queue gets the batches in any order, the output queue retains the order of the input.
+        final BlockingQueue<Batch> workQueue   = new ArrayBlockingQueue<>(threads * 4);
+        final BlockingQueue<Batch> outputQueue = new ArrayBlockingQueue<>(threads * 4);
+
+        // The first failure of any worker (including creating its analyzer) stops the pipeline.
+        final AtomicReference<Throwable> workerFailure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread workerThread = new Thread(() -> {
+                try {
+                    Worker worker = new Worker(analyzerSupplier.get());
+                    Batch batch;
+                    while ((batch = workQueue.take()) != END_OF_INPUT) {
+                        batch.analyze(worker, workerFailure);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Throwable e) { // NOSONAR: Any failure must stop the pipeline
+                    workerFailure.compareAndSet(null, e);
+                }
+            }, "Yauaa-Worker-" + i);
+            workerThread.setDaemon(true);
+            workerThread.start();
+            workers.add(workerThread);
+        }
+
+        final IOException[] readFailure = new IOException[1];
+        Thread readerThread = new Thread(() -> {
+            try {
+                producer.produce(outputQueue, workQueue);
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    outputQueue.put(END_OF_INPUT);
+                    for (int i = 0; i < threads; i++) {
+                        workQueue.put(END_OF_INPUT);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "Yauaa-Reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        LOG.info("Analyzing with {} threads", threads);
+
+        // The writer is the current thread.
+        try {
+            Batch batch;
+            while ((batch = outputQueue.take()) != END_OF_INPUT) {
+                batch.writeTo(resultWriter, workerFailure);
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            // Stop everything else that is still running (or waiting for a full queue).
+            readerThread.interrupt();
+            workers.forEach(Thread::interrupt);
+            throw e;
+        }
+
+        readerThread.join();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+    }
+
+    private static void submit(Batch batch, BlockingQueue<Batch> outputQueue, BlockingQueue<Batch> workQueue)
+        throws InterruptedException {
+        // First reserve the place in the output and only then make it available for the workers.
+        outputQueue.put(batch);
+        workQueue.put(batch);
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.commandline.Main.OutputFormat;
+import org.apache.commons.text.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.COLUMNAR;
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.CSV;
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.JSON;
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.YAML;
+
+/**
+ * Keeps the statistics and writes the results of the analyzed useragents.
+ * All results must be written in the order of the input by a single thread.
+ */
+final class ResultWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultWriter.class);
+
+    static final String HITS = "Hits";
+
+    private final PrintWriter   out;
+    private final OutputFormat  outputFormat;
+    private final List<String>  fields;
+    private final boolean       outputOnlyBadResults;
+
+    private final StringBuilder line = new StringBuilder(1024);
+
+    // Include the hits with each useragent
+    private boolean      writeHits       = false;
+
+    // Only output the hits per combination of values of these fields
+    private List<String> aggregateFields = null;
+    private final Map<List<String>, long[]> aggregates = new HashMap<>();
+
+    // Only used for the COLUMNAR output format
+    private ColumnarWriter columnarWriter = null;
+    private String[]       columnarRow    = null;
+
+    // The hits of the agent that is being written
+    private long currentHits = 1;
+
+    private long ambiguities  = 0;
+    private long syntaxErrors = 0;
+
+    private long linesTotal   = 0;
+    private long hitsTotal    = 0;
+    private long linesOk      = 0;
+    private long hitsOk       = 0;
+    private long linesMatched = 0;
+    private long hitsMatched  = 0;
+    private final long start  = System.nanoTime();
+
+    private long segmentStartTime  = start;
+    private long segmentStartLines = linesTotal;
+
+    ResultWriter(PrintWriter out, OutputFormat outputFormat, List<String> fields, boolean outputOnlyBadResults) {
+        this.out                  = out;
+        this.outputFormat         = outputFormat;
+        this.fields               = fields;
+        this.outputOnlyBadResults = outputOnlyBadResults;
+    }
+
+    ResultWriter withHits() {
+        writeHits = true;
+        return this;
+    }
+
+    ResultWriter aggregateBy(List<String> fieldNames) {
+        aggregateFields = fieldNames;
+        return this;
+    }
+
+    ResultWriter withColumnarWriter(ColumnarWriter writer) {
+        columnarWriter = writer;
+        return this;
+    }
+
+    void writeHeader() {
+        if (outputFormat == COLUMNAR) {
+            List<String> columns = new ArrayList<>();
+            if (aggregateFields != null) {
+                columns.addAll(aggregateFields);
+                columns.add(HITS);
+            } else {
+                if (writeHits) {
+                    columns.add(HITS);
+                }
+                columns.addAll(fields);
+            }
+            columnarRow = new String[columns.size()];
+            columnarWriter.start(columns);
+            return;
+        }
+        if (outputFormat == CSV) {
+            line.setLength(0);
+            boolean doSeparator = false;
+            if (aggregateFields != null) {
+                for (String field : aggregateFields) {
+                    line.append(field).append('\t');
+                }
+                line.append(HITS);
+                out.println(line);
+                return;
+            }
+            if (writeHits) {
+                line.append(HITS);
+                doSeparator = true;
+            }
+            for (String field : fields) {
+                if (doSeparator) {
+                    line.append('\t');
+                } else {
+                    doSeparator = true;
+                }
+                line.append(field);
+            }
+            out.println(line);
+        }
+    }
+
+    void writeAgent(UserAgent agent) {
+        switch (outputFormat) {
+            case CSV:
+                line.setLength(0);
+                boolean doSeparator = false;
+                if (writeHits) {
+                    line.append(currentHits);
+                    doSeparator = true;
+                }
+                for (String field : fields) {
+                    if (doSeparator) {
+                        line.append('\t');
+                    } else {
+                        doSeparator = true;
+                    }
+                    String value = agent.getValue(field);
+                    if (value != null) {
+                        line.append(value);
+                    }
+                }
+                out.println(line);
+                break;
+            case JSON:
+                if (writeHits) {
+                    String json = agent.toJson(fields);
+                    line.setLength(0);
+                    line.append("{\"").append(HITS).append("\":").append(currentHits);
+                    if (json.length() > 2) {
+                        line.append(',');
+                    }
+                    line.append(json, 1, json.length());
+                    out.println(line);
+                } else {
+                    out.println(agent.toJson(fields));
+                }
+                break;
+            case YAML:
+                if (writeHits) {
+                    out.println("# " + HITS + ": " + currentHits);
+                }
+                out.println(agent.toYamlTestCase());
+                break;
+            case COLUMNAR:
+                int column = 0;
+                if (writeHits) {
+                    columnarRow[column++] = Long.toString(currentHits);
+                }
+                for (String field : fields) {
+                    columnarRow[column++] = agent.getValue(field);
+                }
+                columnarWriter.addRow(columnarRow);
+                break;
+            default:
+        }
+    }
+
+    private void aggregate(UserAgent agent, long agentHits) {
+        List<String> values = new ArrayList<>(aggregateFields.size());
+        for (String field : aggregateFields) {
+            values.add(agent.getValue(field));
+        }
+        aggregates.computeIfAbsent(values, v -> new long[1])[0] += agentHits;
+    }
+
+    private void writeAggregates() {
+        List<Map.Entry<List<String>, long[]>> entries = new ArrayList<>(aggregates.entrySet());
+        // Most hits first
+        entries.sort((left, right) -> Long.compare(right.getValue()[0], left.getValue()[0]));
+
+        for (Map.Entry<List<String>, long[]> entry : entries) {
+            List<String> values = entry.getKey();
+            if (outputFormat == COLUMNAR) {
+                for (int i = 0; i < values.size(); i++) {
+                    columnarRow[i] = values.get(i);
+                }
+                columnarRow[values.size()] = Long.toString(entry.getValue()[0]);
+                columnarWriter.addRow(columnarRow);
+                continue;
+            }
+            line.setLength(0);
+            if (outputFormat == JSON) {
+                line.append('{');
+                for (int i = 0; i < aggregateFields.size(); i++) {
+                    line.append('"').append(StringEscapeUtils.escapeJson(aggregateFields.get(i))).append("\":");
+                    String value = values.get(i);
+                    if (value == null) {
+                        line.append("null,");
+                    } else {
+                        line.append('"').append(StringEscapeUtils.escapeJson(value)).append("\",");
+                    }
+                }
+                line.append('"').append(HITS).append("\":").append(entry.getValue()[0]).append('}');
+            } else {
+                for (String value : values) {
+                    if (value != null) {
+                        line.append(value);
+                    }
+                    line.append('\t');
+                }
+                line.append(entry.getValue()[0]);
+            }
+            out.println(line);
+        }
+    }
+
+    void write(String agentStr, long hits, UserAgent agent) {
+        boolean hasBad = false;
+        for (String field : UserAgent.STANDARD_FIELDS) {
+            if (agent.getConfidence(field) < 0) {
+                hasBad = true;
+                break;
+            }
+        }
+
+        linesTotal++;
+        hitsTotal += hits;
+
+        if (agent.hasSyntaxError()) {
+            if (outputFormat == YAML) {
+                out.println("# Syntax error: " + agentStr);
+            }
+        } else {
+            linesOk++;
+            hitsOk += hits;
+        }
+
+        if (!hasBad) {
+            linesMatched++;
+            hitsMatched += hits;
+        }
+
+        if (agent.hasAmbiguity()) {
+            ambiguities++;
+        }
+        if (agent.hasSyntaxError()) {
+            syntaxErrors++;
+        }
+
+        if (linesTotal % 1000 == 0) {
+            long nowTime = System.nanoTime();
+            long speed   = (1000000000L * (linesTotal - segmentStartLines)) / (nowTime - segmentStartTime);
+            System.err.println(
+                String.format("Lines = %8d (Ambiguities: %5d ; SyntaxErrors: %5d) Analyze speed = %5d/sec.",
+                    linesTotal, ambiguities, syntaxErrors, speed));
+            segmentStartTime = nowTime;
+            segmentStartLines = linesTotal;
+            ambiguities = 0;
+            syntaxErrors = 0;
+        }
+
+        if (outputOnlyBadResults) {
+            if (hasBad) {
+                return;
+            }
+        }
+
+        if (aggregateFields != null) {
+            aggregate(agent, hits);
+            return;
+        }
+
+        currentHits = hits;
+        writeAgent(agent);
+    }
+
+    void close() {
+        if (aggregateFields != null) {
+            writeAggregates();
+        }
+        if (columnarWriter != null) {
+            columnarWriter.close();
+        }
+        out.flush();
+    }
+
+    void logStatistics() {
+        long stop = System.nanoTime();
+
+        LOG.info("-------------------------------------------------------------");
+        LOG.info("Performance: {} in {} sec --> {}/sec",
+            linesTotal, (stop - start) / 1000000000L, (1000000000L * linesTotal) / (stop - start));
+        LOG.info("-------------------------------------------------------------");
+        LOG.info("Parse results of {} lines", linesTotal);
+        LOG.info(String.format("Parsed without error: %8d (=%6.2f%%)",
+            linesOk, 100.0 * (double) linesOk / (double) linesTotal));
+        LOG.info(String.format("Parsed with    error: %8d (=%6.2f%%)",
+            linesTotal - linesOk, 100.0 * (double) (linesTotal - linesOk) / (double) linesTotal));
+        LOG.info(String.format("Fully matched       : %8d (=%6.2f%%)",
+            linesMatched, 100.0 * (double) linesMatched / (double) linesTotal));
+
+        if (linesTotal != hitsTotal) {
+            LOG.info("-------------------------------------------------------------");
+            LOG.info("Parse results of {} hits", hitsTotal);
+            LOG.info(String.format("Parsed without error: %8d (=%6.2f%%)",
+                hitsOk, 100.0 * (double) hitsOk / (double) hitsTotal));
+            LOG.info(String.format("Parsed with    error: %8d (=%6.2f%%)",
+                hitsTotal - hitsOk, 100.0 * (double) (hitsTotal - hitsOk) / (double) hitsTotal));
+            LOG.info(String.format("Fully matched       : %8d (=%6.2f%%)",
+                hitsMatched, 100.0 * (double) hitsMatched / (double) hitsTotal));
+            LOG.info("-------------------------------------------------------------");
+        }
+    }
+}
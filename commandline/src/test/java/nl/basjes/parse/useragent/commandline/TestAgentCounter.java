@@ -0,0 +1,134 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestAgentCounter {
+
+    private static List<String> agents(AgentCounter counter) {
+        List<String> result = new ArrayList<>(counter.size());
+        for (int i = 0; i < counter.size(); i++) {
+            result.add(counter.getAgent(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testOrderOfFirstOccurrence() {
+        AgentCounter counter = new AgentCounter();
+        counter.add("Three", 1);
+        counter.add("One",   1);
+        counter.add("Two",   1);
+        counter.add("One",   5);
+        counter.add("Three", 2);
+        counter.add("",      4);
+
+        assertEquals(4, counter.size());
+        List<String> expected = new ArrayList<>();
+        expected.add("Three");
+        expected.add("One");
+        expected.add("Two");
+        expected.add("");
+        assertEquals(expected, agents(counter));
+        assertEquals(3, counter.getHits(0));
+        assertEquals(6, counter.getHits(1));
+        assertEquals(1, counter.getHits(2));
+        assertEquals(4, counter.getHits(3));
+    }
+
+    @Test
+    public void testCharRanges() {
+        char[] buffer = "xxOneyyTwozzOne".toCharArray();
+        AgentCounter counter = new AgentCounter();
+        counter.add(buffer, 2, 5, 1);
+        counter.add(buffer, 7, 10, 2);
+        counter.add(buffer, 12, 15, 3);
+        counter.add("Two", 4);
+
+        // Changing the buffer afterwards must not affect the stored agents.
+        buffer[2] = 'X';
+
+        assertEquals(2, counter.size());
+        assertEquals("One", counter.getAgent(0));
+        assertEquals(4,     counter.getHits(0));
+        assertEquals("Two", counter.getAgent(1));
+        assertEquals(6,     counter.getHits(1));
+    }
+
+    @Test
+    public void testHashCollisions() {
+        // All of these have the same String.hashCode()
+        String[] colliding = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        assertEquals(colliding[0].hashCode(), colliding[3].hashCode());
+
+        AgentCounter counter = new AgentCounter();
+        for (int round = 1; round <= 3; round++) {
+            for (String agent : colliding) {
+                counter.add(agent, round);
+            }
+        }
+
+        assertEquals(colliding.length, counter.size());
+        for (int i = 0; i < colliding.length; i++) {
+            assertEquals(colliding[i], counter.getAgent(i));
+            assertEquals(6,            counter.getHits(i));
+        }
+    }
+
+    @Test
+    public void testResizing() {
+        // Far more distinct agents (and characters) than the initial capacity.
+        int distinct = 100000;
+        AgentCounter counter = new AgentCounter();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < distinct; i++) {
+                counter.add("Mozilla/5.0 (Agent number " + i + ") Something/1.0", i);
+            }
+        }
+
+        assertEquals(distinct, counter.size());
+        for (int i = 0; i < distinct; i++) {
+            assertEquals("Mozilla/5.0 (Agent number " + i + ") Something/1.0", counter.getAgent(i));
+            assertEquals(2L * i, counter.getHits(i));
+        }
+    }
+
+    @Test
+    public void testLongAgent() {
+        StringBuilder longAgent = new StringBuilder();
+        while (longAgent.length() < 3 * 1024 * 1024) {
+            longAgent.append("Long useragent ");
+        }
+        AgentCounter counter = new AgentCounter();
+        counter.add("Short", 1);
+        counter.add(longAgent.toString(), 1);
+        counter.add(longAgent.toString(), 1);
+        counter.add("Short", 1);
+
+        assertEquals(2, counter.size());
+        assertEquals("Short",              counter.getAgent(0));
+        assertEquals(longAgent.toString(), counter.getAgent(1));
+        assertEquals(2,                    counter.getHits(1));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import nl.basjes.parse.useragent.commandline.ColumnarReader.RowGroup;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestColumnar {
+
+    private static final List<String> COLUMNS = Arrays.asList("Name", "Empty ", "Ünïcödé ✓");
+
+    private static byte[] write(List<String> columns, List<String[]> rows, int rowGroupSize) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(output, rowGroupSize);
+        writer.start(columns);
+        for (String[] row : rows) {
+            writer.addRow(row);
+        }
+        writer.close();
+        return output.toByteArray();
+    }
+
+    private static List<String[]> read(byte[] data, List<String> expectedColumns, List<Integer> rowGroupSizes) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(data))) {
+            assertEquals(expectedColumns, reader.getColumnNames());
+            RowGroup rowGroup;
+            while ((rowGroup = reader.nextRowGroup()) != null) {
+                rowGroupSizes.add(rowGroup.getRowCount());
+                for (int row = 0; row < rowGroup.getRowCount(); row++) {
+                    String[] values = new String[expectedColumns.size()];
+                    for (int column = 0; column < values.length; column++) {
+                        values[column] = rowGroup.getValue(column, row);
+                        assertEquals(values[column],
+                            rowGroup.getDictionary(column).get(rowGroup.getIndex(column, row)));
+                    }
+                    rows.add(values);
+                }
+            }
+            // Reading past the end stays at the end
+            assertNull(reader.nextRowGroup());
+        }
+        return rows;
+    }
+
+    private static void assertRowsEqual(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertArrayEquals(expected.get(row), actual.get(row), "Row " + row);
+        }
+    }
+
+    @Test
+    public void testRoundTripSpecialValues() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{"Normal",          "",     null});
+        rows.add(new String[]{null,              null,   ""});
+        rows.add(new String[]{"",                "",     "Ünïcödé ✓ 日本語"});
+        rows.add(new String[]{"Emoji 😀", null, "Ünïcödé ✓ 日本語"});
+        rows.add(new String[]{"Tab\tNewline\n",  "\u0000", "Normal"});
+        rows.add(new String[]{"Normal",          "",     null});
+
+        List<Integer> rowGroupSizes = new ArrayList<>();
+        assertRowsEqual(rows, read(write(COLUMNS, rows, 1000), COLUMNS, rowGroupSizes));
+        assertEquals(Arrays.asList(6), rowGroupSizes);
+    }
+
+    @Test
+    public void testNoRows() throws IOException {
+        List<Integer> rowGroupSizes = new ArrayList<>();
+        assertTrue(read(write(COLUMNS, new ArrayList<>(), 10), COLUMNS, rowGroupSizes).isEmpty());
+        assertTrue(rowGroupSizes.isEmpty());
+    }
+
+    @Test
+    public void testRowGroups() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            rows.add(new String[]{"Row " + i, i % 3 == 0 ? null : "", "Wert " + (i % 4) + " ä"});
+        }
+        List<Integer> rowGroupSizes = new ArrayList<>();
+        assertRowsEqual(rows, read(write(COLUMNS, rows, 10), COLUMNS, rowGroupSizes));
+        assertEquals(Arrays.asList(10, 10, 5), rowGroupSizes);
+
+        // Exactly filling the last row group must not produce an empty row group.
+        rowGroupSizes.clear();
+        assertRowsEqual(rows.subList(0, 20), read(write(COLUMNS, rows.subList(0, 20), 10), COLUMNS, rowGroupSizes));
+        assertEquals(Arrays.asList(10, 10), rowGroupSizes);
+    }
+
+    @Test
+    public void testIndexWidths() throws IOException {
+        // The number of distinct values determines if the indexes are written as 1, 2 or 4 bytes.
+        List<String>   columns = Arrays.asList("Width1", "Width2", "Width4");
+        List<String[]> rows    = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            rows.add(new String[]{
+                i % 256 == 255 ? null : "V" + (i % 256),
+                "€" + (i % 65536),
+                i == 12345 ? null : "Distinct " + i,
+            });
+        }
+        List<Integer> rowGroupSizes = new ArrayList<>();
+        assertRowsEqual(rows, read(write(columns, rows, 70000), columns, rowGroupSizes));
+        assertEquals(Arrays.asList(70000), rowGroupSizes);
+    }
+
+    @Test
+    public void testVarInt() throws IOException {
+        int[] values = {0, 1, 127, 128, 255, 16383, 16384, 65536, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(output);
+        for (int value : values) {
+            ColumnarWriter.writeVarInt(out, value);
+        }
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        for (int value : values) {
+            assertEquals(value, ColumnarReader.readVarInt(in));
+        }
+    }
+
+    @Test
+    public void testNotColumnar() {
+        assertThrows(IOException.class,
+            () -> new ColumnarReader(new ByteArrayInputStream("Not a columnar file".getBytes(UTF_8))));
+    }
+}
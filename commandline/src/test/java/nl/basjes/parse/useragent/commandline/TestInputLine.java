@@ -0,0 +1,88 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestInputLine {
+
+    // Both ways of loading a line must give the same result.
+    private static void check(String line, long expectedHits, String expectedAgent) {
+        InputLine inputLine = new InputLine();
+        assertTrue(inputLine.set(line), line);
+        assertEquals(expectedHits, inputLine.getHits(), line);
+        assertEquals(expectedAgent, inputLine.getAgent(), line);
+
+        // The line somewhere in the middle of a buffer
+        char[] chars = ("xx\n" + line + "\nyy").toCharArray();
+        assertTrue(inputLine.set(chars, CharBuffer.wrap(chars), 3, 3 + line.length()), line);
+        assertEquals(expectedHits, inputLine.getHits(), line);
+        assertEquals(expectedAgent, inputLine.getAgent(), line);
+    }
+
+    @Test
+    public void testIgnoredLines() {
+        InputLine inputLine = new InputLine();
+        assertFalse(inputLine.set(""));
+        assertFalse(inputLine.set(" Starts with a space"));
+        assertFalse(inputLine.set("# A comment"));
+    }
+
+    @Test
+    public void testHits() {
+        check("Agent",                               1,              "Agent");
+        check("Agent with\tTab",                     1,              "Agent with\tTab");
+        check("5\tAgent",                            5,              "Agent");
+        check("0\tAgent",                            0,              "Agent");
+        check("+7\tAgent",                           7,              "Agent");
+        check("-3\tAgent",                           -3,             "Agent");
+        check("12\tAgent\twith tab",                 12,             "Agent\twith tab");
+        check("42\t",                                42,             "");
+        check("9223372036854775807\tAgent",          Long.MAX_VALUE, "Agent");
+        check("-9223372036854775808\tAgent",         Long.MIN_VALUE, "Agent");
+    }
+
+    @Test
+    public void testMalformedHits() {
+        // If the hits are not a valid number the entire line is the useragent.
+        check("\tAgent",                             1, "\tAgent");
+        check("+\tAgent",                            1, "+\tAgent");
+        check("-\tAgent",                            1, "-\tAgent");
+        check("12a\tAgent",                          1, "12a\tAgent");
+        check("1 2\tAgent",                          1, "1 2\tAgent");
+        check("1.5\tAgent",                          1, "1.5\tAgent");
+        check("9223372036854775808\tAgent",          1, "9223372036854775808\tAgent");
+        check("-9223372036854775809\tAgent",         1, "-9223372036854775809\tAgent");
+        check("99999999999999999999999\tAgent",      1, "99999999999999999999999\tAgent");
+    }
+
+    @Test
+    public void testRange() {
+        InputLine inputLine = new InputLine();
+        char[] chars = "123\tAgent".toCharArray();
+        assertTrue(inputLine.setRange(CharBuffer.wrap(chars), 0, chars.length));
+        assertEquals(123, inputLine.getHits());
+        assertEquals(4, inputLine.getAgentStart());
+    }
+}
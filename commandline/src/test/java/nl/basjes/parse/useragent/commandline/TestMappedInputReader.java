@@ -0,0 +1,142 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.useragent.commandline.MappedInputReader.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestMappedInputReader {
+
+    private static final class ReadResult {
+        final List<String> lines  = new ArrayList<>();
+        final List<Long>   hits   = new ArrayList<>();
+        int                chunks = 0;
+        boolean            unterminatedChunk = false;
+    }
+
+    private static ReadResult read(Path file) throws IOException, InterruptedException {
+        ReadResult                     result       = new ReadResult();
+        MappedInputReader.ChunkDecoder chunkDecoder = new MappedInputReader.ChunkDecoder();
+        InputLine                      inputLine    = new InputLine();
+        new MappedInputReader(file.toString()).read(chunk -> {
+            result.chunks++;
+            assertTrue(chunk.remaining() > 0);
+            // Only the last chunk may end without a newline.
+            assertFalse(result.unterminatedChunk, "Chunk after one that did not end with a newline");
+            result.unterminatedChunk = chunk.get(chunk.limit() - 1) != '\n';
+            chunkDecoder.decode(chunk, (chars, wrapped, start, end) -> {
+                if (inputLine.set(chars, wrapped, start, end)) {
+                    result.lines.add(inputLine.getAgent());
+                    result.hits.add(inputLine.getHits());
+                }
+            });
+        });
+        return result;
+    }
+
+    private static List<String> createLines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Lines of varying length with non ASCII characters so the line ends are at many different offsets.
+            StringBuilder line = new StringBuilder("Agent ").append(i).append(" é€ ");
+            for (int j = 0; j < i % 97; j++) {
+                line.append((char) ('a' + j % 26));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static Path write(Path directory, List<String> lines, String lineEnd, boolean finalLineEnd) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            content.append(lines.get(i));
+            if (i < lines.size() - 1 || finalLineEnd) {
+                content.append(lineEnd);
+            }
+        }
+        Path file = directory.resolve("input.txt");
+        Files.write(file, content.toString().getBytes(UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testLinesCrossingChunkBoundaries(@TempDir Path directory) throws Exception {
+        List<String> lines = createLines(50000);
+        Path         file  = write(directory, lines, "\n", true);
+        assertTrue(Files.size(file) > 3L * CHUNK_SIZE, "The input must span several chunks");
+
+        ReadResult result = read(file);
+        assertTrue(result.chunks > 3);
+        assertEquals(lines, result.lines);
+    }
+
+    @Test
+    public void testCRLF(@TempDir Path directory) throws Exception {
+        List<String> lines = createLines(50000);
+        ReadResult   result = read(write(directory, lines, "\r\n", true));
+        assertTrue(result.chunks > 3);
+        assertEquals(lines, result.lines);
+    }
+
+    @Test
+    public void testFinalLineWithoutNewline(@TempDir Path directory) throws Exception {
+        List<String> lines = createLines(50000);
+        assertEquals(lines, read(write(directory, lines, "\n", false)).lines);
+        assertEquals(lines, read(write(directory, lines, "\r\n", false)).lines);
+    }
+
+    @Test
+    public void testLineLongerThanAChunk(@TempDir Path directory) throws Exception {
+        List<String> lines = createLines(10);
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 2 * CHUNK_SIZE) {
+            longLine.append("Long useragent ");
+        }
+        lines.add(5, longLine.toString());
+        assertEquals(lines, read(write(directory, lines, "\n", true)).lines);
+    }
+
+    @Test
+    public void testHits(@TempDir Path directory) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("5\tAgent one");
+        lines.add("Agent two");
+        lines.add("99999999999999999999\tAgent three");
+        ReadResult result = read(write(directory, lines, "\r\n", false));
+        assertEquals(3, result.lines.size());
+        assertEquals("Agent one",                         result.lines.get(0));
+        assertEquals(5L,                                  (long) result.hits.get(0));
+        assertEquals("Agent two",                         result.lines.get(1));
+        assertEquals(1L,                                  (long) result.hits.get(1));
+        assertEquals("99999999999999999999\tAgent three", result.lines.get(2));
+        assertEquals(1L,                                  (long) result.hits.get(2));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import nl.basjes.parse.useragent.AbstractUserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import static nl.basjes.parse.useragent.commandline.Main.OutputFormat.CSV;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class TestParallelAnalyzer {
+
+    private static final String DESKTOP =
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+
+    private static ResultWriter resultWriter(StringWriter output) {
+        return new ResultWriter(new PrintWriter(output), CSV, Collections.singletonList("AgentName"), false);
+    }
+
+    private static BufferedReader input(int lines) {
+        StringBuilder input = new StringBuilder();
+        for (int line = 0; line < lines; line++) {
+            input.append(DESKTOP).append('\n');
+        }
+        return new BufferedReader(new StringReader(input.toString()));
+    }
+
+    @Test
+    public void testAtLeastOneThread() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ParallelAnalyzer(0, () -> null, resultWriter(new StringWriter())));
+    }
+
+    @Test
+    public void testFailingAnalyzerCreationStopsThePipeline() {
+        Supplier<AbstractUserAgentAnalyzer> failingSupplier = () -> {
+            throw new IllegalStateException("Unable to create the analyzer");
+        };
+        ParallelAnalyzer parallelAnalyzer = new ParallelAnalyzer(2, failingSupplier, resultWriter(new StringWriter()));
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            IllegalStateException exception =
+                assertThrows(IllegalStateException.class, () -> parallelAnalyzer.run(input(10 * ParallelAnalyzer.BATCH_SIZE)));
+            assertEquals("Unable to create the analyzer", exception.getCause().getMessage());
+        });
+    }
+
+    @Test
+    public void testAllLinesInOrder() throws Exception {
+        UserAgentAnalyzer uaa = UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .withField("AgentName")
+            .build();
+        StringWriter output = new StringWriter();
+        ResultWriter writer = resultWriter(output);
+        writer.writeHeader();
+        int lines = 3 * ParallelAnalyzer.BATCH_SIZE + 7;
+        new ParallelAnalyzer(3, () -> uaa, writer).run(input(lines));
+        writer.close();
+
+        String[] outputLines = output.toString().split("\n");
+        assertEquals(lines + 1, outputLines.length);
+        assertEquals("AgentName", outputLines[0]);
+        for (int line = 1; line <= lines; line++) {
+            assertEquals("Chrome", outputLines[line]);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.commandline;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgent.MutableUserAgent;
+import nl.basjes.parse.useragent.commandline.Main.OutputFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static nl.basjes.parse.useragent.UserAgent.AGENT_NAME;
+import static nl.basjes.parse.useragent.UserAgent.DEVICE_CLASS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestResultWriter {
+
+    private static final List<String> FIELDS = Arrays.asList(DEVICE_CLASS, AGENT_NAME);
+
+    private static UserAgent agent(String deviceClass, String agentName) {
+        MutableUserAgent userAgent = new MutableUserAgent("Dummy") {
+            @Override
+            public String getValue(String fieldName) {
+                // Simulate fields that have no value at all.
+                if (AGENT_NAME.equals(fieldName)) {
+                    return agentName;
+                }
+                return super.getValue(fieldName);
+            }
+        };
+        userAgent.set(DEVICE_CLASS, deviceClass, 1);
+        return userAgent;
+    }
+
+    private static String aggregate(OutputFormat outputFormat) {
+        StringWriter output = new StringWriter();
+        ResultWriter writer = new ResultWriter(new PrintWriter(output), outputFormat, FIELDS, false)
+            .aggregateBy(FIELDS);
+        writer.writeHeader();
+        writer.write("One",   5, agent("Phone", "Chrome"));
+        writer.write("Two",   2, agent("Phone", null));
+        writer.write("Three", 3, agent("Phone", "Chrome"));
+        writer.write("Four",  1, agent("Desktop", "Quote\"Name"));
+        writer.close();
+        return output.toString().replace("\r\n", "\n");
+    }
+
+    @Test
+    public void testAggregateJson() {
+        assertEquals(
+            "{\"DeviceClass\":\"Phone\",\"AgentName\":\"Chrome\",\"Hits\":8}\n" +
+            "{\"DeviceClass\":\"Phone\",\"AgentName\":null,\"Hits\":2}\n" +
+            "{\"DeviceClass\":\"Desktop\",\"AgentName\":\"Quote\\\"Name\",\"Hits\":1}\n",
+            aggregate(OutputFormat.JSON));
+    }
+
+    @Test
+    public void testAggregateCsv() {
+        assertEquals(
+            "DeviceClass\tAgentName\tHits\n" +
+            "Phone\tChrome\t8\n" +
+            "Phone\t\t2\n" +
+            "Desktop\tQuote\"Name\t1\n",
+            aggregate(OutputFormat.CSV));
+    }
+
+    @Test
+    public void testCsvWithHits() {
+        StringWriter output = new StringWriter();
+        ResultWriter writer = new ResultWriter(new PrintWriter(output), OutputFormat.CSV, FIELDS, false)
+            .withHits();
+        writer.writeHeader();
+        writer.write("One", 5, agent("Phone", "Chrome"));
+        writer.write("Two", 2, agent("Tablet", null));
+        writer.close();
+        assertEquals(
+            "Hits\tDeviceClass\tAgentName\n" +
+            "5\tPhone\tChrome\n" +
+            "2\tTablet\t\n",
+            output.toString().replace("\r\n", "\n"));
+    }
+}
@@ -17,25 +17,66 @@
 
 package nl.basjes.parse.useragent.beam;
 
+import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
 
 public class ParseUserAgent implements SerializableFunction<String, Map<String, String>> {
-    private UserAgentAnalyzer userAgentAnalyzer = null;
 
-    private int cacheSize;
+    // All instances in the same JVM that need the same fields share the same analyzer.
+    private static final Map<String, UserAgentAnalyzer> ANALYZERS = new ConcurrentHashMap<>();
+
+    private transient UserAgentAnalyzer userAgentAnalyzer = null;
+
+    private final int          cacheSize;
+    private final List<String> fieldNames;
 
     public ParseUserAgent() {
-        this.cacheSize = DEFAULT_PARSE_CACHE_SIZE;
+        this(DEFAULT_PARSE_CACHE_SIZE);
     }
 
     public ParseUserAgent(int cacheSize) {
-        this.cacheSize = cacheSize;
+        this(cacheSize, Collections.emptyList());
+    }
+
+    /**
+     * Only the provided fields are determined and returned.
+     * @param fieldNames The names of the wanted fields (all fields if empty)
+     */
+    public ParseUserAgent(String... fieldNames) {
+        this(DEFAULT_PARSE_CACHE_SIZE, Arrays.asList(fieldNames));
+    }
+
+    /**
+     * Only the provided fields are determined and returned.
+     * @param cacheSize The size of the parse cache
+     * @param fieldNames The names of the wanted fields (all fields if empty)
+     */
+    public ParseUserAgent(int cacheSize, List<String> fieldNames) {
+        this.cacheSize  = cacheSize;
+        this.fieldNames = new ArrayList<>(fieldNames);
+    }
+
+    static UserAgentAnalyzer getAnalyzer(List<String> fieldNames, int cacheSize) {
+        String key = new TreeSet<>(fieldNames).toString() + '|' + cacheSize;
+        return ANALYZERS.computeIfAbsent(key, k -> UserAgentAnalyzer
+            .newBuilder()
+            .immediateInitialization()
+            .hideMatcherLoadStats()
+            .dropTests()
+            .withCache(cacheSize)
+            .withFields(fieldNames) // No fields means all fields
+            .build());
     }
 
     // FIXME: This DOES NOT work at the time of writing.
@@ -45,15 +86,14 @@ public class ParseUserAgent implements SerializableFunction<String, Map<String,
     @Override
     public Map<String, String> apply(String input) {
         if (userAgentAnalyzer == null) {
-            userAgentAnalyzer = UserAgentAnalyzer
-                .newBuilder()
-                .immediateInitialization()
-                .hideMatcherLoadStats()
-                .withCache(cacheSize)
-//                .withFields() // TODO: Implement this later
-                .build();
+            userAgentAnalyzer = getAnalyzer(fieldNames, cacheSize);
         }
 
-        return userAgentAnalyzer.parse(input).toMap();
+        UserAgent userAgent = userAgentAnalyzer.parse(input);
+        if (fieldNames.isEmpty()) {
+            return userAgent.toMap();
+        }
+        // Only the requested fields end up in the map.
+        return userAgent.toMap(fieldNames);
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.beam;
+
+import org.apache.beam.sdk.extensions.sql.BeamSqlUdf;
+
+import java.util.Collections;
+import java.util.List;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+
+/**
+ * Beam SQL UDF for retrieving a single field from the UserAgent string.
+ * All fields used in a query (and all ParseUserAgent() usages without a field
+ * selection) share the same all fields analyzer in the JVM.
+ * If only a few fields are needed use
+ * <code>.registerUdf("ParseUserAgent", new ParseUserAgent("DeviceClass", "AgentNameVersion"))</code>
+ * instead.
+ * <pre>
+ *  SELECT ParseUserAgentField(userAgent, 'DeviceClass') AS deviceClass FROM InputStream
+ * </pre>
+ * Register it using <code>.registerUdf("ParseUserAgentField", ParseUserAgentField.class)</code>
+ */
+public class ParseUserAgentField implements BeamSqlUdf {
+
+    // A BeamSqlUdf cannot see which other fields the query needs, so a per field analyzer
+    // would mean an analyzer (and cache) for every distinct field in the query.
+    private static final List<String> ALL_FIELDS = Collections.emptyList();
+
+    public static String eval(String userAgent, String fieldName) {
+        if (userAgent == null || fieldName == null) {
+            return null;
+        }
+        return ParseUserAgent
+            .getAnalyzer(ALL_FIELDS, DEFAULT_PARSE_CACHE_SIZE)
+            .parse(userAgent)
+            .getValue(fieldName);
+    }
+}
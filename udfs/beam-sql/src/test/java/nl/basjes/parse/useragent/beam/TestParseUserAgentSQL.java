@@ -23,14 +23,17 @@ import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.extensions.sql.SqlTransform;
 import org.apache.beam.sdk.schemas.Schema;
 import org.apache.beam.sdk.testing.NeedsRunner;
+import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.testing.ValidatesRunner;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.Row;
+import org.apache.beam.sdk.values.TypeDescriptors;
 import org.checkerframework.checker.initialization.qual.Initialized;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.UnknownKeyFor;
@@ -41,8 +44,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 @Category(ValidatesRunner.class)
 public class TestParseUserAgentSQL implements Serializable {
@@ -147,6 +158,89 @@ public class TestParseUserAgentSQL implements Serializable {
 
     }
 
+    @Test
+    @Category(NeedsRunner.class)
+    public void testUserAgentFieldSQL() {
+        Schema inputSchema = Schema
+            .builder()
+            .addStringField("userAgent")
+            .build();
+
+        PCollection<Row> input = pipeline
+            .apply(Create.of(
+                Row.withSchema(inputSchema).addValue(
+                    "Mozilla/5.0 (X11; Linux x86_64) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/48.0.2564.82 Safari/537.36").build(),
+                Row.withSchema(inputSchema).addValue(
+                    "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/53.0.2785.124 Mobile Safari/537.36").build()))
+            .setCoder(RowCoder.of(inputSchema));
+
+        String sql =
+            "SELECT" +
+                "  ParseUserAgentField(userAgent, 'DeviceClass')      AS deviceClass " +
+                ", ParseUserAgentField(userAgent, 'AgentNameVersion') AS agentNameVersion " +
+                "FROM InputStream";
+
+        PCollection<String> result =
+            PCollectionTuple.of("InputStream", input)
+                .apply("Execute SQL", SqlTransform
+                    .query(sql)
+                    .registerUdf("ParseUserAgentField", ParseUserAgentField.class)
+                )
+                .apply(MapElements
+                    .into(TypeDescriptors.strings())
+                    .via(row -> row.getString("deviceClass") + " | " + row.getString("agentNameVersion")));
+
+        PAssert.that(result)
+            .containsInAnyOrder(
+                "Desktop | Chrome 48.0.2564.82",
+                "Phone | Chrome 53.0.2785.124");
+
+        pipeline.run().waitUntilFinish();
+    }
+
+    @Test
+    public void testSelectedFields() {
+        ParseUserAgent parseUserAgent = new ParseUserAgent("DeviceClass", "AgentNameVersion");
+        Map<String, String> result = parseUserAgent.apply(
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36");
+
+        assertEquals(2, result.size());
+        assertEquals("Phone",                result.get("DeviceClass"));
+        assertEquals("Chrome 53.0.2785.124", result.get("AgentNameVersion"));
+
+        // The same fields (in any order) share the same analyzer
+        assertSame(
+            ParseUserAgent.getAnalyzer(Arrays.asList("DeviceClass", "AgentNameVersion"), 100),
+            ParseUserAgent.getAnalyzer(Arrays.asList("AgentNameVersion", "DeviceClass"), 100));
+    }
+
+    @Test
+    public void testFieldEval() {
+        String userAgent =
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        assertEquals("Phone",                ParseUserAgentField.eval(userAgent, "DeviceClass"));
+        assertEquals("Chrome 53.0.2785.124", ParseUserAgentField.eval(userAgent, "AgentNameVersion"));
+        assertNull(ParseUserAgentField.eval(null, "DeviceClass"));
+        assertNull(ParseUserAgentField.eval(userAgent, null));
+
+        // All fields share the all fields analyzer which is also used by ParseUserAgent()
+        assertSame(
+            ParseUserAgent.getAnalyzer(Collections.emptyList(), DEFAULT_PARSE_CACHE_SIZE),
+            ParseUserAgent.getAnalyzer(new ArrayList<>(), DEFAULT_PARSE_CACHE_SIZE));
+        assertEquals(
+            new ParseUserAgent().apply(userAgent).get("OperatingSystemNameVersion"),
+            ParseUserAgentField.eval(userAgent, "OperatingSystemNameVersion"));
+    }
+
     public static class RowPrinter extends DoFn<Row, Row> {
         @DoFn.ProcessElement
         public void processElement(ProcessContext c) {
@@ -0,0 +1,72 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.beam;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A worker JVM runs many instances of the same DoFn (one per thread).
+ * Instead of each instance creating its own analyzer they share a {@link UserAgentAnalyzerPool}
+ * for the same set of fields.
+ * The size of this pool can be set with the system property {@value #POOL_SIZE_PROPERTY}.
+ */
+final class SharedUserAgentAnalyzers {
+
+    static final String POOL_SIZE_PROPERTY = "yauaa.beam.analyzers";
+
+    private static final Map<String, UserAgentAnalyzerPool> POOLS = new ConcurrentHashMap<>();
+
+    private SharedUserAgentAnalyzers() {
+    }
+
+    static int getPoolSize() {
+        return UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY);
+    }
+
+    private static UserAgentAnalyzer build(List<String> fieldNames, int cacheSize) {
+        return UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(cacheSize)
+            .withFields(fieldNames)
+            .dropTests()
+            .immediateInitialization()
+            .build();
+    }
+
+    /**
+     * @param fieldNames The wanted fields
+     * @param cacheSize The cache size of the analyzer
+     * @return One of the analyzers (round robin) that provide the requested fields.
+     */
+    static UserAgentAnalyzer get(Collection<String> fieldNames, int cacheSize) {
+        List<String> sortedFieldNames = new ArrayList<>(new TreeSet<>(fieldNames));
+        String key = sortedFieldNames.toString() + '|' + cacheSize;
+        return POOLS
+            .computeIfAbsent(key, k -> new UserAgentAnalyzerPool(getPoolSize(), () -> build(sortedFieldNames, cacheSize)))
+            .get();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.beam;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.annotate.UserAgentAnnotationAnalyzer;
+import nl.basjes.parse.useragent.annotate.UserAgentAnnotationMapper;
+import org.apache.beam.sdk.transforms.DoFn;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+
+/**
+ * A variant of the {@link UserAgentAnalysisDoFn} that does not clone the input.
+ * The output is a new instance (which may be of a different type than the input)
+ * that is created by {@link #createOutput(Object)} and then receives the requested fields.
+ * Within a bundle each distinct useragent is only analyzed once.
+ * @param <I> The type of the input
+ * @param <O> The type of the output (which has the annotated setters)
+ */
+public abstract class UserAgentAnalysisBundleDoFn<I, O> extends DoFn<I, O>
+    implements UserAgentAnnotationMapper<O>, Serializable {
+
+    // Limit the memory used for the results within a single bundle
+    private static final int MAX_BUNDLE_RESULTS = 10000;
+
+    private transient UserAgentAnnotationAnalyzer<O> annotationAnalyzer = null;
+    private transient UserAgentAnalyzer              userAgentAnalyzer  = null;
+    private transient Map<String, UserAgent>         bundleResults      = null;
+
+    private final int cacheSize;
+
+    public UserAgentAnalysisBundleDoFn() {
+        this.cacheSize = DEFAULT_PARSE_CACHE_SIZE;
+    }
+
+    public UserAgentAnalysisBundleDoFn(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    @SuppressWarnings("unused") // Called via the annotation
+    @Setup
+    public void initialize() {
+        annotationAnalyzer = new UserAgentAnnotationAnalyzer<>();
+        annotationAnalyzer.initialize(this, fieldNames -> {
+            userAgentAnalyzer = SharedUserAgentAnalyzers.get(fieldNames, cacheSize);
+            return userAgentAnalyzer;
+        });
+        bundleResults = new HashMap<>();
+    }
+
+    @SuppressWarnings("unused") // Called via the annotation
+    @StartBundle
+    public void startBundle() {
+        bundleResults.clear();
+    }
+
+    @SuppressWarnings("unused") // Called via the annotation
+    @ProcessElement
+    public void processElement(@Element I input, OutputReceiver<O> receiver) {
+        O output = createOutput(input);
+        if (output == null) {
+            return;
+        }
+
+        String    userAgentString = getUserAgentString(output);
+        UserAgent userAgent       = bundleResults.get(userAgentString);
+        if (userAgent == null) {
+            userAgent = userAgentAnalyzer.parse(userAgentString);
+            if (bundleResults.size() >= MAX_BUNDLE_RESULTS) {
+                bundleResults.clear();
+            }
+            bundleResults.put(userAgentString, userAgent);
+        }
+        receiver.output(annotationAnalyzer.map(output, userAgent));
+    }
+
+    @SuppressWarnings("unused") // Called via the annotation
+    @FinishBundle
+    public void finishBundle() {
+        bundleResults.clear();
+    }
+
+    /**
+     * Create the output instance for the provided input.
+     * This must be a new instance (Beam does not allow changing the input) that contains the useragent
+     * and will receive the values of the requested fields.
+     * @param input The original input value
+     * @return The new output value (or null to output nothing)
+     */
+    public abstract O createOutput(I input);
+
+}
@@ -44,8 +44,8 @@ public abstract class UserAgentAnalysisDoFn<T extends Serializable> extends DoFn
     @Setup
     public void initialize() {
         userAgentAnalyzer = new UserAgentAnnotationAnalyzer<>();
-        userAgentAnalyzer.setCacheSize(cacheSize);
-        userAgentAnalyzer.initialize(this);
+        // All instances in this JVM that need the same fields share the same analyzer.
+        userAgentAnalyzer.initialize(this, fieldNames -> SharedUserAgentAnalyzers.get(fieldNames, cacheSize));
     }
 
     @SuppressWarnings("unused") // Called via the annotation
@@ -62,6 +62,7 @@ public abstract class UserAgentAnalysisDoFn<T extends Serializable> extends DoFn
      * This default implementation uses a mindless brute force cloning via serialization.
      * If for your class you can do better; please override this method.
      * For AVRO you can do something like MyRecord.newBuilder(instance).build();
+     * See also {@link UserAgentAnalysisBundleDoFn} which creates a new output instead of cloning.
      * @param t The original input value
      * @return A deep copied copy of t
      */
@@ -0,0 +1,73 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.beam;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static nl.basjes.parse.useragent.beam.SharedUserAgentAnalyzers.POOL_SIZE_PROPERTY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TestSharedUserAgentAnalyzers {
+
+    @Test
+    public void testRoundRobinPool() {
+        String oldPoolSize = System.getProperty(POOL_SIZE_PROPERTY);
+        System.setProperty(POOL_SIZE_PROPERTY, "2");
+        try {
+            assertEquals(2, SharedUserAgentAnalyzers.getPoolSize());
+
+            // A set of fields (and cache size) that is not used by any of the other tests.
+            UserAgentAnalyzer[] analyzers = new UserAgentAnalyzer[6];
+            for (int i = 0; i < analyzers.length; i++) {
+                // The order of the fields does not matter
+                analyzers[i] = SharedUserAgentAnalyzers.get(
+                    i % 2 == 0 ? Arrays.asList("AgentName", "DeviceBrand") : Arrays.asList("DeviceBrand", "AgentName"),
+                    1234);
+            }
+
+            Map<UserAgentAnalyzer, Integer> usage = new IdentityHashMap<>();
+            for (UserAgentAnalyzer analyzer : analyzers) {
+                usage.merge(analyzer, 1, Integer::sum);
+            }
+            // The instances are spread evenly over the 2 analyzers in the pool
+            assertEquals(2, usage.size());
+            usage.values().forEach(count -> assertEquals(3, count));
+            assertNotSame(analyzers[0], analyzers[1]);
+            assertSame(analyzers[0], analyzers[2]);
+            assertSame(analyzers[1], analyzers[3]);
+
+            // A different set of fields uses different analyzers
+            UserAgentAnalyzer other = SharedUserAgentAnalyzers.get(Collections.singletonList("DeviceBrand"), 1234);
+            assertEquals(0, usage.getOrDefault(other, 0));
+        } finally {
+            if (oldPoolSize == null) {
+                System.clearProperty(POOL_SIZE_PROPERTY);
+            } else {
+                System.setProperty(POOL_SIZE_PROPERTY, oldPoolSize);
+            }
+        }
+    }
+}
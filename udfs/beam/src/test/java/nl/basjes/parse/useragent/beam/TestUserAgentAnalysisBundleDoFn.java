@@ -0,0 +1,113 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.beam;
+
+import nl.basjes.parse.useragent.annotate.YauaaField;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class TestUserAgentAnalysisBundleDoFn implements Serializable {
+
+    // The input is a plain String, the output is a new TestRecord.
+    public static class MyUserAgentAnalysisBundleDoFn extends UserAgentAnalysisBundleDoFn<String, TestRecord> {
+        @Override
+        public TestRecord createOutput(String input) {
+            return new TestRecord(input);
+        }
+
+        @Override
+        public String getUserAgentString(TestRecord record) {
+            return record.useragent;
+        }
+
+        @SuppressWarnings("unused") // Called via the annotation
+        @YauaaField("DeviceClass")
+        public void setDeviceClass(TestRecord record, String value) {
+            record.deviceClass = value;
+        }
+
+        @SuppressWarnings("unused") // Called via the annotation
+        @YauaaField("AgentNameVersion")
+        public void setAgentNameVersion(TestRecord record, String value) {
+            record.agentNameVersion = value;
+        }
+    }
+
+    @Rule
+    public final transient TestPipeline pipeline = TestPipeline.create();
+
+    @Test
+    public void testBundleDoFn() {
+        String desktop =
+            "Mozilla/5.0 (X11; Linux x86_64) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36";
+        String phone =
+            "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        List<String> useragents = Arrays.asList(desktop, phone, desktop, desktop, phone);
+
+        PCollection<String> input = pipeline.apply(Create.of(useragents)).setCoder(StringUtf8Coder.of());
+
+        PCollection<TestRecord> testRecords = input
+            .apply("Extract Elements from Useragent",
+                ParDo.of(new MyUserAgentAnalysisBundleDoFn()));
+
+        TestRecord expectedDesktop = new TestRecord(desktop);
+        expectedDesktop.deviceClass = "Desktop";
+        expectedDesktop.agentNameVersion = "Chrome 48.0.2564.82";
+
+        TestRecord expectedPhone = new TestRecord(phone);
+        expectedPhone.deviceClass = "Phone";
+        expectedPhone.agentNameVersion = "Chrome 53.0.2785.124";
+
+        PAssert.that(testRecords).containsInAnyOrder(
+            expectedDesktop, expectedPhone, expectedDesktop, expectedDesktop, expectedPhone);
+
+        pipeline.run().waitUntilFinish();
+    }
+
+    @Test
+    public void testSharedAnalyzers() {
+        assertSame(
+            SharedUserAgentAnalyzers.get(Arrays.asList("DeviceClass", "AgentNameVersion"), 100),
+            SharedUserAgentAnalyzers.get(Arrays.asList("AgentNameVersion", "DeviceClass"), 100));
+        assertNotSame(
+            SharedUserAgentAnalyzers.get(Arrays.asList("DeviceClass", "AgentNameVersion"), 100),
+            SharedUserAgentAnalyzers.get(Arrays.asList("DeviceClass"), 100));
+    }
+
+}
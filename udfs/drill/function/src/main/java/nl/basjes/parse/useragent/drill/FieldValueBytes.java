@@ -0,0 +1,59 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.drill;
+
+import nl.basjes.parse.useragent.UserAgent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Caches the UTF-8 bytes of the field values.
+ * Most fields have only a few distinct values so this avoids encoding the same value for every row.
+ * An instance is not thread safe (each function instance has its own).
+ */
+public final class FieldValueBytes {
+
+    // Limit the memory used
+    private static final int MAX_CACHED_VALUES = 10000;
+
+    private static final byte[] UNKNOWN_VALUE_BYTES = UserAgent.UNKNOWN_VALUE.getBytes(UTF_8);
+
+    private final Map<String, byte[]> cache = new HashMap<>();
+
+    /**
+     * @param value The value (null is treated as {@value UserAgent#UNKNOWN_VALUE}).
+     * @return The UTF-8 bytes of the value. Do NOT modify these.
+     */
+    public byte[] get(String value) {
+        if (value == null) {
+            return UNKNOWN_VALUE_BYTES;
+        }
+        byte[] bytes = cache.get(value);
+        if (bytes == null) {
+            if (cache.size() >= MAX_CACHED_VALUES) {
+                cache.clear();
+            }
+            bytes = value.getBytes(UTF_8);
+            cache.put(value, bytes);
+        }
+        return bytes;
+    }
+}
@@ -50,9 +50,13 @@ public class ParseUserAgentFunction implements DrillSimpleFunc {
     @Workspace
     java.util.List<String> allFields;
 
+    @Workspace
+    nl.basjes.parse.useragent.drill.FieldValueBytes valueBytes;
+
     public void setup() {
         uaa = nl.basjes.parse.useragent.drill.UserAgentAnalyzerPreLoader.getInstance();
         allFields = uaa.getAllPossibleFieldNamesSorted();
+        valueBytes = new nl.basjes.parse.useragent.drill.FieldValueBytes();
     }
 
     public void eval() {
@@ -70,17 +74,10 @@ public class ParseUserAgentFunction implements DrillSimpleFunc {
 
         nl.basjes.parse.useragent.UserAgent agent = uaa.parse(userAgentString);
 
+        org.apache.drill.exec.expr.holders.VarCharHolder rowHolder = new org.apache.drill.exec.expr.holders.VarCharHolder();
         for (String fieldName: allFields) {
-
-            org.apache.drill.exec.expr.holders.VarCharHolder rowHolder = new org.apache.drill.exec.expr.holders.VarCharHolder();
-            String field = agent.getValue(fieldName);
-
-            if (field == null) {
-                field = nl.basjes.parse.useragent.UserAgent.UNKNOWN_VALUE;
-            }
-
-            byte[] rowStringBytes = field.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-            outBuffer.reallocIfNeeded(rowStringBytes.length);
+            byte[] rowStringBytes = valueBytes.get(agent.getValue(fieldName));
+            outBuffer = outBuffer.reallocIfNeeded(rowStringBytes.length);
             outBuffer.setBytes(0, rowStringBytes);
 
             rowHolder.start = 0;
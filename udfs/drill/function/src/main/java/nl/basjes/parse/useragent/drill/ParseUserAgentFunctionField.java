@@ -53,9 +53,13 @@ public class ParseUserAgentFunctionField implements DrillSimpleFunc {
     @Workspace
     java.util.List<String> allFields;
 
+    @Workspace
+    nl.basjes.parse.useragent.drill.FieldValueBytes valueBytes;
+
     public void setup() {
         uaa = nl.basjes.parse.useragent.drill.UserAgentAnalyzerPreLoader.getInstance();
         allFields = uaa.getAllPossibleFieldNamesSorted();
+        valueBytes = new nl.basjes.parse.useragent.drill.FieldValueBytes();
     }
 
     public void eval() {
@@ -64,14 +68,8 @@ public class ParseUserAgentFunctionField implements DrillSimpleFunc {
 
         nl.basjes.parse.useragent.UserAgent agent = uaa.parse(userAgentString);
 
-        String field = agent.getValue(userAgentField);
-
-        if (field == null) {
-            field = nl.basjes.parse.useragent.UserAgent.UNKNOWN_VALUE;
-        }
-
-        byte[] rowStringBytes = field.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        outBuffer.reallocIfNeeded(rowStringBytes.length);
+        byte[] rowStringBytes = valueBytes.get(agent.getValue(userAgentField));
+        outBuffer = outBuffer.reallocIfNeeded(rowStringBytes.length);
         outBuffer.setBytes(0, rowStringBytes);
 
         value.start = 0;
@@ -18,24 +18,78 @@
 package nl.basjes.parse.useragent.drill;
 
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.UserAgentAnalyzerPool;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Provides the analyzers for all the fragments running in this drillbit.
+ * The fragments share (per set of wanted fields) a {@link UserAgentAnalyzerPool}.
+ * The size of this pool can be set with the system property {@value #POOL_SIZE_PROPERTY}.
+ */
 public final class UserAgentAnalyzerPreLoader {
 
     private UserAgentAnalyzerPreLoader(){}
 
-    private static UserAgentAnalyzer instance = null;
+    public static final String POOL_SIZE_PROPERTY = "yauaa.drill.analyzers";
 
-    public static synchronized UserAgentAnalyzer getInstance() {
-        if (instance == null) {
-            instance = UserAgentAnalyzer
-                .newBuilder()
-                .dropTests()
-                .hideMatcherLoadStats()
-                .immediateInitialization()
-                .build();
+    private static UserAgentAnalyzer build(List<String> fieldNames) {
+        UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+            .newBuilder()
+            .dropTests()
+            .hideMatcherLoadStats()
+            .immediateInitialization();
+        if (!fieldNames.isEmpty()) {
+            builder.withFields(fieldNames);
         }
-        return instance;
+        return builder.build();
+    }
+
+    // The empty list means all fields.
+    private static final ConcurrentMap<List<String>, UserAgentAnalyzerPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * @return An analyzer that provides all possible fields.
+     */
+    public static UserAgentAnalyzer getInstance() {
+        return getInstance(Collections.emptyList());
     }
 
+    /**
+     * @param fieldNames The wanted fields (empty or null for all fields)
+     * @return An analyzer that provides (at least) the requested fields.
+     */
+    public static UserAgentAnalyzer getInstance(Collection<String> fieldNames) {
+        List<String> key = fieldNames == null ? Collections.emptyList() : new ArrayList<>(fieldNames);
+        return POOLS
+            .computeIfAbsent(key, k -> new UserAgentAnalyzerPool(
+                UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY), () -> build(k)))
+            .get();
+    }
+
+    /**
+     * Split a list of field names like "DeviceClass, AgentNameVersion" into the separate field names.
+     * @param fieldNames The comma separated field names
+     * @return The list of field names (duplicates removed, order retained)
+     */
+    public static List<String> parseFieldNames(String fieldNames) {
+        List<String> result = new ArrayList<>();
+        if (fieldNames == null) {
+            return result;
+        }
+        for (String fieldName : fieldNames.split(",")) {
+            String trimmed = fieldName.trim();
+            if (!trimmed.isEmpty() && !result.contains(trimmed)) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
 
 }
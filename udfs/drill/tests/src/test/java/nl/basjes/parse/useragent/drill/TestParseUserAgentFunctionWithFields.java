@@ -0,0 +1,93 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.drill;
+
+import org.apache.drill.exec.expr.DrillSimpleFunc;
+import org.apache.drill.exec.expr.annotations.FunctionTemplate;
+import org.apache.drill.test.ClusterFixture;
+import org.apache.drill.test.ClusterFixtureBuilder;
+import org.apache.drill.test.ClusterTest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestParseUserAgentFunctionWithFields extends ClusterTest {
+
+    private static final String TEST_INPUT =
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        ClusterFixtureBuilder builder = ClusterFixture.builder(dirTestWatcher);
+        startCluster(builder);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void testAnnotation() {
+        Class<? extends DrillSimpleFunc> fnClass = ParseUserAgentFunctionWithFields.class;
+        FunctionTemplate fnDefn = fnClass.getAnnotation(FunctionTemplate.class);
+        assertNotNull(fnDefn);
+        assertEquals("parse_user_agent", fnDefn.name());
+        assertEquals(FunctionTemplate.FunctionScope.SIMPLE, fnDefn.scope());
+        assertEquals(FunctionTemplate.NullHandling.INTERNAL, fnDefn.nulls());
+    }
+
+    @Test
+    public void testParseFieldNames() {
+        assertEquals(Arrays.asList("DeviceClass", "AgentNameVersion"),
+            UserAgentAnalyzerPreLoader.parseFieldNames(" DeviceClass ,AgentNameVersion,,DeviceClass"));
+        assertTrue(UserAgentAnalyzerPreLoader.parseFieldNames("").isEmpty());
+    }
+
+    @Test
+    public void testFieldValueBytes() {
+        FieldValueBytes valueBytes = new FieldValueBytes();
+        byte[] desktop = valueBytes.get("Desktop");
+        assertEquals("Desktop", new String(desktop, StandardCharsets.UTF_8));
+        assertSame(desktop, valueBytes.get(new String("Desktop")));
+        assertEquals("Unknown", new String(valueBytes.get(null), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseUserAgentWithFields() throws Exception {
+        final String query =
+            "SELECT " +
+            "   t1.ua.DeviceClass       AS DeviceClass,\n" +
+            "   t1.ua.AgentNameVersion  AS AgentNameVersion\n" +
+            "FROM (" +
+            "   SELECT" +
+            "       parse_user_agent('" + TEST_INPUT + "', 'DeviceClass, AgentNameVersion') AS ua " +
+            "   FROM (values(1))" +
+            ") AS t1";
+
+        testBuilder().sqlQuery(query).ordered()
+            .baselineColumns("DeviceClass", "AgentNameVersion")
+            .baselineValues("Desktop",      "Chrome 48.0.2564.82")
+            .go();
+    }
+
+}
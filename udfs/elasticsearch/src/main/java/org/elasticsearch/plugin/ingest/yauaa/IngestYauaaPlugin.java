@@ -18,19 +18,49 @@
 package org.elasticsearch.plugin.ingest.yauaa;
 
 import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.ingest.Processor;
 import org.elasticsearch.plugins.IngestPlugin;
 import org.elasticsearch.plugins.Plugin;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class IngestYauaaPlugin extends Plugin implements IngestPlugin {
 
+    /**
+     * The maximum number of analyzers per distinct processor configuration.
+     * The default (0) is the size of the write thread pool which does the ingest.
+     */
+    public static final Setting<Integer> ANALYZERS_SETTING =
+        Setting.intSetting("ingest.yauaa.analyzers", 0, 0, Setting.Property.NodeScope);
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Collections.singletonList(ANALYZERS_SETTING);
+    }
+
     @Override
     public Map<String, Processor.Factory> getProcessors(Processor.Parameters parameters) {
+        int poolSize = Runtime.getRuntime().availableProcessors();
+        if (parameters != null && parameters.env != null) {
+            poolSize = getPoolSize(parameters.env.settings());
+        }
+
         return MapBuilder.<String, Processor.Factory>newMapBuilder()
-            .put(YauaaProcessor.TYPE, new YauaaProcessor.Factory())
+            .put(YauaaProcessor.TYPE, new YauaaProcessor.Factory(new YauaaAnalyzerService(poolSize)))
             .immutableMap();
     }
 
+    static int getPoolSize(Settings settings) {
+        int analyzers = ANALYZERS_SETTING.get(settings);
+        if (analyzers > 0) {
+            return analyzers;
+        }
+        return settings.getAsInt("thread_pool.write.size", EsExecutors.allocatedProcessors(settings));
+    }
+
 }
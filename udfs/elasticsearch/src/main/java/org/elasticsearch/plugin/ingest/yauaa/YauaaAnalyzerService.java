@@ -0,0 +1,295 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsearch.plugin.ingest.yauaa;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * The node level service that shares the analyzers between all yauaa processors.
+ * All processors with the same fieldNames and extraRules use the same {@link SharedAnalyzer}.
+ * Because a single analyzer only parses one useragent at a time a SharedAnalyzer is a pool of
+ * (at most) poolSize analyzers (normally the size of the write thread pool that does the ingest).
+ * Additional analyzers are only created when all existing ones are in use.
+ * <p>
+ * An ingest processor is never closed so the service only holds a weak reference to each SharedAnalyzer:
+ * once the pipelines that use it have been changed or deleted it is garbage collected and its entry is removed.
+ */
+final class YauaaAnalyzerService {
+
+    private final int                                                   poolSize;
+    private final Map<Key, CompletableFuture<SharedAnalyzerReference>>  sharedAnalyzers   = new ConcurrentHashMap<>();
+    private final ReferenceQueue<SharedAnalyzer>                        releasedAnalyzers = new ReferenceQueue<>();
+
+    YauaaAnalyzerService(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Get the shared analyzer for the specified configuration.
+     * The caller must retain the returned SharedAnalyzer for as long as it is used.
+     * @param fieldNames The wanted fields (null or empty means all fields).
+     * @param extraRules The extra rules (may be null).
+     * @param cacheSize  The size of the cache of each analyzer (a negative value means the default).
+     *                   If the analyzer already exists the largest of the requested cache sizes is used.
+     * @param preheat    The number of preheat iterations (a negative value means no preheat).
+     *                   Only done when the analyzer is created.
+     * @return The shared analyzer.
+     */
+    SharedAnalyzer getAnalyzer(List<String> fieldNames, String extraRules, int cacheSize, int preheat) {
+        Key key = new Key(fieldNames, extraRules);
+        while (true) {
+            removeReleasedAnalyzers();
+
+            // A placeholder so building the analyzer (which takes seconds) is not done while holding a lock of the map.
+            CompletableFuture<SharedAnalyzerReference> placeholder = new CompletableFuture<>();
+            CompletableFuture<SharedAnalyzerReference> existing    = sharedAnalyzers.putIfAbsent(key, placeholder);
+
+            if (existing == null) {
+                SharedAnalyzer sharedAnalyzer;
+                try {
+                    sharedAnalyzer = new SharedAnalyzer(poolSize, () -> createBuilder(key, cacheSize, preheat));
+                } catch (RuntimeException e) {
+                    sharedAnalyzers.remove(key, placeholder);
+                    placeholder.completeExceptionally(e);
+                    throw e;
+                }
+                placeholder.complete(new SharedAnalyzerReference(sharedAnalyzer, key, placeholder, releasedAnalyzers));
+                return sharedAnalyzer;
+            }
+
+            SharedAnalyzer sharedAnalyzer;
+            try {
+                sharedAnalyzer = existing.join().get();
+            } catch (CompletionException e) {
+                // Creating it failed in an other thread: try again (which reports the error to this caller).
+                continue;
+            }
+            if (sharedAnalyzer == null) {
+                // Released but not yet removed.
+                sharedAnalyzers.remove(key, existing);
+                continue;
+            }
+            sharedAnalyzer.increaseCacheSize(cacheSize);
+            return sharedAnalyzer;
+        }
+    }
+
+    private void removeReleasedAnalyzers() {
+        SharedAnalyzerReference released;
+        while ((released = (SharedAnalyzerReference) releasedAnalyzers.poll()) != null) {
+            sharedAnalyzers.remove(released.key, released.entry);
+        }
+    }
+
+    int size() {
+        removeReleasedAnalyzers();
+        return sharedAnalyzers.size();
+    }
+
+    private static final class SharedAnalyzerReference extends WeakReference<SharedAnalyzer> {
+        private final Key                                        key;
+        private final CompletableFuture<SharedAnalyzerReference> entry;
+
+        SharedAnalyzerReference(SharedAnalyzer sharedAnalyzer,
+                                Key key,
+                                CompletableFuture<SharedAnalyzerReference> entry,
+                                ReferenceQueue<SharedAnalyzer> queue) {
+            super(sharedAnalyzer, queue);
+            this.key   = key;
+            this.entry = entry;
+        }
+    }
+
+    private static UserAgentAnalyzerBuilder createBuilder(Key key, int cacheSize, int preheat) {
+        UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
+            .newBuilder()
+            .dropTests()
+            .immediateInitialization();
+
+        if (cacheSize >= 0) {
+            builder.withCache(cacheSize);
+        }
+
+        if (preheat >= 0) {
+            builder.preheat(preheat);
+        }
+
+        if (key.extraRules != null) {
+            builder.addYamlRule(key.extraRules);
+        }
+
+        if (!key.fieldNames.isEmpty()) {
+            builder.withFields(key.fieldNames);
+        }
+        return builder;
+    }
+
+    /**
+     * A set of identical analyzers where each parse uses one that is not in use by an other thread.
+     */
+    static final class SharedAnalyzer {
+        private final Supplier<UserAgentAnalyzerBuilder> builderSupplier;
+        private final BlockingQueue<UserAgentAnalyzer>   idleAnalyzers = new LinkedBlockingQueue<>();
+        private final List<UserAgentAnalyzer>            analyzers;
+        private final int                                poolSize;
+        private int                                      cacheSize;
+
+        SharedAnalyzer(int poolSize, Supplier<UserAgentAnalyzerBuilder> builderSupplier) {
+            this.poolSize        = poolSize;
+            this.builderSupplier = builderSupplier;
+            this.analyzers       = new ArrayList<>(poolSize);
+
+            // The first analyzer is created immediately so configuration errors are reported
+            // when the processor is created. Only this one needs to preheat the JVM.
+            UserAgentAnalyzer first = builderSupplier.get().build();
+            this.cacheSize = first.getCacheSize();
+            analyzers.add(first);
+            idleAnalyzers.add(first);
+        }
+
+        /**
+         * A SharedAnalyzer around a single existing analyzer.
+         */
+        SharedAnalyzer(UserAgentAnalyzer analyzer) {
+            this.poolSize        = 1;
+            this.builderSupplier = null;
+            this.analyzers       = Collections.singletonList(analyzer);
+            this.cacheSize       = analyzer.getCacheSize();
+            idleAnalyzers.add(analyzer);
+        }
+
+        private UserAgentAnalyzer acquire() {
+            UserAgentAnalyzer analyzer = idleAnalyzers.poll();
+            if (analyzer != null) {
+                return analyzer;
+            }
+            if (mayCreateAnalyzer()) {
+                try {
+                    // Building takes a while so this is done outside the lock.
+                    UserAgentAnalyzerBuilder builder = builderSupplier.get();
+                    // Preheating is only useful once per JVM.
+                    builder.preheat(0);
+                    analyzer = builder.build();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        analyzers.remove(null);
+                    }
+                    throw e;
+                }
+                return addCreatedAnalyzer(analyzer);
+            }
+            try {
+                return idleAnalyzers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an available analyzer", e);
+            }
+        }
+
+        // Reserves the place of a new analyzer in the pool (with a null).
+        private synchronized boolean mayCreateAnalyzer() {
+            if (analyzers.size() < poolSize) {
+                analyzers.add(null);
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized UserAgentAnalyzer addCreatedAnalyzer(UserAgentAnalyzer analyzer) {
+            analyzer.setCacheSize(cacheSize);
+            analyzers.set(analyzers.indexOf(null), analyzer);
+            return analyzer;
+        }
+
+        UserAgent parse(String userAgentString) {
+            UserAgentAnalyzer analyzer = acquire();
+            try {
+                return analyzer.parse(userAgentString);
+            } finally {
+                idleAnalyzers.add(analyzer);
+            }
+        }
+
+        synchronized int getCacheSize() {
+            return cacheSize;
+        }
+
+        synchronized void increaseCacheSize(int newCacheSize) {
+            if (newCacheSize > cacheSize) {
+                cacheSize = newCacheSize;
+                analyzers.stream().filter(Objects::nonNull).forEach(analyzer -> analyzer.setCacheSize(newCacheSize));
+            }
+        }
+
+        synchronized int getNumberOfAnalyzers() {
+            return (int) analyzers.stream().filter(Objects::nonNull).count();
+        }
+    }
+
+    private static final class Key {
+        private final List<String> fieldNames;
+        private final String       extraRules;
+
+        Key(List<String> fieldNames, String extraRules) {
+            // The order and duplicates of the requested fields do not change the analyzer.
+            this.fieldNames = fieldNames == null ?
+                Collections.emptyList() :
+                Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(fieldNames)));
+            this.extraRules = extraRules;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return fieldNames.equals(key.fieldNames) &&
+                Objects.equals(extraRules, key.extraRules);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fieldNames, extraRules);
+        }
+    }
+}
@@ -17,13 +17,15 @@
 
 package org.elasticsearch.plugin.ingest.yauaa;
 
+import nl.basjes.parse.useragent.AgentField;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import org.elasticsearch.plugin.ingest.yauaa.YauaaAnalyzerService.SharedAnalyzer;
 import org.elasticsearch.ingest.AbstractProcessor;
 import org.elasticsearch.ingest.IngestDocument;
 import org.elasticsearch.ingest.Processor;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -40,13 +42,21 @@ public class YauaaProcessor extends AbstractProcessor {
     private final String field;
     private final String targetField;
 
-    private final UserAgentAnalyzer uaa;
+    private final SharedAnalyzer uaa;
 
     YauaaProcessor(String tag,
                    String description,
                    String field,
                    String targetField,
                    UserAgentAnalyzer uaa) {
+        this(tag, description, field, targetField, new SharedAnalyzer(uaa));
+    }
+
+    YauaaProcessor(String tag,
+                   String description,
+                   String field,
+                   String targetField,
+                   SharedAnalyzer uaa) {
         super(tag, description);
         this.field = field;
         this.targetField = targetField;
@@ -59,8 +69,18 @@ public class YauaaProcessor extends AbstractProcessor {
 
         UserAgent userAgent = uaa.parse(content);
 
-        Map<String, String> resultMap = userAgent.toMap();
-        resultMap.remove(USERAGENT_FIELDNAME);
+        // Only the available fields (in sorted order) that have an actual value.
+        List<String>        fieldNames = userAgent.getAvailableFieldNamesSorted();
+        Map<String, String> resultMap  = new LinkedHashMap<>(fieldNames.size() * 2);
+        for (String fieldName : fieldNames) {
+            if (USERAGENT_FIELDNAME.equals(fieldName)) {
+                continue;
+            }
+            AgentField agentField = userAgent.get(fieldName);
+            if (!agentField.isDefaultValue()) {
+                resultMap.put(fieldName, agentField.getValue());
+            }
+        }
         ingestDocument.setFieldValue(targetField, resultMap);
         return ingestDocument;
     }
@@ -72,6 +92,16 @@ public class YauaaProcessor extends AbstractProcessor {
 
     public static final class Factory implements Processor.Factory {
 
+        private final YauaaAnalyzerService analyzerService;
+
+        public Factory() {
+            this(new YauaaAnalyzerService(Runtime.getRuntime().availableProcessors()));
+        }
+
+        Factory(YauaaAnalyzerService analyzerService) {
+            this.analyzerService = analyzerService;
+        }
+
         @Override
         public Processor create(Map<String, Processor.Factory> processorFactories, String tag, String description, Map<String, Object> config) {
             String       field          = readStringProperty(TYPE, tag, config, "field");
@@ -81,28 +111,9 @@ public class YauaaProcessor extends AbstractProcessor {
             Integer      preheat        = readIntProperty(TYPE, tag, config, "preheat", -1);
             String       extraRules     = readOptionalStringProperty(TYPE, tag, config, "extraRules");
 
-            UserAgentAnalyzerBuilder builder = UserAgentAnalyzer
-                .newBuilder()
-                .dropTests()
-                .immediateInitialization();
-
-            if (cacheSize >= 0) {
-                builder.withCache(cacheSize);
-            }
-
-            if (preheat >= 0) {
-                builder.preheat(preheat);
-            }
-
-            if (extraRules != null) {
-                builder.addYamlRule(extraRules);
-            }
-
-            if (fieldNames != null && !fieldNames.isEmpty()) {
-                builder.withFields(fieldNames);
-            }
+            SharedAnalyzer sharedAnalyzer = analyzerService.getAnalyzer(fieldNames, extraRules, cacheSize, preheat);
 
-            return new YauaaProcessor(tag, description, field, targetField, builder.build());
+            return new YauaaProcessor(tag, description, field, targetField, sharedAnalyzer);
         }
     }
 }
@@ -18,6 +18,7 @@
 package org.elasticsearch.plugin.ingest.yauaa;
 
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.ingest.IngestDocument;
 import org.elasticsearch.ingest.Processor;
@@ -25,14 +26,18 @@ import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Test;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class YauaaProcessorTest {
@@ -213,4 +218,124 @@ public class YauaaProcessorTest {
         LoggerFactory.getLogger("TestYauaaProcessor").info("Complete set of returned results:{}", results);
     }
 
+    @Test
+    public void testSharedAnalyzers() throws Exception {
+        YauaaAnalyzerService    service = new YauaaAnalyzerService(2);
+        YauaaProcessor.Factory  factory = new YauaaProcessor.Factory(service);
+
+        Map<String, Object>  configuration1 = new HashMap<>();
+        configuration1.put("field",        SOURCE_FIELD);
+        configuration1.put("fieldNames",   Arrays.asList("DeviceClass", "AgentNameVersionMajor"));
+        configuration1.put("cacheSize",    10);
+        YauaaProcessor processor1 = (YauaaProcessor) factory.create(null, "tag1", "description", configuration1);
+
+        // Same fields in a different order and a different target
+        Map<String, Object>  configuration2 = new HashMap<>();
+        configuration2.put("field",        SOURCE_FIELD);
+        configuration2.put("target_field", TARGET_FIELD);
+        configuration2.put("fieldNames",   Arrays.asList("AgentNameVersionMajor", "DeviceClass"));
+        configuration2.put("cacheSize",    100);
+        YauaaProcessor processor2 = (YauaaProcessor) factory.create(null, "tag2", "description", configuration2);
+
+        assertEquals(1, service.size());
+
+        YauaaAnalyzerService.SharedAnalyzer sharedAnalyzer =
+            service.getAnalyzer(Arrays.asList("DeviceClass", "AgentNameVersionMajor"), null, -1, -1);
+        // The largest requested cache is used
+        assertEquals(100, sharedAnalyzer.getCacheSize());
+
+        // Different fields means a different analyzer
+        Map<String, Object>  configuration3 = new HashMap<>();
+        configuration3.put("field",        SOURCE_FIELD);
+        configuration3.put("fieldNames",   Collections.singletonList("DeviceClass"));
+        factory.create(null, "tag3", "description", configuration3);
+        assertEquals(2, service.size());
+
+        // Each thread gets its own analyzer up to the size of the pool
+        Thread[] threads = new Thread[4];
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                Map<String, Object> document = new HashMap<>();
+                document.put(SOURCE_FIELD,
+                    "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+                        "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                        "Chrome/53.0.2785.124 Mobile Safari/537.36");
+                IngestDocument ingestDocument =
+                    new IngestDocument("index", "type", "id", null, 42L, VersionType.EXTERNAL, document);
+                try {
+                    Map<String, Object> data = processor2.execute(ingestDocument).getSourceAndMetadata();
+                    Map<?, ?> results = (Map<?, ?>) data.get(TARGET_FIELD);
+                    assertHasKValue(results, "DeviceClass",           "Phone");
+                    assertHasKValue(results, "AgentNameVersionMajor", "Chrome 53");
+                    assertHasNotKey(results, "Useragent");
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Failures: " + failures, failures.isEmpty());
+        // Never more analyzers than the size of the pool
+        int numberOfAnalyzers = sharedAnalyzer.getNumberOfAnalyzers();
+        assertTrue("Analyzers: " + numberOfAnalyzers, numberOfAnalyzers >= 1 && numberOfAnalyzers <= 2);
+        assertEquals("yauaa", processor1.getType());
+    }
+
+    @Test
+    public void testConcurrentCreation() throws Exception {
+        YauaaAnalyzerService service = new YauaaAnalyzerService(1);
+
+        // All threads asking for the same configuration at the same time get the same (single) analyzer.
+        Thread[] threads = new Thread[4];
+        YauaaAnalyzerService.SharedAnalyzer[] results = new YauaaAnalyzerService.SharedAnalyzer[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() ->
+                results[index] = service.getAnalyzer(Collections.singletonList("DeviceClass"), null, -1, -1));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, service.size());
+        for (YauaaAnalyzerService.SharedAnalyzer result : results) {
+            assertSame(results[0], result);
+        }
+    }
+
+    @Test
+    public void testUnusedAnalyzersAreReleased() throws Exception {
+        YauaaAnalyzerService    service = new YauaaAnalyzerService(1);
+        YauaaProcessor.Factory  factory = new YauaaProcessor.Factory(service);
+
+        Map<String, Object>  configuration = new HashMap<>();
+        configuration.put("field",        SOURCE_FIELD);
+        configuration.put("fieldNames",   Collections.singletonList("DeviceClass"));
+        Processor processor = factory.create(null, "tag", "description", configuration);
+        assertEquals(1, service.size());
+        assertEquals("yauaa", processor.getType());
+
+        // The pipeline is deleted so nothing references the processor anymore.
+        processor = null; // NOSONAR: Needed to make it unreachable.
+
+        for (int attempt = 0; attempt < 100 && service.size() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    public void testPoolSize() {
+        assertEquals(3, IngestYauaaPlugin.getPoolSize(Settings.builder().put("thread_pool.write.size", 3).build()));
+        assertEquals(5, IngestYauaaPlugin.getPoolSize(Settings.builder()
+            .put("thread_pool.write.size", 3)
+            .put("ingest.yauaa.analyzers", 5)
+            .build()));
+    }
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.flink.table;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.catalog.DataTypeFactory;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.ScalarFunction;
+import org.apache.flink.table.types.inference.TypeInference;
+import org.apache.flink.types.Row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+
+/**
+ * Returns the requested fields as a typed ROW (in the order they were requested) instead of a map.
+ * The analyzer only determines these fields.
+ * <pre>
+ * SELECT parsed.DeviceClass, parsed.AgentNameVersionMajor
+ * FROM ( SELECT ParseUserAgent(useragent) AS parsed FROM AgentStream )
+ * </pre>
+ */
+public class AnalyzeUseragentRowFunction extends ScalarFunction {
+    private transient UserAgentAnalyzer userAgentAnalyzer;
+
+    private final int cacheSize;
+    private final List<String> extractedFields;
+
+    /**
+     * Create a UserAgentAnalyzer that extracts only the specified fields
+     * @param desiredFields The list of desired field names.
+     */
+    public AnalyzeUseragentRowFunction(String... desiredFields) {
+        this(DEFAULT_PARSE_CACHE_SIZE, Arrays.asList(desiredFields));
+    }
+
+    /**
+     * Create a UserAgentAnalyzer that extracts only the specified fields
+     * @param desiredFields The list of desired field names.
+     */
+    public AnalyzeUseragentRowFunction(List<String> desiredFields) {
+        this(DEFAULT_PARSE_CACHE_SIZE, desiredFields);
+    }
+
+    /**
+     * Create a UserAgentAnalyzer that extracts only the specified fields
+     * @param cacheSize The desired size of the cache.
+     * @param desiredFields The list of desired field names.
+     */
+    public AnalyzeUseragentRowFunction(int cacheSize, String... desiredFields) {
+        this(cacheSize, Arrays.asList(desiredFields));
+    }
+
+    /**
+     * Create a UserAgentAnalyzer that extracts only the specified fields
+     * @param cacheSize The desired size of the cache.
+     * @param desiredFields The list of desired field names.
+     */
+    public AnalyzeUseragentRowFunction(int cacheSize, List<String> desiredFields) {
+        if (desiredFields.isEmpty()) {
+            // The type of the ROW must be known before the analyzer is created.
+            throw new InvalidParserConfigurationException("You MUST specify at least 1 field to extract.");
+        }
+        this.cacheSize = cacheSize;
+        this.extractedFields = new ArrayList<>(desiredFields);
+    }
+
+    @Override
+    public void open(FunctionContext context) {
+        userAgentAnalyzer = UserAgentAnalyzer
+            .newBuilder()
+            .withFields(extractedFields)
+            .withCache(cacheSize)
+            .dropTests()
+            .immediateInitialization()
+            .build();
+    }
+
+    @Override
+    public TypeInference getTypeInference(DataTypeFactory typeFactory) {
+        DataTypes.Field[] fields = extractedFields
+            .stream()
+            .map(fieldName -> DataTypes.FIELD(fieldName, DataTypes.STRING()))
+            .toArray(DataTypes.Field[]::new);
+
+        return TypeInference
+            .newBuilder()
+            .typedArguments(DataTypes.STRING())
+            .outputTypeStrategy(callContext -> Optional.of(DataTypes.ROW(fields)))
+            .build();
+    }
+
+    public Row eval(String userAgentString) {
+        UserAgent userAgent = userAgentAnalyzer.parse(userAgentString);
+        Row row = new Row(extractedFields.size());
+        for (int i = 0; i < extractedFields.size(); i++) {
+            row.setField(i, userAgent.getValue(extractedFields.get(i)));
+        }
+        return row;
+    }
+}
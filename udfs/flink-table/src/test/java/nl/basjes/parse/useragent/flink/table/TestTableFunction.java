@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.flink.table;
 
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.tuple.Tuple3;
@@ -38,6 +39,7 @@ import static org.apache.flink.api.common.typeinfo.Types.MAP;
 import static org.apache.flink.api.common.typeinfo.Types.STRING;
 import static org.apache.flink.table.api.Expressions.$;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestTableFunction {
@@ -233,6 +235,73 @@ public class TestTableFunction {
         senv.execute();
     }
 
+    @Test
+    public void testRowFunction() throws Exception {
+        // The base execution environment
+        StreamExecutionEnvironment   senv        = StreamExecutionEnvironment.getExecutionEnvironment();
+
+        // The table environment
+        StreamTableEnvironment       tableEnv    = StreamTableEnvironment.create(senv);
+
+        // The demo input stream
+        DataStreamSource<Tuple3<String, String, String>> inputStream = getTestAgentStream(senv);
+
+        // Give the stream a Table Name and name the fields
+        tableEnv.createTemporaryView("AgentStream", inputStream, $("useragent"), $("expectedDeviceClass"), $("expectedAgentNameVersionMajor"));
+
+        // Register the function
+        tableEnv.createTemporarySystemFunction("ParseUserAgent", new AnalyzeUseragentRowFunction("DeviceClass", "AgentNameVersionMajor"));
+
+        // The function returns a ROW with only the requested fields.
+        String sqlQuery =
+            "SELECT useragent,"+
+            "       parsedUseragent.DeviceClass             AS deviceClass," +
+            "       parsedUseragent.AgentNameVersionMajor   AS agentNameVersionMajor," +
+            "       expectedDeviceClass," +
+            "       expectedAgentNameVersionMajor " +
+            "FROM ( " +
+            "   SELECT useragent," +
+            "          ParseUserAgent(useragent) AS parsedUseragent," +
+            "          expectedDeviceClass," +
+            "          expectedAgentNameVersionMajor " +
+            "   FROM   AgentStream " +
+            ")";
+
+        Table  resultTable   = tableEnv.sqlQuery(sqlQuery);
+
+        TypeInformation<Row> tupleType = new RowTypeInfo(STRING, STRING, STRING, STRING, STRING);
+        DataStream<Row> resultSet = tableEnv.toAppendStream(resultTable, tupleType);
+
+        List<Row> result = resultSet.executeAndCollect(100);
+        assertEquals(3, result.size());
+
+        for (Row row: result) {
+            Object useragent                      = row.getField(0);
+            Object deviceClass                    = row.getField(1);
+            Object agentNameVersionMajor          = row.getField(2);
+            Object expectedDeviceClass            = row.getField(3);
+            Object expectedAgentNameVersionMajor  = row.getField(4);
+
+            assertEquals(expectedDeviceClass,           deviceClass,           "Wrong DeviceClass: "           + useragent);
+            assertEquals(expectedAgentNameVersionMajor, agentNameVersionMajor, "Wrong AgentNameVersionMajor: " + useragent);
+        }
+    }
+
+    @Test
+    public void testRowFunctionDirect() {
+        AnalyzeUseragentRowFunction function = new AnalyzeUseragentRowFunction("AgentNameVersionMajor", "DeviceClass");
+        function.open(null);
+        final Row result = function.eval(USERAGENT);
+        assertEquals(2,           result.getArity());
+        assertEquals("Chrome 70", result.getField(0));
+        assertEquals("Desktop",   result.getField(1));
+    }
+
+    @Test
+    public void testRowFunctionNoFields() {
+        assertThrows(InvalidParserConfigurationException.class, AnalyzeUseragentRowFunction::new);
+    }
+
     private static final String USERAGENT =
         "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/70.0.3538.77 Safari/537.36";
 
@@ -0,0 +1,163 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.flink;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzerPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The analysis that is shared by all instances (i.e. all slots) in the same JVM that need the same fields.
+ * The parsing is done by a single bounded pool of threads which use (per set of fields) a {@link UserAgentAnalyzerPool}.
+ * The number of threads is the size of such an analyzer pool so the threads do not have to wait for each other.
+ * This size can be set with the system property {@value #POOL_SIZE_PROPERTY}.
+ * A useragent that is already being analyzed is not analyzed again but the in flight result is shared.
+ * Each user must {@link #release(SharedUserAgentAnalysis)} what it acquired; when the last one is released
+ * the threads are stopped so they do not keep the classloader of the job alive.
+ */
+final class SharedUserAgentAnalysis {
+
+    static final String POOL_SIZE_PROPERTY = "yauaa.flink.analyzers";
+
+    // The map, the reference counts and the executor are guarded by the class lock.
+    private static final Map<String, SharedUserAgentAnalysis> SHARED   = new HashMap<>();
+    private static       ExecutorService                      executor = null;
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(getPoolSize(), runnable -> {
+            Thread thread = new Thread(runnable, "Yauaa-Analyzer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static int getPoolSize() {
+        return UserAgentAnalyzerPool.getPoolSize(POOL_SIZE_PROPERTY);
+    }
+
+    private final String                                    key;
+    private final ExecutorService                           analysisExecutor;
+    private final UserAgentAnalyzerPool                     analyzers;
+    private final Map<String, CompletableFuture<UserAgent>> inFlight   = new ConcurrentHashMap<>();
+    private       int                                       references = 0;
+
+    private SharedUserAgentAnalysis(String key, List<String> fieldNames, int cacheSize, ExecutorService analysisExecutor) {
+        this.key              = key;
+        this.analysisExecutor = analysisExecutor;
+        this.analyzers        = new UserAgentAnalyzerPool(getPoolSize(), () -> UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .withCache(cacheSize)
+            .withFields(fieldNames)
+            .dropTests()
+            .immediateInitialization()
+            .build());
+    }
+
+    /**
+     * @param fieldNames The wanted fields
+     * @param cacheSize The cache size of the analyzers
+     * @return The shared analysis for these fields which must be released when no longer needed.
+     */
+    static synchronized SharedUserAgentAnalysis acquire(Collection<String> fieldNames, int cacheSize) {
+        List<String> sortedFieldNames = new ArrayList<>(new TreeSet<>(fieldNames));
+        String key = sortedFieldNames.toString() + '|' + cacheSize;
+        if (executor == null) {
+            executor = createExecutor();
+        }
+        SharedUserAgentAnalysis analysis = SHARED
+            .computeIfAbsent(key, k -> new SharedUserAgentAnalysis(k, sortedFieldNames, cacheSize, executor));
+        analysis.references++;
+        return analysis;
+    }
+
+    /**
+     * Release an analysis obtained via {@link #acquire(Collection, int)}.
+     * @param analysis The analysis that is no longer needed.
+     */
+    static synchronized void release(SharedUserAgentAnalysis analysis) {
+        if (--analysis.references > 0) {
+            return;
+        }
+        SHARED.remove(analysis.key, analysis);
+        if (SHARED.isEmpty() && executor != null) {
+            // Already submitted analyses are still completed.
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    static synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * @return One of the analyzers (round robin) that provide the requested fields.
+     */
+    UserAgentAnalyzer getAnalyzer() {
+        return analyzers.get();
+    }
+
+    /**
+     * Analyze the useragent in the shared thread pool.
+     * @param userAgentString The useragent to analyze
+     * @return The future result
+     */
+    CompletableFuture<UserAgent> analyze(String userAgentString) {
+        if (userAgentString == null) {
+            return CompletableFuture.supplyAsync(() -> getAnalyzer().parse((String) null), analysisExecutor);
+        }
+
+        CompletableFuture<UserAgent> result   = new CompletableFuture<>();
+        CompletableFuture<UserAgent> existing = inFlight.putIfAbsent(userAgentString, result);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            analysisExecutor.execute(() -> {
+                try {
+                    result.complete(getAnalyzer().parse(userAgentString));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(userAgentString, result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Only if the analysis was already released.
+            inFlight.remove(userAgentString, result);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.flink;
+
+import nl.basjes.parse.useragent.annotate.UserAgentAnnotationAnalyzer;
+import nl.basjes.parse.useragent.annotate.UserAgentAnnotationMapper;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.async.ResultFuture;
+import org.apache.flink.streaming.api.functions.async.RichAsyncFunction;
+
+import java.io.Serializable;
+import java.util.Collections;
+
+import static nl.basjes.parse.useragent.UserAgentAnalyzer.DEFAULT_PARSE_CACHE_SIZE;
+
+/**
+ * An asynchronous variant of the {@link UserAgentAnalysisMapper}.
+ * All instances in the same TaskManager that need the same fields share a bounded pool of threads and analyzers.
+ * A useragent that is already being analyzed for another record is not analyzed again.
+ * <pre>
+ * AsyncDataStream.unorderedWait(stream, new MyUserAgentAnalysisAsyncFunction(), 10, TimeUnit.SECONDS, 1000);
+ * </pre>
+ * The capacity passed to AsyncDataStream limits the number of records in flight
+ * and the AsyncWaitOperator includes these records in the checkpoints.
+ * @param <T> The type of the record.
+ */
+public abstract class UserAgentAnalysisAsyncFunction<T> extends RichAsyncFunction<T, T>
+    implements UserAgentAnnotationMapper<T>, Serializable {
+    private transient UserAgentAnnotationAnalyzer<T> userAgentAnalyzer = null;
+    private transient SharedUserAgentAnalysis        analysis          = null;
+
+    private final int cacheSize;
+
+    public UserAgentAnalysisAsyncFunction() {
+        this.cacheSize = DEFAULT_PARSE_CACHE_SIZE;
+    }
+
+    public UserAgentAnalysisAsyncFunction(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        userAgentAnalyzer = new UserAgentAnnotationAnalyzer<>();
+        userAgentAnalyzer.initialize(this, fieldNames -> {
+            analysis = SharedUserAgentAnalysis.acquire(fieldNames, cacheSize);
+            return analysis.getAnalyzer();
+        });
+    }
+
+    @Override
+    public void close() {
+        if (analysis != null) {
+            SharedUserAgentAnalysis.release(analysis);
+            analysis = null;
+        }
+    }
+
+    @Override
+    public void asyncInvoke(T record, ResultFuture<T> resultFuture) {
+        analysis
+            .analyze(getUserAgentString(record))
+            .whenComplete((userAgent, throwable) -> {
+                if (throwable != null) {
+                    resultFuture.completeExceptionally(throwable);
+                    return;
+                }
+                try {
+                    resultFuture.complete(Collections.singleton(userAgentAnalyzer.map(record, userAgent)));
+                } catch (RuntimeException e) {
+                    resultFuture.completeExceptionally(e);
+                }
+            });
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.flink;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.annotate.YauaaField;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.datastream.AsyncDataStream;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.LocalStreamEnvironment;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserAgentAnalysisAsyncFunction {
+
+    public static class MyUserAgentAnalysisAsyncFunction extends UserAgentAnalysisAsyncFunction<TestRecord> {
+        @Override
+        public String getUserAgentString(TestRecord record) {
+            return record.useragent;
+        }
+
+        @SuppressWarnings("unused") // Called via the annotation
+        @YauaaField("DeviceClass")
+        public void setDeviceClass(TestRecord record, String value) {
+            record.deviceClass = value;
+        }
+
+        @SuppressWarnings("unused") // Called via the annotation
+        @YauaaField("AgentNameVersion")
+        public void setAgentNameVersion(TestRecord record, String value) {
+            record.agentNameVersion = value;
+        }
+    }
+
+    private static final String DESKTOP =
+        "Mozilla/5.0 (X11; Linux x86_64) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Chrome/48.0.2564.82 Safari/537.36";
+
+    private static final String PHONE =
+        "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    @Test
+    public void testAsyncDataStream() throws Exception {
+        StreamExecutionEnvironment environment = LocalStreamEnvironment.getExecutionEnvironment();
+
+        DataStream<TestRecord> input = environment
+            .fromElements(DESKTOP, PHONE, DESKTOP, DESKTOP, PHONE)
+            .map((MapFunction<String, TestRecord>) TestRecord::new);
+
+        DataStream<TestRecord> resultDataStream = AsyncDataStream
+            .unorderedWait(input, new MyUserAgentAnalysisAsyncFunction(), 1, TimeUnit.MINUTES, 100);
+
+        List<TestRecord> result = resultDataStream.executeAndCollect(100);
+
+        assertEquals(5, result.size());
+
+        assertThat(result, hasItems(
+            new TestRecord(DESKTOP, "Desktop", "Chrome 48.0.2564.82", null),
+            new TestRecord(PHONE,   "Phone",   "Chrome 53.0.2785.124", null)
+        ));
+    }
+
+    @Test
+    public void testSharedAnalysis() throws Exception {
+        SharedUserAgentAnalysis analysis = SharedUserAgentAnalysis.acquire(Arrays.asList("DeviceClass", "AgentNameVersion"), 100);
+        SharedUserAgentAnalysis same     = SharedUserAgentAnalysis.acquire(Arrays.asList("AgentNameVersion", "DeviceClass"), 100);
+        SharedUserAgentAnalysis other    = SharedUserAgentAnalysis.acquire(Arrays.asList("AgentNameVersion", "DeviceClass"), 200);
+
+        assertSame(analysis, same);
+        assertNotSame(analysis, other);
+
+        assertEquals("Phone", analysis.analyze(PHONE).get().getValue("DeviceClass"));
+        assertEquals("Hacker", analysis.analyze(null).get().getValue("DeviceClass"));
+
+        // The number of analyzers does not depend on the number of threads that use them.
+        Set<UserAgentAnalyzer> analyzers = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 100; i++) {
+            analyzers.add(analysis.getAnalyzer());
+        }
+        assertEquals(SharedUserAgentAnalysis.getPoolSize(), analyzers.size());
+
+        SharedUserAgentAnalysis.release(analysis);
+        SharedUserAgentAnalysis.release(other);
+        assertTrue(SharedUserAgentAnalysis.isRunning());
+        // Still in use
+        assertEquals("Desktop", same.analyze(DESKTOP).get().getValue("DeviceClass"));
+
+        SharedUserAgentAnalysis.release(same);
+        assertFalse(SharedUserAgentAnalysis.isRunning());
+
+        // After the last release a new analysis (with new threads) is created.
+        SharedUserAgentAnalysis again = SharedUserAgentAnalysis.acquire(Arrays.asList("DeviceClass", "AgentNameVersion"), 100);
+        assertNotSame(analysis, again);
+        assertTrue(SharedUserAgentAnalysis.isRunning());
+        assertEquals("Phone", again.analyze(PHONE).get().getValue("DeviceClass"));
+        SharedUserAgentAnalysis.release(again);
+        assertFalse(SharedUserAgentAnalysis.isRunning());
+    }
+
+    @Test
+    public void testCloseStopsTheThreads() throws Exception {
+        MyUserAgentAnalysisAsyncFunction function = new MyUserAgentAnalysisAsyncFunction();
+        function.open(new Configuration());
+        assertTrue(SharedUserAgentAnalysis.isRunning());
+        function.close();
+        assertFalse(SharedUserAgentAnalysis.isRunning());
+        // Closing twice is harmless
+        function.close();
+        assertFalse(SharedUserAgentAnalysis.isRunning());
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.hive;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedExpressions;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.Collections;
+
+/**
+ * Hive UDF for retrieving a single field from the UserAgent string.
+ * Only this field is determined by the analyzer and this UDF supports vectorized execution.
+ * <pre>
+ *  SELECT ParseUserAgentField(useragent, 'DeviceClass') FROM clickLogs a;
+ * </pre>
+ */
+@Description(
+    name = "ParseUserAgentField",
+    value = "_FUNC_(str, fieldname) - Parses the UserAgent and returns only the requested field.",
+    extended = "Example:\n" +
+        "> SELECT ParseUserAgentField(useragent, 'DeviceClass') AS DeviceClass, \n" +
+        "         count(*) AS Hits \n" +
+        "  FROM   clickLogs \n" +
+        "  GROUP BY ParseUserAgentField(useragent, 'DeviceClass');\n" +
+        "+---------------+--------+\n" +
+        "|  deviceclass  |  hits  |\n" +
+        "+---------------+--------+\n" +
+        "| Phone         | 123456 |\n" +
+        "| Tablet        |  12345 |\n" +
+        "| Desktop       | 234567 |\n" +
+        "+---------------+--------+\n")
+@VectorizedExpressions({VectorParseUserAgentField.class})
+public class ParseUserAgentField extends GenericUDF {
+
+    private StringObjectInspector useragentOI = null;
+    private UserAgentAnalyzer userAgentAnalyzer = null;
+    private String fieldName = null;
+
+    // The output is reused for all rows.
+    private final Text result = new Text();
+
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] args) throws UDFArgumentException {
+        // ================================
+        // Check the input
+        // This UDF accepts two arguments: the useragent and the constant name of the wanted field.
+        if (args.length != 2) {
+            throw new UDFArgumentException("The argument list must be exactly 2 elements");
+        }
+
+        // The first argument must be a String
+        ObjectInspector inputOI = args[0];
+        if (!(inputOI instanceof StringObjectInspector)) {
+            throw new UDFArgumentException("The argument must be a string");
+        }
+        useragentOI = (StringObjectInspector) inputOI;
+
+        fieldName = ParseUserAgent.getConstantString(args[1], 1);
+
+        // ================================
+        // The analyzer is only created when the first record is evaluated.
+        ParseUserAgent.checkFieldNames(Collections.singletonList(fieldName));
+        userAgentAnalyzer = null;
+
+        return PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+    }
+
+    static UserAgentAnalyzer createAnalyzer(String fieldName) {
+        return UserAgentAnalyzer
+            .newBuilder()
+            .hideMatcherLoadStats()
+            .delayInitialization()
+            .withField(fieldName)
+            .build();
+    }
+
+    @Override
+    public Object evaluate(DeferredObject[] args) throws HiveException {
+        String userAgentString = useragentOI.getPrimitiveJavaObject(args[0].get());
+
+        if (userAgentString == null) {
+            return null;
+        }
+
+        if (userAgentAnalyzer == null) {
+            userAgentAnalyzer = createAnalyzer(fieldName);
+        }
+
+        String value = userAgentAnalyzer.parse(userAgentString).getValue(fieldName);
+        if (value == null) {
+            return null;
+        }
+        result.set(value);
+        return result;
+    }
+
+    @Override
+    public String getDisplayString(String[] args) {
+        return "Parses the UserAgent and returns the requested field.";
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.hive;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorExpressionDescriptor;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The vectorized implementation of {@link ParseUserAgentField}.
+ * Within a batch each distinct useragent is only analyzed once and the output
+ * references (instead of copies) the cached bytes of the field values.
+ */
+public class VectorParseUserAgentField extends VectorExpression {
+    private static final long serialVersionUID = 1L;
+
+    // Limit the memory used for caching the bytes of the values
+    private static final int MAX_CACHED_VALUES = 10000;
+
+    // Marks that the field has no value (i.e. null)
+    private static final byte[] NO_VALUE = new byte[0];
+
+    private final int    colNum;
+    private final byte[] fieldNameBytes;
+
+    private transient String                  fieldName;
+    private transient UserAgentAnalyzer       userAgentAnalyzer;
+    private transient Map<BytesKey, byte[]>   batchResults;
+    private transient Map<String, byte[]>     valueBytes;
+    private transient BytesKey                probe;
+
+    public VectorParseUserAgentField(int colNum, byte[] fieldName, int outputColumnNum) {
+        super(outputColumnNum);
+        this.colNum         = colNum;
+        this.fieldNameBytes = fieldName;
+    }
+
+    public VectorParseUserAgentField() {
+        super();
+        // Dummy final assignments.
+        colNum         = -1;
+        fieldNameBytes = null;
+    }
+
+    private void initialize() {
+        fieldName         = new String(fieldNameBytes, UTF_8);
+        userAgentAnalyzer = ParseUserAgentField.createAnalyzer(fieldName);
+        batchResults      = new HashMap<>();
+        valueBytes        = new HashMap<>();
+        probe             = new BytesKey();
+    }
+
+    @Override
+    public void evaluate(VectorizedRowBatch batch) throws HiveException {
+        if (childExpressions != null) {
+            evaluateChildren(batch);
+        }
+
+        BytesColumnVector inputColVector  = (BytesColumnVector) batch.cols[colNum];
+        BytesColumnVector outputColVector = (BytesColumnVector) batch.cols[outputColumnNum];
+        int n = batch.size;
+        if (n == 0) {
+            return;
+        }
+
+        if (userAgentAnalyzer == null) {
+            initialize();
+        }
+
+        if (inputColVector.isRepeating) {
+            outputColVector.isRepeating = true;
+            if (inputColVector.noNulls || !inputColVector.isNull[0]) {
+                setResult(inputColVector, outputColVector, 0);
+            } else {
+                outputColVector.isNull[0] = true;
+                outputColVector.noNulls = false;
+            }
+            batchResults.clear();
+            return;
+        }
+
+        outputColVector.isRepeating = false;
+        int[] selected = batch.selected;
+        for (int j = 0; j < n; j++) {
+            int i = batch.selectedInUse ? selected[j] : j;
+            if (inputColVector.noNulls || !inputColVector.isNull[i]) {
+                setResult(inputColVector, outputColVector, i);
+            } else {
+                outputColVector.isNull[i] = true;
+                outputColVector.noNulls = false;
+            }
+        }
+        batchResults.clear();
+    }
+
+    private void setResult(BytesColumnVector inputColVector, BytesColumnVector outputColVector, int i) {
+        probe.set(inputColVector.vector[i], inputColVector.start[i], inputColVector.length[i]);
+        byte[] value = batchResults.get(probe);
+        if (value == null) {
+            value = analyze(probe);
+            // The input bytes remain valid until the end of this batch.
+            batchResults.put(probe.copy(), value);
+        }
+
+        if (value == NO_VALUE) {
+            outputColVector.isNull[i] = true;
+            outputColVector.noNulls = false;
+        } else {
+            outputColVector.isNull[i] = false;
+            outputColVector.setRef(i, value, 0, value.length);
+        }
+    }
+
+    private byte[] analyze(BytesKey useragent) {
+        String userAgentString = new String(useragent.bytes, useragent.start, useragent.length, UTF_8);
+        String value = userAgentAnalyzer.parse(userAgentString).getValue(fieldName);
+        if (value == null) {
+            return NO_VALUE;
+        }
+        byte[] bytes = valueBytes.get(value);
+        if (bytes == null) {
+            if (valueBytes.size() >= MAX_CACHED_VALUES) {
+                valueBytes.clear();
+            }
+            bytes = value.getBytes(UTF_8);
+            valueBytes.put(value, bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public String vectorExpressionParameters() {
+        return getColumnParamString(0, colNum) + ", val " + displayUtf8Bytes(fieldNameBytes);
+    }
+
+    @Override
+    public VectorExpressionDescriptor.Descriptor getDescriptor() {
+        return (new VectorExpressionDescriptor.Builder())
+            .setMode(VectorExpressionDescriptor.Mode.PROJECTION)
+            .setNumArguments(2)
+            .setArgumentTypes(
+                VectorExpressionDescriptor.ArgumentType.STRING_FAMILY,
+                VectorExpressionDescriptor.ArgumentType.STRING_FAMILY)
+            .setInputExpressionTypes(
+                VectorExpressionDescriptor.InputExpressionType.COLUMN,
+                VectorExpressionDescriptor.InputExpressionType.SCALAR).build();
+    }
+
+    // A range of bytes that can be used as the key of a HashMap.
+    private static final class BytesKey {
+        private byte[] bytes;
+        private int    start;
+        private int    length;
+        private int    hash;
+
+        void set(byte[] newBytes, int newStart, int newLength) {
+            bytes  = newBytes;
+            start  = newStart;
+            length = newLength;
+            int h = 1;
+            for (int i = start; i < start + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            hash = h;
+        }
+
+        BytesKey copy() {
+            BytesKey copy = new BytesKey();
+            copy.bytes  = bytes;
+            copy.start  = start;
+            copy.length = length;
+            copy.hash   = hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BytesKey)) {
+                return false;
+            }
+            BytesKey other = (BytesKey) o;
+            if (hash != other.hash || length != other.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[start + i] != other.bytes[other.start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
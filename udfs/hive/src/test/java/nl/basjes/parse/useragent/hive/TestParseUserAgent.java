@@ -17,15 +17,19 @@
 
 package nl.basjes.parse.useragent.hive;
 
+import nl.basjes.parse.useragent.FieldCatalog;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -44,6 +48,10 @@ public class TestParseUserAgent {
                 PrimitiveObjectInspectorFactory.javaStringObjectInspector
             });
 
+        // The output is determined without loading all rules into an analyzer
+        assertEquals(FieldCatalog.getAllPossibleFieldNamesSorted().size(), resultInspector.getAllStructFieldRefs().size());
+        assertNull(parseUserAgent.getUserAgentAnalyzer());
+
         for (int i = 0; i < 100000; i++) {
             Object row = parseUserAgent.evaluate(new DeferredObject[]{new DeferredJavaObject(userAgent)});
             checkField(resultInspector, row, "DeviceClass", "Tablet");
@@ -52,6 +60,36 @@ public class TestParseUserAgent {
         }
     }
 
+    @Test
+    public void testWithFields() throws HiveException {
+        String userAgent = "Mozilla/5.0 (Linux; Android 5.1.1; KFFOWI Build/LMY47O) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Version/4.0 Chrome/41.51020.2250.0246 Mobile Safari/537.36 cordova-amazon-fireos/3.4.0 AmazonWebAppPlatform/3.4.0;2.0";
+
+        ParseUserAgent parseUserAgent = new ParseUserAgent();
+
+        StandardStructObjectInspector resultInspector = (StandardStructObjectInspector) parseUserAgent
+            .initialize(new ObjectInspector[]{
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                constantString("DeviceClass"),
+                constantString("OperatingSystemNameVersion"),
+            });
+
+        assertEquals(2, resultInspector.getAllStructFieldRefs().size());
+        assertNull(parseUserAgent.getUserAgentAnalyzer());
+
+        for (int i = 0; i < 1000; i++) {
+            Object row = parseUserAgent.evaluate(new DeferredObject[]{new DeferredJavaObject(userAgent)});
+            checkField(resultInspector, row, "DeviceClass", "Tablet");
+            checkField(resultInspector, row, "OperatingSystemNameVersion", "FireOS 3.4.0");
+        }
+        assertNotNull(parseUserAgent.getUserAgentAnalyzer());
+    }
+
+    static ObjectInspector constantString(String value) {
+        return PrimitiveObjectInspectorFactory
+            .getPrimitiveWritableConstantObjectInspector(TypeInfoFactory.stringTypeInfo, new Text(value));
+    }
+
     private void checkField(StandardStructObjectInspector resultInspector, Object row, String fieldName, String expectedValue) {
         final Object result = resultInspector.getStructFieldData(row, resultInspector.getStructFieldRef(fieldName));
 
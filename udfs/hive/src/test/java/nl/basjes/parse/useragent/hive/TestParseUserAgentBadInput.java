@@ -23,11 +23,14 @@ import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestParseUserAgentBadInput {
 
@@ -46,13 +49,33 @@ public class TestParseUserAgentBadInput {
 
     @Test
     public void testBadInputCount() {
+        Exception exception = assertThrows(UDFArgumentException.class, () ->
+            parseUserAgent
+                .initialize(new ObjectInspector[]{}));
+        assertEquals("The argument list must be at least 1 element", exception.getMessage());
+    }
+
+    @Test
+    public void testBadFieldNameNotConstant() {
         Exception exception = assertThrows(UDFArgumentException.class, () ->
             parseUserAgent
                 .initialize(new ObjectInspector[]{
                     PrimitiveObjectInspectorFactory.javaStringObjectInspector,
                     PrimitiveObjectInspectorFactory.javaStringObjectInspector
                 }));
-        assertEquals("The argument list must be exactly 1 element", exception.getMessage());
+        assertEquals("Argument 2 must be a constant string (a field name)", exception.getMessage());
+    }
+
+    @Test
+    public void testBadFieldNameUnknown() {
+        Exception exception = assertThrows(UDFArgumentException.class, () ->
+            parseUserAgent
+                .initialize(new ObjectInspector[]{
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                    PrimitiveObjectInspectorFactory.getPrimitiveWritableConstantObjectInspector(
+                        TypeInfoFactory.stringTypeInfo, new Text("NoSuchField"))
+                }));
+        assertTrue(exception.getMessage().contains("NoSuchField"), exception.getMessage());
     }
 
 
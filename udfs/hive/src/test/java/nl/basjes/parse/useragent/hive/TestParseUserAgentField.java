@@ -0,0 +1,162 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.hive;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.useragent.hive.TestParseUserAgent.constantString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestParseUserAgentField {
+
+    private static final String TABLET =
+        "Mozilla/5.0 (Linux; Android 5.1.1; KFFOWI Build/LMY47O) AppleWebKit/537.36 (KHTML, like Gecko) " +
+        "Version/4.0 Chrome/41.51020.2250.0246 Mobile Safari/537.36 cordova-amazon-fireos/3.4.0 AmazonWebAppPlatform/3.4.0;2.0";
+
+    private static final String DESKTOP =
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/59.0.3071.115 Safari/537.36";
+
+    @Test
+    public void testRowMode() throws HiveException {
+        ParseUserAgentField parseUserAgentField = new ParseUserAgentField();
+        parseUserAgentField
+            .initialize(new ObjectInspector[]{
+                PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                constantString("DeviceClass")
+            });
+
+        assertEquals("Tablet",
+            parseUserAgentField.evaluate(new DeferredObject[]{new DeferredJavaObject(TABLET)}).toString());
+        assertEquals("Desktop",
+            parseUserAgentField.evaluate(new DeferredObject[]{new DeferredJavaObject(DESKTOP)}).toString());
+        assertNull(parseUserAgentField.evaluate(new DeferredObject[]{new DeferredJavaObject(null)}));
+    }
+
+    @Test
+    public void testBadFieldName() {
+        ParseUserAgentField parseUserAgentField = new ParseUserAgentField();
+        assertThrows(UDFArgumentException.class, () ->
+            parseUserAgentField
+                .initialize(new ObjectInspector[]{
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+                    PrimitiveObjectInspectorFactory.javaStringObjectInspector
+                }));
+    }
+
+    private static void setInput(BytesColumnVector input, int row, String value) {
+        if (value == null) {
+            input.isNull[row] = true;
+            input.noNulls = false;
+        } else {
+            input.setVal(row, value.getBytes(UTF_8));
+        }
+    }
+
+    private static String getOutput(BytesColumnVector output, int row) {
+        int index = output.isRepeating ? 0 : row;
+        if (!output.noNulls && output.isNull[index]) {
+            return null;
+        }
+        return new String(output.vector[index], output.start[index], output.length[index], UTF_8);
+    }
+
+    @Test
+    public void testVectorized() throws HiveException {
+        VectorParseUserAgentField expression =
+            new VectorParseUserAgentField(0, "DeviceClass".getBytes(UTF_8), 1);
+
+        VectorizedRowBatch batch = new VectorizedRowBatch(2);
+        BytesColumnVector input  = new BytesColumnVector();
+        BytesColumnVector output = new BytesColumnVector();
+        batch.cols[0] = input;
+        batch.cols[1] = output;
+
+        input.initBuffer();
+        String[] useragents = {TABLET, DESKTOP, null, TABLET, DESKTOP, TABLET};
+        for (int row = 0; row < useragents.length; row++) {
+            setInput(input, row, useragents[row]);
+        }
+        batch.size = useragents.length;
+
+        expression.evaluate(batch);
+
+        assertFalse(output.isRepeating);
+        assertEquals("Tablet",  getOutput(output, 0));
+        assertEquals("Desktop", getOutput(output, 1));
+        assertNull(getOutput(output, 2));
+        assertEquals("Tablet",  getOutput(output, 3));
+        assertEquals("Desktop", getOutput(output, 4));
+        assertEquals("Tablet",  getOutput(output, 5));
+
+        // The same value is not copied for each row
+        assertSame(output.vector[0], output.vector[3]);
+        assertSame(output.vector[0], output.vector[5]);
+    }
+
+    @Test
+    public void testVectorizedSelectedAndRepeating() throws HiveException {
+        VectorParseUserAgentField expression =
+            new VectorParseUserAgentField(0, "DeviceClass".getBytes(UTF_8), 1);
+
+        VectorizedRowBatch batch = new VectorizedRowBatch(2);
+        BytesColumnVector input  = new BytesColumnVector();
+        BytesColumnVector output = new BytesColumnVector();
+        batch.cols[0] = input;
+        batch.cols[1] = output;
+
+        // Only some rows are selected
+        input.initBuffer();
+        setInput(input, 0, TABLET);
+        setInput(input, 1, DESKTOP);
+        setInput(input, 2, TABLET);
+        batch.selectedInUse = true;
+        batch.selected[0] = 1;
+        batch.selected[1] = 2;
+        batch.size = 2;
+
+        expression.evaluate(batch);
+        assertEquals("Desktop", getOutput(output, 1));
+        assertEquals("Tablet",  getOutput(output, 2));
+
+        // A repeating input
+        batch.reset();
+        input.initBuffer();
+        setInput(input, 0, DESKTOP);
+        input.isRepeating = true;
+        batch.size = 5;
+
+        expression.evaluate(batch);
+        assertTrue(output.isRepeating);
+        assertEquals("Desktop", getOutput(output, 3));
+    }
+
+}
@@ -23,6 +23,7 @@ import nl.basjes.parse.core.Parsable;
 import nl.basjes.parse.core.ParsedField;
 import nl.basjes.parse.core.exceptions.DissectionFailure;
 import nl.basjes.parse.core.exceptions.InvalidDissectorException;
+import nl.basjes.parse.useragent.FieldCatalog;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
@@ -110,10 +111,14 @@ public class UserAgentDissector extends Dissector {
         List<String> result = new ArrayList<>();
 
         // First the standard fields in the standard order, then the non-standard fields alphabetically
-        final UserAgentAnalyzerBuilder builder = UserAgentAnalyzer.newBuilder();
-        extraResources.forEach(builder::addResources);
-
-        allPossibleFieldNames = builder.build().getAllPossibleFieldNamesSorted();
+        if (extraResources.isEmpty()) {
+            // Only the packaged rules: no need to load them all.
+            allPossibleFieldNames = FieldCatalog.getAllPossibleFieldNamesSorted();
+        } else {
+            final UserAgentAnalyzerBuilder builder = UserAgentAnalyzer.newBuilder();
+            extraResources.forEach(builder::addResources);
+            allPossibleFieldNames = builder.build().getAllPossibleFieldNamesSorted();
+        }
         for (String fieldName : allPossibleFieldNames) {
             ensureMappingsExistForFieldName(fieldName);
             result.add(getFieldOutputType(fieldName) + ":" + fieldNameToDissectionName(fieldName));
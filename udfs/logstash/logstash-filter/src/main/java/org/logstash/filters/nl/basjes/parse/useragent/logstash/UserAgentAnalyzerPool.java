@@ -0,0 +1,91 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.logstash.filters.nl.basjes.parse.useragent.logstash;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A pool of identical analyzers so the pipeline workers do not have to wait for each other.
+ * A worker acquires an analyzer for a complete batch of events and releases it afterwards.
+ * Additional analyzers are only created when all existing ones are in use.
+ */
+final class UserAgentAnalyzerPool {
+
+    private final Supplier<UserAgentAnalyzer>      analyzerSupplier;
+    private final int                              maxAnalyzers;
+    private final BlockingQueue<UserAgentAnalyzer> idleAnalyzers = new LinkedBlockingQueue<>();
+    private int                                    createdAnalyzers;
+
+    UserAgentAnalyzerPool(UserAgentAnalyzer firstAnalyzer, int maxAnalyzers, Supplier<UserAgentAnalyzer> analyzerSupplier) {
+        this.analyzerSupplier = analyzerSupplier;
+        this.maxAnalyzers     = Math.max(1, maxAnalyzers);
+        idleAnalyzers.add(firstAnalyzer);
+        createdAnalyzers = 1;
+    }
+
+    /**
+     * Get an analyzer for exclusive use, this must be returned with {@link #release(UserAgentAnalyzer)}.
+     * If all analyzers are in use and no more may be created this waits until one is released.
+     * @return The analyzer
+     */
+    UserAgentAnalyzer acquire() {
+        UserAgentAnalyzer analyzer = idleAnalyzers.poll();
+        if (analyzer != null) {
+            return analyzer;
+        }
+        if (mayCreateAnalyzer()) {
+            // Building takes a while so this is done outside the lock.
+            try {
+                return analyzerSupplier.get();
+            } catch (RuntimeException | Error e) {
+                analyzerCreationFailed();
+                throw e;
+            }
+        }
+        try {
+            return idleAnalyzers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an available analyzer", e);
+        }
+    }
+
+    void release(UserAgentAnalyzer analyzer) {
+        idleAnalyzers.add(analyzer);
+    }
+
+    private synchronized boolean mayCreateAnalyzer() {
+        if (createdAnalyzers < maxAnalyzers) {
+            createdAnalyzers++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void analyzerCreationFailed() {
+        createdAnalyzers--;
+    }
+
+    synchronized int getNumberOfAnalyzers() {
+        return createdAnalyzers;
+    }
+}
@@ -24,9 +24,10 @@ import co.elastic.logstash.api.FilterMatchListener;
 import co.elastic.logstash.api.LogstashPlugin;
 import co.elastic.logstash.api.PluginConfigSpec;
 import co.elastic.logstash.api.Filter;
+import nl.basjes.parse.useragent.FieldCatalog;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,10 +45,8 @@ public class Yauaa implements Filter {
 
     private static final Logger LOG = LoggerFactory.getLogger(Yauaa.class);
 
-    private final String            id;
-    private final UserAgentAnalyzer userAgentAnalyzer;
-
-    private final List<String> requestedFieldNames = new ArrayList<>();
+    private final String                id;
+    private final UserAgentAnalyzerPool analyzerPool;
 
     public static final PluginConfigSpec<String> SOURCE_CONFIG =
         PluginConfigSpec.stringSetting("source");
@@ -55,9 +54,18 @@ public class Yauaa implements Filter {
     public static final PluginConfigSpec<Map<String, Object>> FIELDS_CONFIG =
         PluginConfigSpec.hashSetting("fields");
 
+    // The maximum number of analyzers (i.e. pipeline workers that can analyze at the same time).
+    // Each analyzer needs a lot of memory so by default there is only one.
+    public static final PluginConfigSpec<Long> ANALYZERS_CONFIG =
+        PluginConfigSpec.numSetting("analyzers", 1);
+
     private final String              sourceField;
     private       Map<String, String> outputFields;
 
+    // The requested fields and the event fields they are written to (in the same order).
+    private final String[] requestedFieldNames;
+    private final String[] outputFieldNames;
+
     public Yauaa(String id, Configuration config, Context context) {
         this.id = id;
         // constructors should validate configuration options
@@ -69,21 +77,32 @@ public class Yauaa implements Filter {
             requestedFields.forEach((key, value) -> outputFields.put(key, value.toString()));
         }
 
-        checkConfiguration();
+        UserAgentAnalyzer userAgentAnalyzer = checkConfiguration();
 
-        UserAgentAnalyzerBuilder userAgentAnalyzerBuilder =
-            UserAgentAnalyzer
-                .newBuilder()
-                .immediateInitialization()
-                .dropTests()
-                .hideMatcherLoadStats();
+        requestedFieldNames = new String[outputFields.size()];
+        outputFieldNames    = new String[outputFields.size()];
+        int index = 0;
+        for (Map.Entry<String, String> outputField : outputFields.entrySet()) {
+            requestedFieldNames[index] = outputField.getKey();
+            outputFieldNames[index]    = outputField.getValue();
+            index++;
+        }
 
-        outputFields.forEach((yauaaFieldName, outputFieldName) -> {
-            requestedFieldNames.add(yauaaFieldName);
-            userAgentAnalyzerBuilder.withField(yauaaFieldName);
-        });
+        Long analyzers = config.get(ANALYZERS_CONFIG);
+        analyzerPool = new UserAgentAnalyzerPool(
+            userAgentAnalyzer,
+            analyzers == null ? 1 : analyzers.intValue(),
+            this::createAnalyzer);
+    }
 
-        userAgentAnalyzer = userAgentAnalyzerBuilder.build();
+    private UserAgentAnalyzer createAnalyzer() {
+        return UserAgentAnalyzer
+            .newBuilder()
+            .immediateInitialization()
+            .dropTests()
+            .hideMatcherLoadStats()
+            .withFields(outputFields.keySet())
+            .build();
     }
 
     @Override
@@ -93,37 +112,56 @@ public class Yauaa implements Filter {
 
     @Override
     public Collection<Event> filter(Collection<Event> events, FilterMatchListener filterMatchListener) {
-        for (Event event : events) {
-            Object rawField = event.getField(sourceField);
-            if (rawField instanceof String) {
-                String userAgentString = (String)rawField;
-
-                UserAgent agent = userAgentAnalyzer.parse(userAgentString);
-
-                for (String fieldName : requestedFieldNames) {
-                    event.setField(outputFields.get(fieldName), agent.getValue(fieldName));
+        // A batch often contains the same useragent many times, so each distinct one is only analyzed once.
+        Map<String, String[]> batchResults      = new HashMap<>();
+        UserAgentAnalyzer     userAgentAnalyzer = null;
+        try {
+            for (Event event : events) {
+                Object rawField = event.getField(sourceField);
+                if (rawField instanceof String) {
+                    String   userAgentString = (String)rawField;
+                    String[] values          = batchResults.get(userAgentString);
+                    if (values == null) {
+                        if (userAgentAnalyzer == null) {
+                            userAgentAnalyzer = analyzerPool.acquire();
+                        }
+                        UserAgent agent = userAgentAnalyzer.parse(userAgentString);
+                        values = new String[requestedFieldNames.length];
+                        for (int i = 0; i < requestedFieldNames.length; i++) {
+                            values[i] = agent.getValue(requestedFieldNames[i]);
+                        }
+                        batchResults.put(userAgentString, values);
+                    }
+
+                    for (int i = 0; i < outputFieldNames.length; i++) {
+                        event.setField(outputFieldNames[i], values[i]);
+                    }
                 }
             }
+        } finally {
+            if (userAgentAnalyzer != null) {
+                analyzerPool.release(userAgentAnalyzer);
+            }
         }
         return events;
     }
 
     @Override
     public Collection<PluginConfigSpec<?>> configSchema() {
-        return Arrays.asList(SOURCE_CONFIG, FIELDS_CONFIG);
+        return Arrays.asList(SOURCE_CONFIG, FIELDS_CONFIG, ANALYZERS_CONFIG);
     }
 
-    private void checkConfiguration() {
-        List<String> configProblems = new ArrayList<>();
-
-        UserAgentAnalyzer uaa = UserAgentAnalyzer
-            .newBuilder()
-            .delayInitialization()
-            .dropTests()
-            .hideMatcherLoadStats()
-            .build();
+    int getNumberOfAnalyzers() {
+        return analyzerPool.getNumberOfAnalyzers();
+    }
 
-        List<String> allFieldNames = uaa.getAllPossibleFieldNamesSorted();
+    /**
+     * Checks the configuration and creates the first analyzer.
+     * The list of all possible fields (for the error message) comes from the {@link FieldCatalog}.
+     * @return The analyzer for the requested fields.
+     */
+    private UserAgentAnalyzer checkConfiguration() {
+        List<String> configProblems = new ArrayList<>();
 
         if (sourceField == null) {
             configProblems.add("The \"source\" has not been specified.\n");
@@ -139,6 +177,21 @@ public class Yauaa implements Filter {
             if (outputFields.isEmpty()) {
                 configProblems.add("The list of needed \"fields\" is empty.\n");
             }
+        }
+
+        InvalidParserConfigurationException analyzerProblem = null;
+        if (configProblems.isEmpty()) {
+            try {
+                return createAnalyzer(); // All is fine
+            } catch (InvalidParserConfigurationException e) {
+                // One or more of the requested fields does not exist: determined below.
+                analyzerProblem = e;
+            }
+        }
+
+        List<String> allFieldNames = FieldCatalog.getAllPossibleFieldNamesSorted();
+
+        if (outputFields != null) {
             for (String outputField: outputFields.keySet()) {
                 if (!allFieldNames.contains(outputField)) {
                     configProblems.add("The requested field \"" + outputField + "\" does not exist.\n");
@@ -146,8 +199,8 @@ public class Yauaa implements Filter {
             }
         }
 
-        if (configProblems.isEmpty()) {
-            return; // All is fine
+        if (configProblems.isEmpty() && analyzerProblem != null) {
+            configProblems.add(analyzerProblem.getMessage() + "\n");
         }
 
         StringBuilder errorMessage = new StringBuilder();
@@ -0,0 +1,125 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.logstash.filters.nl.basjes.parse.useragent.logstash;
+
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class TestUserAgentAnalyzerPool {
+
+    private static UserAgentAnalyzer firstAnalyzer;
+    private static UserAgentAnalyzer otherAnalyzer;
+
+    @BeforeAll
+    public static void createAnalyzers() {
+        firstAnalyzer = createAnalyzer();
+        otherAnalyzer = createAnalyzer();
+    }
+
+    private static UserAgentAnalyzer createAnalyzer() {
+        return UserAgentAnalyzer
+            .newBuilder()
+            .dropTests()
+            .hideMatcherLoadStats()
+            .withField("DeviceClass")
+            .build();
+    }
+
+    @Test
+    public void testOnlyCreateWhenAllAreInUse() {
+        AtomicInteger created = new AtomicInteger();
+        UserAgentAnalyzerPool pool = new UserAgentAnalyzerPool(firstAnalyzer, 2, () -> {
+            created.incrementAndGet();
+            return otherAnalyzer;
+        });
+
+        UserAgentAnalyzer analyzer = pool.acquire();
+        assertSame(firstAnalyzer, analyzer);
+        pool.release(analyzer);
+
+        // The released one is reused
+        analyzer = pool.acquire();
+        assertSame(firstAnalyzer, analyzer);
+        assertEquals(0, created.get());
+        assertEquals(1, pool.getNumberOfAnalyzers());
+
+        // All are in use so a new one is created
+        UserAgentAnalyzer second = pool.acquire();
+        assertSame(otherAnalyzer, second);
+        assertEquals(1, created.get());
+        assertEquals(2, pool.getNumberOfAnalyzers());
+
+        pool.release(analyzer);
+        pool.release(second);
+    }
+
+    @Test
+    public void testWaitForReleaseAtMaximum() throws Exception {
+        UserAgentAnalyzerPool pool = new UserAgentAnalyzerPool(firstAnalyzer, 1, () -> {
+            throw new IllegalStateException("Must not create more than the maximum");
+        });
+
+        UserAgentAnalyzer analyzer = pool.acquire();
+        CompletableFuture<UserAgentAnalyzer> waiting = CompletableFuture.supplyAsync(pool::acquire);
+
+        assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+        pool.release(analyzer);
+        assertSame(firstAnalyzer, waiting.get(10, TimeUnit.SECONDS));
+        assertEquals(1, pool.getNumberOfAnalyzers());
+    }
+
+    @Test
+    public void testFailedCreationIsNotCounted() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        UserAgentAnalyzerPool pool = new UserAgentAnalyzerPool(firstAnalyzer, 2, () -> {
+            if (fail.get()) {
+                throw new IllegalStateException("Unable to create the analyzer");
+            }
+            return otherAnalyzer;
+        });
+
+        UserAgentAnalyzer analyzer = pool.acquire();
+
+        // Each failure must give back the place in the pool ...
+        assertThrows(IllegalStateException.class, pool::acquire);
+        assertThrows(IllegalStateException.class, pool::acquire);
+        assertEquals(1, pool.getNumberOfAnalyzers());
+
+        // ... so a later attempt can still create it instead of waiting forever.
+        fail.set(false);
+        UserAgentAnalyzer second = assertTimeoutPreemptively(Duration.ofSeconds(10), pool::acquire);
+        assertSame(otherAnalyzer, second);
+        assertEquals(2, pool.getNumberOfAnalyzers());
+
+        pool.release(analyzer);
+        pool.release(second);
+    }
+}
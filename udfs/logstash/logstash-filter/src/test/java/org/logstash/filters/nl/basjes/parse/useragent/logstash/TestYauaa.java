@@ -25,14 +25,18 @@ import org.junit.jupiter.api.Test;
 import org.logstash.plugins.ConfigurationImpl;
 import org.logstash.plugins.ContextImpl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.core.AllOf.allOf;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -75,6 +79,57 @@ public class TestYauaa {
         assertTrue(filter.configSchema().contains(FIELDS_CONFIG));
     }
 
+    @Test
+    public void testBatchWithDuplicates() {
+        String sourceField = "foo";
+
+        Map<String, String> fieldMappings = new HashMap<>();
+        fieldMappings.put("DeviceClass", "DC");
+        fieldMappings.put("AgentNameVersion", "ANV");
+
+        Map<String, Object> configMap = new HashMap<>();
+        configMap.put("source", sourceField);
+        configMap.put("fields", fieldMappings);
+        configMap.put("analyzers", 2L);
+
+        Configuration config = new ConfigurationImpl(configMap);
+
+        Context context = new ContextImpl(null, null);
+        Yauaa   filter  = new Yauaa("testBatchWithDuplicates", config, context);
+
+        String desktop = "Mozilla/5.0 (X11; Linux x86_64) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/48.0.2564.82 Safari/537.36";
+        String phone = "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+            "AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+        List<Event> events = new ArrayList<>();
+        for (String useragent : Arrays.asList(desktop, phone, desktop, null, phone, desktop)) {
+            Event e = new org.logstash.Event();
+            if (useragent != null) {
+                e.setField(sourceField, useragent);
+            }
+            events.add(e);
+        }
+
+        Collection<Event> results = filter.filter(events, null);
+        assertEquals(6, results.size());
+
+        assertEquals("Desktop",              events.get(0).getField("DC"));
+        assertEquals("Chrome 48.0.2564.82",  events.get(0).getField("ANV"));
+        assertEquals("Phone",                events.get(1).getField("DC"));
+        assertEquals("Chrome 53.0.2785.124", events.get(1).getField("ANV"));
+        assertEquals("Desktop",              events.get(2).getField("DC"));
+        assertNull(events.get(3).getField("DC"));
+        assertEquals("Phone",                events.get(4).getField("DC"));
+        assertEquals("Chrome 48.0.2564.82",  events.get(5).getField("ANV"));
+
+        // A single worker only needs a single analyzer
+        assertEquals(1, filter.getNumberOfAnalyzers());
+        assertTrue(filter.configSchema().contains(Yauaa.ANALYZERS_CONFIG));
+    }
+
     @Test
     public void testBadConfigNothing() {
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
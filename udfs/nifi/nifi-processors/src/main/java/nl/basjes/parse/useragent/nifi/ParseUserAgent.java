@@ -17,6 +17,7 @@
 
 package nl.basjes.parse.useragent.nifi;
 
+import nl.basjes.parse.useragent.FieldCatalog;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
@@ -70,7 +71,6 @@ public class ParseUserAgent extends AbstractProcessor {
 
     private UserAgentAnalyzer uaa = null;
 
-    private static final List<String>             ALL_FIELD_NAMES              = new ArrayList<>();
     private final        List<PropertyDescriptor> supportedPropertyDescriptors = new ArrayList<>();
     private final        List<String>             extractFieldNames            = new ArrayList<>();
 
@@ -78,23 +78,24 @@ public class ParseUserAgent extends AbstractProcessor {
     protected void init(ProcessorInitializationContext context) {
         super.init(context);
 
-        synchronized (ALL_FIELD_NAMES) {
-            if (ALL_FIELD_NAMES.isEmpty()) {
-                ALL_FIELD_NAMES.addAll(UserAgentAnalyzer
-                    .newBuilder()
-                    .hideMatcherLoadStats()
-                    .delayInitialization()
-                    .dropTests()
-                    .build()
-                    .getAllPossibleFieldNamesSorted());
-            }
-        }
         final Set<Relationship> relationshipsSet = new HashSet<>();
         relationshipsSet.add(SUCCESS);
         relationshipsSet.add(MISSING);
         this.relationships = Collections.unmodifiableSet(relationshipsSet);
 
-        for (String fieldName: ALL_FIELD_NAMES) {
+        supportedPropertyDescriptors.addAll(createExtractPropertyDescriptors());
+    }
+
+    static List<String> getAllFieldNames() {
+        return FieldCatalog.getAllPossibleFieldNamesSorted();
+    }
+
+    /**
+     * @return For each possible field a property to enable extracting it.
+     */
+    static List<PropertyDescriptor> createExtractPropertyDescriptors() {
+        List<PropertyDescriptor> propertyDescriptors = new ArrayList<>();
+        for (String fieldName: getAllFieldNames()) {
             PropertyDescriptor propertyDescriptor = new PropertyDescriptor.Builder()
                 .name(PROPERTY_PREFIX + fieldName)
                 .description("If enabled will extract the " + fieldName + " field")
@@ -103,9 +104,9 @@ public class ParseUserAgent extends AbstractProcessor {
                 .defaultValue("false")
                 .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
                 .build();
-            supportedPropertyDescriptors.add(propertyDescriptor);
+            propertyDescriptors.add(propertyDescriptor);
         }
-
+        return propertyDescriptors;
     }
 
     @Override
@@ -0,0 +1,359 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.nifi;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import org.apache.nifi.annotation.behavior.EventDriven;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.SideEffectFree;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.Validator;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.record.path.FieldValue;
+import org.apache.nifi.record.path.RecordPath;
+import org.apache.nifi.record.path.validation.RecordPathValidator;
+import org.apache.nifi.schema.access.SchemaNotFoundException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.serialization.record.type.RecordDataType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static nl.basjes.parse.useragent.nifi.ParseUserAgent.PROPERTY_PREFIX;
+
+@EventDriven
+@SideEffectFree
+@SupportsBatching
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"logs", "useragent", "webanalytics", "record"})
+@CapabilityDescription("Analyzes the UserAgent string found at a RecordPath in each record and adds the selected fields " +
+    "to the record (next to the UserAgent string). Each distinct UserAgent in a batch of FlowFiles is only analyzed once.")
+@WritesAttributes({
+    @WritesAttribute(attribute = "record.count", description = "The number of records in the FlowFile."),
+    @WritesAttribute(attribute = "mime.type",    description = "The MIME Type that the configured Record Writer indicates is appropriate.")
+})
+@SeeAlso(ParseUserAgent.class)
+public class ParseUserAgentRecord extends AbstractProcessor {
+
+    // Limit the memory used for the results within a single batch of FlowFiles
+    private static final int MAX_CACHED_RESULTS = 10000;
+
+    public static final PropertyDescriptor RECORD_READER = new PropertyDescriptor.Builder()
+        .name("record-reader")
+        .displayName("Record Reader")
+        .description("Specifies the Controller Service to use for reading incoming data")
+        .identifiesControllerService(RecordReaderFactory.class)
+        .required(true)
+        .build();
+
+    public static final PropertyDescriptor RECORD_WRITER = new PropertyDescriptor.Builder()
+        .name("record-writer")
+        .displayName("Record Writer")
+        .description("Specifies the Controller Service to use for writing out the records")
+        .identifiesControllerService(RecordSetWriterFactory.class)
+        .required(true)
+        .build();
+
+    public static final PropertyDescriptor USERAGENT_RECORD_PATH = new PropertyDescriptor.Builder()
+        .name("useragent-record-path")
+        .displayName("UserAgent Record Path")
+        .description("The RecordPath of the field(s) that contain the UserAgent string that is to be analyzed. " +
+            "The extracted fields are added to the record that contains this field.")
+        .required(true)
+        .defaultValue("/useragent")
+        .addValidator(new RecordPathValidator())
+        .build();
+
+    public static final PropertyDescriptor FIELD_NAME_PREFIX = new PropertyDescriptor.Builder()
+        .name("field-name-prefix")
+        .displayName("Field Name Prefix")
+        .description("The prefix of the names of the fields that are added to the record (i.e. prefix + 'DeviceClass').")
+        .required(false)
+        .defaultValue("Useragent")
+        .addValidator(Validator.VALID)
+        .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder()
+        .name("batch-size")
+        .displayName("Batch Size")
+        .description("The maximum number of FlowFiles that are processed in a single trigger.")
+        .required(true)
+        .defaultValue("100")
+        .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+        .build();
+
+    public static final Relationship SUCCESS = new Relationship.Builder()
+        .name("success")
+        .description("Here we route all FlowFiles that have been analyzed.")
+        .build();
+
+    public static final Relationship FAILURE = new Relationship.Builder()
+        .name("failure")
+        .description("Here we route the FlowFiles that could not be read or written as records.")
+        .build();
+
+    private Set<Relationship> relationships;
+
+    private final List<PropertyDescriptor> supportedPropertyDescriptors = new ArrayList<>();
+
+    private UserAgentAnalyzer uaa                  = null;
+    private String[]          extractFieldNames    = new String[0];
+    private String[]          outputFieldNames     = new String[0];
+    private RecordPath        userAgentRecordPath  = null;
+
+    @Override
+    protected void init(ProcessorInitializationContext context) {
+        super.init(context);
+
+        final Set<Relationship> relationshipsSet = new HashSet<>();
+        relationshipsSet.add(SUCCESS);
+        relationshipsSet.add(FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationshipsSet);
+
+        supportedPropertyDescriptors.add(RECORD_READER);
+        supportedPropertyDescriptors.add(RECORD_WRITER);
+        supportedPropertyDescriptors.add(USERAGENT_RECORD_PATH);
+        supportedPropertyDescriptors.add(FIELD_NAME_PREFIX);
+        supportedPropertyDescriptors.add(BATCH_SIZE);
+        supportedPropertyDescriptors.addAll(ParseUserAgent.createExtractPropertyDescriptors());
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return supportedPropertyDescriptors;
+    }
+
+    @SuppressWarnings("unused") // Called via the annotation
+    @OnScheduled
+    public void onSchedule(ProcessContext context) {
+        userAgentRecordPath = RecordPath.compile(context.getProperty(USERAGENT_RECORD_PATH).getValue());
+
+        String prefix = context.getProperty(FIELD_NAME_PREFIX).getValue();
+        if (prefix == null) {
+            prefix = "";
+        }
+
+        if (uaa == null) {
+            UserAgentAnalyzerBuilder builder =
+                UserAgentAnalyzer
+                .newBuilder()
+                .hideMatcherLoadStats()
+                .dropTests();
+
+            List<String> fieldNames = new ArrayList<>();
+            for (PropertyDescriptor propertyDescriptor: supportedPropertyDescriptors) {
+                String name = propertyDescriptor.getName();
+                if (name.startsWith(PROPERTY_PREFIX) && context.getProperty(propertyDescriptor).asBoolean()) {
+                    String fieldName = name.substring(PROPERTY_PREFIX.length());
+                    builder.withField(fieldName);
+                    fieldNames.add(fieldName);
+                }
+            }
+            extractFieldNames = fieldNames.toArray(new String[0]);
+            uaa = builder.build();
+        }
+
+        outputFieldNames = new String[extractFieldNames.length];
+        for (int i = 0; i < extractFieldNames.length; i++) {
+            outputFieldNames[i] = prefix + extractFieldNames[i];
+        }
+    }
+
+    @Override
+    public void onPropertyModified(PropertyDescriptor descriptor, String oldValue, String newValue) {
+        uaa = null;
+    }
+
+    @Override
+    public void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException { // NOSONAR: Explicitly name the exception
+        List<FlowFile> flowFiles = session.get(context.getProperty(BATCH_SIZE).asInteger());
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+
+        RecordReaderFactory    readerFactory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
+        RecordSetWriterFactory writerFactory = context.getProperty(RECORD_WRITER).asControllerService(RecordSetWriterFactory.class);
+
+        // The results are shared by all FlowFiles in this batch.
+        Map<String, String[]> results = new HashMap<>();
+
+        for (FlowFile original : flowFiles) {
+            FlowFile            flowFile   = original;
+            Map<String, String> attributes = new HashMap<>();
+            try {
+                flowFile = session.write(original, (in, out) -> {
+                    try (RecordReader reader = readerFactory.createRecordReader(original, in, getLogger())) {
+                        Record firstRecord = reader.nextRecord();
+                        if (firstRecord == null) {
+                            // No records: write an empty record set with the schema of the input.
+                            RecordSchema writeSchema = writerFactory.getSchema(original.getAttributes(), reader.getSchema());
+                            try (RecordSetWriter writer = writerFactory.createWriter(getLogger(), writeSchema, out, original)) {
+                                writer.beginRecordSet();
+                                attributes.putAll(finish(writer));
+                            }
+                            return;
+                        }
+
+                        enrich(firstRecord, results);
+
+                        // The schema of the reader covers all records (not only the first one) and
+                        // the schema of the enriched first record tells where the output fields were added.
+                        RecordSchema writeSchema = writerFactory.getSchema(original.getAttributes(),
+                            addOutputFields(reader.getSchema(), firstRecord.getSchema()));
+                        try (RecordSetWriter writer = writerFactory.createWriter(getLogger(), writeSchema, out, original)) {
+                            writer.beginRecordSet();
+                            writer.write(firstRecord);
+
+                            Record record;
+                            while ((record = reader.nextRecord()) != null) {
+                                enrich(record, results);
+                                writer.write(record);
+                            }
+                            attributes.putAll(finish(writer));
+                        }
+                    } catch (IOException | MalformedRecordException | SchemaNotFoundException e) {
+                        throw new ProcessException("Unable to analyze the records in " + original, e);
+                    }
+                });
+            } catch (ProcessException e) {
+                getLogger().error("Unable to analyze the records in {}", new Object[]{flowFile}, e);
+                session.transfer(flowFile, FAILURE);
+                continue;
+            }
+            flowFile = session.putAllAttributes(flowFile, attributes);
+            session.transfer(flowFile, SUCCESS);
+        }
+    }
+
+    /**
+     * Create the schema of the reader with the added output fields (also in nested records).
+     * @param readerSchema The schema of all the records that are read.
+     * @param enrichedSchema The schema of a record after the output fields were added.
+     * @return The schema that has all fields of both.
+     */
+    static RecordSchema addOutputFields(RecordSchema readerSchema, RecordSchema enrichedSchema) {
+        List<RecordField> fields = new ArrayList<>(readerSchema.getFieldCount() + enrichedSchema.getFieldCount());
+        for (RecordField field : readerSchema.getFields()) {
+            Optional<RecordField> enrichedField = enrichedSchema.getField(field.getFieldName());
+            if (enrichedField.isPresent() &&
+                field.getDataType() instanceof RecordDataType &&
+                enrichedField.get().getDataType() instanceof RecordDataType) {
+                RecordSchema childSchema = addOutputFields(
+                    ((RecordDataType) field.getDataType()).getChildSchema(),
+                    ((RecordDataType) enrichedField.get().getDataType()).getChildSchema());
+                fields.add(new RecordField(field.getFieldName(), RecordFieldType.RECORD.getRecordDataType(childSchema),
+                    field.getDefaultValue(), field.getAliases(), field.isNullable()));
+            } else {
+                fields.add(field);
+            }
+        }
+        for (RecordField field : enrichedSchema.getFields()) {
+            if (!readerSchema.getField(field.getFieldName()).isPresent()) {
+                fields.add(field);
+            }
+        }
+        return new SimpleRecordSchema(fields);
+    }
+
+    private static Map<String, String> finish(RecordSetWriter writer) throws IOException {
+        WriteResult writeResult = writer.finishRecordSet();
+        Map<String, String> attributes = new HashMap<>(writeResult.getAttributes());
+        attributes.put("record.count", String.valueOf(writeResult.getRecordCount()));
+        attributes.put(CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+        return attributes;
+    }
+
+    private void enrich(Record record, Map<String, String[]> results) {
+        userAgentRecordPath
+            .evaluate(record)
+            .getSelectedFields()
+            .forEach(fieldValue -> enrich(fieldValue, results));
+        record.incorporateInactiveFields();
+    }
+
+    private void enrich(FieldValue fieldValue, Map<String, String[]> results) {
+        Optional<Record> parentRecord = fieldValue.getParentRecord();
+        if (!parentRecord.isPresent()) {
+            return;
+        }
+
+        Object rawValue = fieldValue.getValue();
+        String[] values = null;
+        if (rawValue != null) {
+            String userAgentString = rawValue.toString();
+            values = results.get(userAgentString);
+            if (values == null) {
+                UserAgent userAgent = uaa.parse(userAgentString);
+                values = new String[extractFieldNames.length];
+                for (int i = 0; i < extractFieldNames.length; i++) {
+                    values[i] = userAgent.getValue(extractFieldNames[i]);
+                }
+                if (results.size() >= MAX_CACHED_RESULTS) {
+                    results.clear();
+                }
+                results.put(userAgentString, values);
+            }
+        }
+
+        // The fields are also set (to null) if there is no UserAgent to keep the schema of all records the same.
+        Record record = parentRecord.get();
+        for (int i = 0; i < outputFieldNames.length; i++) {
+            record.setValue(outputFieldNames[i], values == null ? null : values[i]);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.basjes.parse.useragent.nifi;
+
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.MockRecordWriter;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.serialization.record.type.RecordDataType;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static nl.basjes.parse.useragent.nifi.ParseUserAgent.PROPERTY_PREFIX;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestParseUserAgentRecord {
+
+    private static final String DESKTOP = "Mozilla/5.0 (X11; Linux x86_64) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/48.0.2564.82 Safari/537.36";
+
+    private static final String PHONE = "Mozilla/5.0 (Linux; Android 7.0; Nexus 6 Build/NBD90Z) " +
+        "AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.124 Mobile Safari/537.36";
+
+    private TestRunner createRunner(MockRecordParser readerService) throws InitializationException {
+        TestRunner runner = TestRunners.newTestRunner(new ParseUserAgentRecord());
+
+        readerService.addSchemaField("id",        RecordFieldType.INT);
+        readerService.addSchemaField("useragent", RecordFieldType.STRING);
+        runner.addControllerService("reader", readerService);
+        runner.enableControllerService(readerService);
+
+        MockRecordWriter writerService = new MockRecordWriter("header", false);
+        runner.addControllerService("writer", writerService);
+        runner.enableControllerService(writerService);
+
+        runner.setProperty(ParseUserAgentRecord.RECORD_READER, "reader");
+        runner.setProperty(ParseUserAgentRecord.RECORD_WRITER, "writer");
+        runner.setProperty(PROPERTY_PREFIX + "DeviceClass",           "true");
+        runner.setProperty(PROPERTY_PREFIX + "AgentNameVersionMajor", "true");
+        return runner;
+    }
+
+    @Test
+    public void testRecords() throws InitializationException {
+        MockRecordParser readerService = new MockRecordParser();
+        TestRunner       runner        = createRunner(readerService);
+
+        readerService.addRecord(1, DESKTOP);
+        readerService.addRecord(2, PHONE);
+        readerService.addRecord(3, DESKTOP);
+        readerService.addRecord(4, null);
+
+        // Multiple FlowFiles are handled in a single trigger
+        runner.enqueue("");
+        runner.enqueue("");
+        runner.enqueue("");
+        runner.run(1);
+
+        runner.assertQueueEmpty();
+        runner.assertAllFlowFilesTransferred(ParseUserAgentRecord.SUCCESS, 3);
+
+        List<MockFlowFile> results = runner.getFlowFilesForRelationship(ParseUserAgentRecord.SUCCESS);
+        for (MockFlowFile result : results) {
+            result.assertAttributeEquals("record.count", "4");
+
+            String[] lines = new String(result.toByteArray(), UTF_8).split("\n");
+            assertEquals(5, lines.length);
+            assertEquals("header", lines[0]);
+            assertTrue(lines[1].startsWith("1,") && lines[1].endsWith(",Desktop,Chrome 48"), lines[1]);
+            assertTrue(lines[2].startsWith("2,") && lines[2].endsWith(",Phone,Chrome 53"),   lines[2]);
+            assertTrue(lines[3].startsWith("3,") && lines[3].endsWith(",Desktop,Chrome 48"), lines[3]);
+            assertTrue(lines[4].startsWith("4,"), lines[4]);
+        }
+    }
+
+    private static RecordField stringField(String name) {
+        return new RecordField(name, RecordFieldType.STRING.getDataType());
+    }
+
+    private static RecordField recordField(String name, RecordField... fields) {
+        return new RecordField(name, RecordFieldType.RECORD.getRecordDataType(new SimpleRecordSchema(Arrays.asList(fields))));
+    }
+
+    @Test
+    public void testWriteSchema() {
+        // A field that is not present in the first record must remain in the written schema.
+        RecordSchema readerSchema = new SimpleRecordSchema(Arrays.asList(
+            new RecordField("id", RecordFieldType.INT.getDataType()),
+            stringField("useragent"),
+            stringField("onlyInLaterRecords")));
+
+        RecordSchema enrichedSchema = new SimpleRecordSchema(Arrays.asList(
+            new RecordField("id", RecordFieldType.INT.getDataType()),
+            stringField("useragent"),
+            stringField("UseragentDeviceClass")));
+
+        RecordSchema writeSchema = ParseUserAgentRecord.addOutputFields(readerSchema, enrichedSchema);
+        assertEquals(
+            Arrays.asList("id", "useragent", "onlyInLaterRecords", "UseragentDeviceClass"),
+            writeSchema.getFieldNames());
+    }
+
+    @Test
+    public void testNestedWriteSchema() {
+        RecordSchema readerSchema = new SimpleRecordSchema(Arrays.asList(
+            new RecordField("id", RecordFieldType.INT.getDataType()),
+            recordField("request", stringField("useragent"), stringField("onlyInLaterRecords"))));
+
+        RecordSchema enrichedSchema = new SimpleRecordSchema(Arrays.asList(
+            new RecordField("id", RecordFieldType.INT.getDataType()),
+            recordField("request", stringField("useragent"), stringField("UseragentDeviceClass"))));
+
+        RecordSchema writeSchema = ParseUserAgentRecord.addOutputFields(readerSchema, enrichedSchema);
+        assertEquals(Arrays.asList("id", "request"), writeSchema.getFieldNames());
+
+        RecordSchema requestSchema =
+            ((RecordDataType) writeSchema.getField("request").get().getDataType()).getChildSchema();
+        assertEquals(
+            Arrays.asList("useragent", "onlyInLaterRecords", "UseragentDeviceClass"),
+            requestSchema.getFieldNames());
+    }
+
+    @Test
+    public void testBadRecords() throws InitializationException {
+        // This reader fails after the first record
+        MockRecordParser readerService = new MockRecordParser(1);
+        TestRunner       runner        = createRunner(readerService);
+
+        readerService.addRecord(1, DESKTOP);
+        readerService.addRecord(2, PHONE);
+
+        runner.enqueue("");
+        runner.run(1);
+
+        runner.assertQueueEmpty();
+        runner.assertAllFlowFilesTransferred(ParseUserAgentRecord.FAILURE, 1);
+    }
+
+}
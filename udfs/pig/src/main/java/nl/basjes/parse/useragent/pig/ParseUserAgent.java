@@ -17,9 +17,11 @@
 
 package nl.basjes.parse.useragent.pig;
 
+import nl.basjes.parse.useragent.FieldCatalog;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
 import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
@@ -31,6 +33,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static nl.basjes.parse.useragent.UserAgent.MutableUserAgent.isSystemField;
+
 public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
     private static final TupleFactory TUPLE_FACTORY = TupleFactory.getInstance();
@@ -38,6 +42,7 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
     private int cacheSize = -1;
     private final List<String> requestedFields = new ArrayList<>(32);
+    private List<String> outputFields = null;
 
     private boolean initialized = false;
     private void initialize() {
@@ -45,7 +50,8 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
             UserAgentAnalyzerBuilder analyzerBuilder = UserAgentAnalyzer
                     .newBuilder()
                     .hideMatcherLoadStats()
-                    .delayInitialization();
+                    .dropTests()
+                    .immediateInitialization();
 
             if (cacheSize >= 0) {
                 analyzerBuilder.withCache(cacheSize);
@@ -58,13 +64,40 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
             }
 
             analyzer = analyzerBuilder.build();
+            initialized = true;
+        }
+    }
 
-            if (requestedFields.isEmpty()) {
-                requestedFields.addAll(analyzer.getAllPossibleFieldNamesSorted());
-            }
+    // Visible for testing
+    boolean isInitialized() {
+        return initialized;
+    }
 
-            initialized = true;
+    /**
+     * Only the packaged rules are used so the output fields are known from the field catalog
+     * without loading all the rules into an analyzer (i.e. while planning the script).
+     * @return The requested fields or (if none were requested) all possible fields.
+     */
+    private List<String> getOutputFields() {
+        if (outputFields != null) {
+            return outputFields;
+        }
+        List<String> allFieldNames = FieldCatalog.getAllPossibleFieldNamesSorted();
+        if (requestedFields.isEmpty()) {
+            outputFields = allFieldNames;
+            return outputFields;
+        }
+        List<String> impossibleFields = new ArrayList<>();
+        for (String requestedField : requestedFields) {
+            if (!isSystemField(requestedField) && !allFieldNames.contains(requestedField)) {
+                impossibleFields.add(requestedField);
+            }
+        }
+        if (!impossibleFields.isEmpty()) {
+            throw new InvalidParserConfigurationException("We cannot provide these fields:" + impossibleFields.toString());
         }
+        outputFields = requestedFields;
+        return outputFields;
     }
 
     public ParseUserAgent() {
@@ -90,7 +123,7 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
         UserAgent agent = analyzer.parse(userAgentString);
         Tuple result = TUPLE_FACTORY.newTuple();
-        for (String fieldName: requestedFields) {
+        for (String fieldName: getOutputFields()) {
             result.append(agent.getValue(fieldName));
         }
         return result;
@@ -98,10 +131,9 @@ public class ParseUserAgent extends org.apache.pig.EvalFunc<Tuple>  {
 
     @Override
     public Schema outputSchema(Schema input) {
-        initialize();
         try {
             Schema tupleSchema = new Schema();
-            for (String fieldName: requestedFields) {
+            for (String fieldName: getOutputFields()) {
                 tupleSchema.add(new Schema.FieldSchema(fieldName, DataType.CHARARRAY));
             }
             return new Schema(new Schema.FieldSchema("UserAgent", tupleSchema, DataType.TUPLE));
@@ -17,6 +17,8 @@
 
 package nl.basjes.parse.useragent.pig;
 
+import nl.basjes.parse.useragent.FieldCatalog;
+import nl.basjes.parse.useragent.analyze.InvalidParserConfigurationException;
 import org.apache.pig.ExecType;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
@@ -30,8 +32,11 @@ import org.junit.jupiter.api.Test;
 import static org.apache.pig.builtin.mock.Storage.resetData;
 import static org.apache.pig.builtin.mock.Storage.tuple;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 // CHECKSTYLE.OFF: ParenPad
@@ -218,5 +223,30 @@ public class TestParseUserAgent {
         checkResult(data, schema, "HackerToolkit",                  "Unknown"  );
     }
 
+    @Test
+    public void testOutputSchemaWithoutAnalyzer() throws Exception {
+        ParseUserAgent allFields = new ParseUserAgent();
+        assertEquals(FieldCatalog.getAllPossibleFieldNamesSorted().size(),
+            allFields.outputSchema(null).getField(0).schema.size());
+        assertFalse(allFields.isInitialized());
+
+        ParseUserAgent someFields = new ParseUserAgent("10", "DeviceClass", "AgentNameVersion");
+        Schema schema = someFields.outputSchema(null).getField(0).schema;
+        assertEquals(2, schema.size());
+        assertFalse(someFields.isInitialized());
+
+        Tuple input = TupleFactory.getInstance().newTuple();
+        input.append(testUserAgent);
+        Tuple data = someFields.exec(input);
+        assertTrue(someFields.isInitialized());
+        checkResult(data, schema, "DeviceClass",      "Desktop"            );
+        checkResult(data, schema, "AgentNameVersion", "Chrome 48.0.2564.82");
+
+        ParseUserAgent badField = new ParseUserAgent("10", "DeviceClass", "NoSuchField");
+        InvalidParserConfigurationException exception =
+            assertThrows(InvalidParserConfigurationException.class, () -> badField.outputSchema(null));
+        assertTrue(exception.getMessage().contains("NoSuchField"), exception.getMessage());
+    }
+
 
 }
@@ -26,6 +26,7 @@ import io.swagger.annotations.Example;
 import io.swagger.annotations.ExampleProperty;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import nl.basjes.parse.useragent.UserAgentAnalyzer.UserAgentAnalyzerBuilder;
 import nl.basjes.parse.useragent.Version;
 import nl.basjes.parse.useragent.debug.UserAgentAnalyzerTester;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -33,6 +34,7 @@ import org.apache.commons.lang3.tuple.MutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.http.HttpHeaders;
@@ -53,6 +55,12 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
@@ -60,9 +68,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static nl.basjes.parse.useragent.debug.AbstractUserAgentAnalyzerTester.runTests;
 import static nl.basjes.parse.useragent.utils.YauaaVersion.getVersion;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.text.StringEscapeUtils.escapeHtml4;
 import static org.apache.commons.text.StringEscapeUtils.escapeJson;
 import static org.apache.commons.text.StringEscapeUtils.escapeXml10;
@@ -89,6 +100,25 @@ public class ParseService {
     private        final String analyzerVersion                 = getVersion();
     private static final String API_BASE_PATH                   = "/yauaa/v1";
 
+    // Retaining the testcases costs a lot of memory and they are only used by /preheat.
+    // With the 'lowmem' profile they are dropped and the /preheat uses a small embedded set of useragents.
+    // Note that /runtests always loads its own set of testcases when it is called.
+    @Value("${yauaa.keepTests:true}")
+    private              boolean           keepTests                       = true;
+
+    private static final String PREHEAT_USERAGENTS_RESOURCE     = "/PreheatUserAgents.txt";
+
+    // Do the preheat during startup so the service only reports it is running (readiness!) once it is hot.
+    @Value("${yauaa.startup.preheat:false}")
+    private              boolean           preheatOnStartup                = false;
+
+    // A file (one useragent per line) that is parsed during startup to fill the parse cache with real useragents.
+    @Value("${yauaa.startup.warmupFile:}")
+    private              String            warmupFile                      = "";
+
+    // The /preheat/background runs in the background (at most one at a time) so it does not block the request thread.
+    private        final AtomicBoolean     preheatRunning                  = new AtomicBoolean(false);
+
     private static final String            TEXT_XYAML_VALUE = "text/x-yaml";
 
     private static final String            EXAMPLE_USERAGENT               =
@@ -196,12 +226,23 @@ public class ParseService {
             initStartMoment = System.currentTimeMillis();
             new Thread(() -> {
                 try {
-                    userAgentAnalyzer = UserAgentAnalyzer.newBuilder()
+                    UserAgentAnalyzerBuilder builder = UserAgentAnalyzer.newBuilder()
                         .hideMatcherLoadStats()
                         .addOptionalResources("file:UserAgents*/*.yaml")
-                        .immediateInitialization()
-                        .keepTests()
-                        .build();
+                        .immediateInitialization();
+                    if (keepTests) {
+                        builder.keepTests();
+                    } else {
+                        LOG.info("The testcases will NOT be retained in memory.");
+                        builder.dropTests();
+                    }
+                    userAgentAnalyzer = builder.build();
+                    if (preheatOnStartup) {
+                        preHeat();
+                    }
+                    if (warmupFile != null && !warmupFile.trim().isEmpty()) {
+                        warmupCache(warmupFile.trim());
+                    }
                     userAgentAnalyzerIsAvailable = true;
                 } catch (Exception e) {
                     userAgentAnalyzerFailureMessage =
@@ -217,6 +258,10 @@ public class ParseService {
         }
     }
 
+    UserAgentAnalyzer getUserAgentAnalyzer() {
+        return userAgentAnalyzer;
+    }
+
     @PreDestroy
     public void preDestroy() {
         if (userAgentAnalyzer != null) {
@@ -589,18 +634,126 @@ public class ParseService {
     )
     public String getPreHeat() {
         ensureStartedForApis(OutputType.JSON);
-        final int cacheSize = userAgentAnalyzer.getCacheSize();
-        userAgentAnalyzer.disableCaching();
         long       start     = System.nanoTime();
-        final long testsDone = userAgentAnalyzer.preHeat();
+        final long testsDone = preHeat();
         long       stop      = System.nanoTime();
-        userAgentAnalyzer.setCacheSize(cacheSize);
         if (testsDone == 0) {
             return "{ \"status\": \"No testcases available\", \"testsDone\": 0 , \"timeInMs\" : -1 } ";
         }
         return "{ \"status\": \"Ran tests\", \"testsDone\": " + testsDone + " , \"timeInMs\" : " + (stop - start) / 1000000 + " } ";
     }
 
+    @ApiOperation(
+        value = "Start firing all available test cases against the analyzer (in the background) to heat up the JVM"
+    )
+    @ApiResponses({
+        @ApiResponse(
+            code = 200, // HttpStatus.OK
+            message = "The number of reported tests will be done in the background to preheat the engine",
+            examples = @Example(
+                value = {
+                    @ExampleProperty(mediaType = APPLICATION_JSON_VALUE, value = "{\n" +
+                        "  \"status\": \"Preheat started\",\n" +
+                        "  \"testsToDo\": 2337\n" +
+                        "}"),
+                }
+            )
+        )
+    })
+    @GetMapping(
+        value = API_BASE_PATH + "/preheat/background",
+        produces = APPLICATION_JSON_VALUE
+    )
+    public String getPreHeatInBackground() {
+        ensureStartedForApis(OutputType.JSON);
+        final long testsToDo = getNumberOfPreheatUserAgents();
+        if (testsToDo == 0) {
+            return "{ \"status\": \"No testcases available\", \"testsToDo\": 0 } ";
+        }
+        if (!preheatRunning.compareAndSet(false, true)) {
+            return "{ \"status\": \"Preheat already running\", \"testsToDo\": 0 } ";
+        }
+
+        Thread preheatThread = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                long testsDone = preHeat();
+                long stop = System.nanoTime();
+                LOG.info("Preheat: {} testcases took {} msec.", testsDone, (stop - start) / 1000000);
+            } catch (RuntimeException e) {
+                LOG.error("Preheat failed: {}", e.getMessage());
+            } finally {
+                preheatRunning.set(false);
+            }
+        }, "Yauaa preheat");
+        preheatThread.setDaemon(true);
+        // The requests that are being served take precedence over heating up the JVM.
+        preheatThread.setPriority(Thread.MIN_PRIORITY);
+        preheatThread.start();
+
+        return "{ \"status\": \"Preheat started\", \"testsToDo\": " + testsToDo + " } ";
+    }
+
+    private long getNumberOfPreheatUserAgents() {
+        long numberOfTestCases = userAgentAnalyzer.getNumberOfTestCases();
+        if (numberOfTestCases > 0) {
+            return numberOfTestCases;
+        }
+        return loadPreheatUserAgents().size();
+    }
+
+    // The preheat does not use (or change) the parse cache so it can safely run while serving requests.
+    private long preHeat() {
+        if (userAgentAnalyzer.getNumberOfTestCases() > 0) {
+            return userAgentAnalyzer.preHeat();
+        }
+        return userAgentAnalyzer.preHeat(loadPreheatUserAgents(), true);
+    }
+
+    private void warmupCache(String filename) {
+        List<String> userAgentStrings;
+        try {
+            userAgentStrings = readUserAgents(new FileInputStream(filename), filename);
+        } catch (FileNotFoundException e) {
+            LOG.error("Unable to find the cache warmup file {}", filename);
+            return;
+        }
+        long start = System.nanoTime();
+        for (String userAgentString: userAgentStrings) {
+            userAgentAnalyzer.parse(userAgentString);
+        }
+        long stop = System.nanoTime();
+        LOG.info("Cache warmup: {} useragents from {} took {} msec ({} of {} cache entries used).",
+            userAgentStrings.size(), filename, (stop - start) / 1000000,
+            userAgentAnalyzer.getCachedUserAgentCount(), userAgentAnalyzer.getCacheSize());
+    }
+
+    static List<String> loadPreheatUserAgents() {
+        InputStream inputStream = ParseService.class.getResourceAsStream(PREHEAT_USERAGENTS_RESOURCE);
+        if (inputStream == null) {
+            LOG.error("Unable to find the preheat useragents {}", PREHEAT_USERAGENTS_RESOURCE);
+            return new ArrayList<>();
+        }
+        return readUserAgents(inputStream, PREHEAT_USERAGENTS_RESOURCE);
+    }
+
+    static List<String> readUserAgents(InputStream inputStream, String name) {
+        List<String> userAgentStrings = new ArrayList<>(256);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The useragents are used as is (not trimmed) so they match the cache keys of the real requests.
+                if (isBlank(line) || line.startsWith("#")) {
+                    continue;
+                }
+                userAgentStrings.add(line);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to read the useragents from {}: {}", name, e.getMessage());
+        }
+        return userAgentStrings;
+    }
+
     // ===========================================
 
     @ApiOperation(
@@ -0,0 +1,154 @@
+/*
+ * Yet Another UserAgent Analyzer
+ * Copyright (C) 2013-2020 Niels Basjes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.basjes.parse.useragent.servlet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.json.BasicJsonTester;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "yauaa.startup.preheat=true",
+        "yauaa.startup.warmupFile=" + TestParseServletLowMemory.WARMUP_FILE
+    })
+@ActiveProfiles("lowmem")
+public class TestParseServletLowMemory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestParseServletLowMemory.class);
+
+    static final String WARMUP_FILE = "src/test/resources/WarmupUserAgents.txt";
+
+    @Autowired
+    private ParseService parseService;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private int attemptsRemaining = 200;
+
+    @Before
+    public void ensureServiceHasStarted() throws InterruptedException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", "Are we there yet?");
+
+        HttpEntity<String> request = new HttpEntity<>("Are we there yet?", headers);
+
+        HttpStatus statusCode = null;
+        LOG.info("Is running?");
+
+        while (statusCode != HttpStatus.OK) {
+            if (statusCode != null) {
+                LOG.info("No, not yet running (last code = {}).", statusCode);
+                if (--attemptsRemaining == 0) {
+                    throw new IllegalStateException("Unable to initialize the parser.");
+                }
+            }
+            Thread.sleep(100);
+            ResponseEntity<String> response = this.restTemplate.exchange(getURI("/running"), GET, request, String.class);
+            statusCode = response.getStatusCode();
+        }
+        LOG.info("Yes, it is running!");
+    }
+
+    private URI getURI(String path) {
+        try {
+            return new URI("http://localhost:" + port + path);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private final BasicJsonTester json = new BasicJsonTester(getClass());
+
+    private ResponseEntity<String> getJson(String path) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(APPLICATION_JSON));
+
+        HttpEntity<String> request = new HttpEntity<>("", headers);
+
+        ResponseEntity<String> response = this.restTemplate
+            .exchange(getURI(path), GET, request, String.class);
+
+        assertThat(response.getStatusCode()).isEqualByComparingTo(HttpStatus.OK);
+        return response;
+    }
+
+    @Test
+    public void testPreheatWithoutTestcases() {
+        assertThat(ParseService.loadPreheatUserAgents()).isNotEmpty();
+
+        ResponseEntity<String> response = getJson("/yauaa/v1/preheat");
+
+        assertThat(json.from(response.getBody()))
+            .extractingJsonPathStringValue("$.status")
+            .isEqualTo("Ran tests");
+
+        assertThat(json.from(response.getBody()))
+            .extractingJsonPathNumberValue("$.testsDone")
+            .isEqualTo(ParseService.loadPreheatUserAgents().size());
+    }
+
+    @Test
+    public void testPreheatInBackgroundWithoutTestcases() {
+        ResponseEntity<String> response = getJson("/yauaa/v1/preheat/background");
+
+        assertThat(json.from(response.getBody()))
+            .extractingJsonPathStringValue("$.status")
+            .isIn("Preheat started", "Preheat already running");
+    }
+
+    @Test
+    public void testWarmupFilledTheCache() throws FileNotFoundException {
+        List<String> warmupUserAgents = ParseService.readUserAgents(
+            new FileInputStream(WARMUP_FILE), WARMUP_FILE);
+        assertThat(warmupUserAgents).hasSize(5);
+
+        // The preheat does not use the cache so only the warmup (and possibly a few test requests) are in there.
+        assertThat(parseService.getUserAgentAnalyzer().getCachedUserAgentCount())
+            .isGreaterThanOrEqualTo(warmupUserAgents.size());
+    }
+
+}